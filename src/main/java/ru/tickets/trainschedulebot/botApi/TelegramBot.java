@@ -7,7 +7,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.telegram.telegrambots.bots.DefaultBotOptions;
 import org.telegram.telegrambots.bots.TelegramWebhookBot;
 import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.Update;
+import reactor.core.publisher.Mono;
 
 /**
  * Telegram bot implementation extending TelegramWebhookBot.
@@ -40,13 +42,25 @@ public class TelegramBot extends TelegramWebhookBot {
 
     /**
      * Handles incoming updates from the Telegram server and delegates processing to the TelegramFacade.
+     * This synchronous variant is required by {@link TelegramWebhookBot} and waits for the response,
+     * the webhook endpoint uses {@link #onWebhookUpdateReceivedAsync(Update)} instead.
      *
      * @param update The incoming update from the Telegram server.
      * @return BotApiMethod representing the response to be sent back to the user or the chat.
      */
     @Override
     public BotApiMethod<?> onWebhookUpdateReceived(Update update) {
-        return telegramFacade.handleUpdate(update);
+        return telegramFacade.handleUpdateAsync(update).block();
+    }
+
+    /**
+     * Handles incoming updates from the Telegram server without blocking on the I/O of the handlers that support it.
+     *
+     * @param update The incoming update from the Telegram server.
+     * @return A Mono emitting the response to be sent back to the user or the chat.
+     */
+    public Mono<SendMessage> onWebhookUpdateReceivedAsync(Update update) {
+        return telegramFacade.handleUpdateAsync(update);
     }
 
     /**
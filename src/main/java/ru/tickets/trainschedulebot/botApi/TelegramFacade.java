@@ -7,6 +7,7 @@ import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
 import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.Update;
+import reactor.core.publisher.Mono;
 import ru.tickets.trainschedulebot.botApi.handlers.callbackquery.CallbackQueryFacade;
 import ru.tickets.trainschedulebot.botApi.handlers.state.BotState;
 import ru.tickets.trainschedulebot.botApi.handlers.state.BotStateContext;
@@ -31,13 +32,12 @@ public class TelegramFacade {
 
     /**
      * Handles the incoming update, which can be a message or a callback query,
-     * and delegates the processing to the appropriate handlers.
+     * and delegates the processing to the appropriate handlers without blocking the calling thread.
      *
      * @param update The incoming update from the Telegram API.
-     * @return SendMessage object representing the response to be sent back to the user.
+     * @return A Mono emitting the response to be sent back to the user, or empty if there is none.
      */
-    public SendMessage handleUpdate(Update update) {
-        SendMessage replyMessage = null;
+    public Mono<SendMessage> handleUpdateAsync(Update update) {
         Message message = update.getMessage();
 
         if (update.hasCallbackQuery()) {
@@ -45,22 +45,22 @@ public class TelegramFacade {
         }
 
         if (message != null && message.hasText()) {
-            replyMessage = handleInputMessage(message);
+            return handleInputMessage(message);
         }
 
-        return replyMessage;
+        return Mono.empty();
     }
 
     /**
      * Handles the incoming callback query and delegates the processing to the CallbackQueryFacade.
      *
      * @param callbackQuery The incoming callback query from the Telegram API.
-     * @return SendMessage object representing the response to be sent back to the user.
+     * @return A Mono emitting the response to be sent back to the user.
      */
-    private SendMessage handleCallbackQuery(CallbackQuery callbackQuery) {
+    private Mono<SendMessage> handleCallbackQuery(CallbackQuery callbackQuery) {
         log.info("New callbackQuery from User: {} with callback data: {}", callbackQuery.getFrom().getUserName(),
                 callbackQuery.getData());
-        return callbackQueryFacade.handleCallbackQuery(callbackQuery);
+        return callbackQueryFacade.handleCallbackQueryAsync(callbackQuery);
     }
 
     /**
@@ -68,15 +68,14 @@ public class TelegramFacade {
      * Delegates the processing to the BotStateContext based on the identified bot state.
      *
      * @param message The incoming message from the user.
-     * @return SendMessage object representing the response to be sent back to the user.
+     * @return A Mono emitting the response to be sent back to the user.
      */
-    private SendMessage handleInputMessage(Message message) {
+    private Mono<SendMessage> handleInputMessage(Message message) {
         log.info("New message from User:{}, with text: {}", message.getFrom().getUserName(), message.getText());
 
         long userId = message.getFrom().getId();
         String inputMsg = message.getText();
         BotState botState;
-        SendMessage replyMessage;
 
             botState = switch (inputMsg) {
                 case "Найти поезда" -> BotState.TRAINS_SEARCH;
@@ -87,8 +86,6 @@ public class TelegramFacade {
             };
 
             userDataCache.setUsersCurrentBotState(Math.toIntExact(userId), botState);
-            replyMessage = botStateContext.handleInputMessage(botState, message);
-
-            return replyMessage;
+            return botStateContext.handleInputMessageAsync(botState, message);
     }
 }
@@ -2,6 +2,8 @@ package ru.tickets.trainschedulebot.botApi.handlers;
 
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.Message;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import ru.tickets.trainschedulebot.botApi.handlers.state.BotState;
 
 /**
@@ -22,6 +24,19 @@ public interface InputMessageHandler {
      */
     SendMessage handle(Message message);
 
+    /**
+     * Handles the incoming message, emitting the response once the I/O of the handler has completed.
+     * Handlers whose I/O is non-blocking override this method, the others handle the message on a bounded elastic
+     * worker, so that their blocking I/O does not hold the thread the response is awaited on.
+     *
+     * @param message The incoming message from the user.
+     * @return A Mono emitting the response to be sent back to the user, or empty if there is none.
+     */
+    default Mono<SendMessage> handleAsync(Message message) {
+        return Mono.fromCallable(() -> handle(message))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
     /**
      * Gets the name of the handler, which corresponds to a specific bot state.
      *
@@ -4,6 +4,7 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import reactor.core.publisher.Mono;
 import ru.tickets.trainschedulebot.service.ReplyMessagesService;
 
 import java.util.List;
@@ -26,15 +27,15 @@ public class CallbackQueryFacade {
      * Handles the incoming callback query from a user.
      *
      * @param usersQuery The Telegram callback query received from the user.
-     * @return SendMessage object with the response to the callback query.
+     * @return A Mono emitting the response to the callback query.
      */
-    public SendMessage handleCallbackQuery(CallbackQuery usersQuery) {
+    public Mono<SendMessage> handleCallbackQueryAsync(CallbackQuery usersQuery) {
         CallbackQueryType usersQueryType = CallbackQueryType.valueOf(usersQuery.getData().split("\\|")[0]);
 
         Optional<CallbackQueryHandler> queryHandler = callbackQueryHandlers.stream().
                 filter(callbackQuery -> callbackQuery.getHandlerQueryType().equals(usersQueryType)).findFirst();
 
-        return queryHandler.map(handler -> handler.handleCallbackQuery(usersQuery)).
-                orElse(messagesService.getWarningReplyMessage(usersQuery.getMessage().getChatId(), "reply.query.failed"));
+        return queryHandler.map(handler -> handler.handleCallbackQueryAsync(usersQuery)).
+                orElseGet(() -> Mono.just(messagesService.getWarningReplyMessage(usersQuery.getMessage().getChatId(), "reply.query.failed")));
     }
 }
\ No newline at end of file
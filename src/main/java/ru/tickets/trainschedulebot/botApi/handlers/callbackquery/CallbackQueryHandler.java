@@ -2,6 +2,8 @@ package ru.tickets.trainschedulebot.botApi.handlers.callbackquery;
 
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 /**
  * Interface for handling Telegram callback queries.
@@ -20,6 +22,19 @@ public interface CallbackQueryHandler {
      */
     SendMessage handleCallbackQuery(CallbackQuery callbackQuery);
 
+    /**
+     * Handles the incoming callback query, emitting the response once the I/O of the handler has completed.
+     * Handlers whose I/O is non-blocking override this method, the others handle the query on a bounded elastic
+     * worker, so that their blocking I/O does not hold the thread the response is awaited on.
+     *
+     * @param callbackQuery The Telegram callback query received from the user.
+     * @return A Mono emitting the response to the callback query.
+     */
+    default Mono<SendMessage> handleCallbackQueryAsync(CallbackQuery callbackQuery) {
+        return Mono.fromCallable(() -> handleCallbackQuery(callbackQuery))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
     /**
      * Gets the type of callback query that this handler is designed to handle.
      *
@@ -16,5 +16,10 @@ public enum CallbackQueryType {
     /**
      * Represents the "UNSUBSCRIBE" callback query type.
      */
-    UNSUBSCRIBE;
+    UNSUBSCRIBE,
+
+    /**
+     * Represents the "PRICE_HISTORY" callback query type.
+     */
+    PRICE_HISTORY;
 }
@@ -0,0 +1,88 @@
+package ru.tickets.trainschedulebot.botApi.handlers.callbackquery;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import ru.tickets.trainschedulebot.model.DailyPrice;
+import ru.tickets.trainschedulebot.model.UserTicketsSubscription;
+import ru.tickets.trainschedulebot.service.ParseQueryDataService;
+import ru.tickets.trainschedulebot.service.PriceHistoryService;
+import ru.tickets.trainschedulebot.service.ReplyMessagesService;
+import ru.tickets.trainschedulebot.service.SubscriptionService;
+import ru.tickets.trainschedulebot.utils.DateTimeUtils;
+import ru.tickets.trainschedulebot.utils.Emojis;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Handles the callback query showing the price history of a subscribed train.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-19
+ */
+@Component
+@RequiredArgsConstructor
+public class PriceHistoryQueryHandler implements CallbackQueryHandler {
+    private static final CallbackQueryType HANDLER_QUERY_TYPE = CallbackQueryType.PRICE_HISTORY;
+    private final SubscriptionService subscriptionService;
+    private final PriceHistoryService priceHistoryService;
+    private final ParseQueryDataService parseService;
+    private final ReplyMessagesService messagesService;
+
+    @Override
+    public CallbackQueryType getHandlerQueryType() {
+        return HANDLER_QUERY_TYPE;
+    }
+
+    /**
+     * Handles the price history callback query. The price history is only shown for subscriptions of the requesting chat.
+     *
+     * @param callbackQuery The Telegram callback query received from the user.
+     * @return SendMessage object with the price history of the subscribed train.
+     */
+    @Override
+    public SendMessage handleCallbackQuery(CallbackQuery callbackQuery) {
+        final long chatId = callbackQuery.getMessage().getChatId();
+
+        final String subscriptionID = parseService.parseSubscriptionIdFromPriceHistoryQuery(callbackQuery);
+        // Subscription IDs come from the callback data, so only the subscriptions of the requesting chat are shown
+        Optional<UserTicketsSubscription> optionalUserSubscription = subscriptionService.getUsersSubscriptionById(subscriptionID)
+                .filter(subscription -> subscription.getChatId() == chatId);
+        if (optionalUserSubscription.isEmpty()) {
+            return messagesService.getWarningReplyMessage(chatId, "reply.query.train.userHasNoSubscription");
+        }
+
+        UserTicketsSubscription subscription = optionalUserSubscription.get();
+        List<DailyPrice> dailyPrices = priceHistoryService.getDailyPrices(subscription.getTrainNumber(), subscription.getDateDepart());
+        if (dailyPrices.isEmpty()) {
+            return messagesService.getReplyMessage(chatId, "reply.subscriptions.priceHistoryEmpty", Emojis.NOTIFICATION_BELL,
+                    subscription.getTrainNumber(), subscription.getDateDepart());
+        }
+
+        return new SendMessage(String.valueOf(chatId), getPriceHistoryText(subscription, dailyPrices));
+    }
+
+    /**
+     * Constructs the price history message of a subscribed train.
+     *
+     * @param subscription The UserTicketsSubscription object representing the user's subscription.
+     * @param dailyPrices  The daily prices of the subscribed train.
+     * @return String containing the price history of the train.
+     */
+    private String getPriceHistoryText(UserTicketsSubscription subscription, List<DailyPrice> dailyPrices) {
+        StringBuilder priceHistory = new StringBuilder(messagesService.getReplyText("reply.subscriptions.priceHistory",
+                Emojis.TRAIN, subscription.getTrainNumber(), subscription.getTrainName(), subscription.getDateDepart()));
+
+        for (DailyPrice dailyPrice : dailyPrices) {
+            String day = DateTimeUtils.formatDate(dailyPrice.getDay().atZone(DateTimeUtils.RAILWAY_ZONE).toLocalDate());
+            priceHistory.append(messagesService.getReplyText("subscription.dailyPriceInfo", Emojis.BED, day,
+                    dailyPrice.getCarType(), dailyPrice.getMinPrice(), dailyPrice.getMaxPrice(), dailyPrice.getLastPrice(),
+                    dailyPrice.getLastFreeSeats()));
+        }
+
+        return priceHistory.toString();
+    }
+}
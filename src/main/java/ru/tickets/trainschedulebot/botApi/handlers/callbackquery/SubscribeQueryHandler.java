@@ -4,6 +4,8 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import ru.tickets.trainschedulebot.botApi.handlers.state.UserButtonStatus;
 import ru.tickets.trainschedulebot.cache.UserDataCache;
 import ru.tickets.trainschedulebot.model.Car;
@@ -42,35 +44,50 @@ public class SubscribeQueryHandler implements CallbackQueryHandler {
 
     /**
      * Handles the subscribe callback query.
+     * This synchronous variant waits for {@link #handleCallbackQueryAsync(CallbackQuery)}, which the bot uses to handle updates.
      *
      * @param callbackQuery The Telegram callback query received from the user.
      * @return SendMessage object with the response to the callback query.
      */
     @Override
     public SendMessage handleCallbackQuery(CallbackQuery callbackQuery) {
+        return handleCallbackQueryAsync(callbackQuery).block();
+    }
+
+    /**
+     * Handles the subscribe callback query without blocking on the database. The saved subscription provides
+     * the ID for the unsubscribe button, so the subscription is not looked up again after saving.
+     * The inline keyboard is updated through the blocking Telegram client, off the database driver threads.
+     *
+     * @param callbackQuery The Telegram callback query received from the user.
+     * @return A Mono emitting the response to the callback query.
+     */
+    @Override
+    public Mono<SendMessage> handleCallbackQueryAsync(CallbackQuery callbackQuery) {
         final long chatId = callbackQuery.getMessage().getChatId();
         final String trainNumber = parseService.parseTrainNumberFromSubscribeQuery(callbackQuery);
         final String dateDepart = parseService.parseDateDepartFromSubscribeQuery(callbackQuery);
 
         Optional<UserTicketsSubscription> userSubscriptionOptional = parseQueryData(callbackQuery);
         if (userSubscriptionOptional.isEmpty()) {
-            return messagesService.getWarningReplyMessage(chatId, "reply.query.searchAgain");
+            return Mono.just(messagesService.getWarningReplyMessage(chatId, "reply.query.searchAgain"));
         }
 
         UserTicketsSubscription userSubscription = userSubscriptionOptional.get();
-        if (subscriptionService.hasTicketsSubscription(userSubscription)) {
-            return messagesService.getWarningReplyMessage(chatId, "reply.query.train.userHasSubscription");
-        }
-
-        subscriptionService.saveUserSubscription(userSubscription);
-
-        String newCallbackData = subscriptionService.getSubscriptionIdByTrainNumberAndDateDepart(trainNumber, dateDepart);
-        String callbackData = String.format("%s|%s", CallbackQueryType.UNSUBSCRIBE.name(), newCallbackData);
-
-        sendMessageService.updateAndSendInlineKeyBoardMessage(callbackQuery,
-                String.format("%s", UserButtonStatus.SUBSCRIBED), callbackData);
-
-        return messagesService.getReplyMessage(chatId, "reply.query.train.subscribed", Emojis.SUCCESS_SUBSCRIBED, trainNumber, dateDepart);
+        return subscriptionService.hasTicketsSubscriptionAsync(userSubscription)
+                .flatMap(hasSubscription -> hasSubscription
+                        ? Mono.just(messagesService.getWarningReplyMessage(chatId, "reply.query.train.userHasSubscription"))
+                        : subscriptionService.saveUserSubscriptionAsync(userSubscription)
+                                .publishOn(Schedulers.boundedElastic())
+                                .map(savedSubscription -> {
+                                    String callbackData = String.format("%s|%s", CallbackQueryType.UNSUBSCRIBE.name(), savedSubscription.getId());
+                                    sendMessageService.updateAndSendInlineKeyBoardMessage(callbackQuery,
+                                            String.format("%s", UserButtonStatus.SUBSCRIBED), callbackData);
+
+                                    return messagesService.getReplyMessage(chatId, "reply.query.train.subscribed",
+                                            Emojis.SUCCESS_SUBSCRIBED, trainNumber, dateDepart);
+                                }))
+                .onErrorResume(e -> Mono.just(messagesService.getWarningReplyMessage(chatId, "reply.query.failed")));
     }
 
     /**
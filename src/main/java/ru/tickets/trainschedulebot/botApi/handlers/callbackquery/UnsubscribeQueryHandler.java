@@ -5,7 +5,7 @@ import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
 import ru.tickets.trainschedulebot.botApi.handlers.state.UserButtonStatus;
-import ru.tickets.trainschedulebot.model.UserTicketsSubscription;
+import ru.tickets.trainschedulebot.model.TrainDeparture;
 import ru.tickets.trainschedulebot.service.ParseQueryDataService;
 import ru.tickets.trainschedulebot.service.ReplyMessagesService;
 import ru.tickets.trainschedulebot.service.SendMessageService;
@@ -36,7 +36,8 @@ public class UnsubscribeQueryHandler implements CallbackQueryHandler {
     }
 
     /**
-     * Handles the unsubscribe callback query.
+     * Handles the unsubscribe callback query. The subscription is removed with a single database operation
+     * returning the train needed to restore the subscribe button.
      *
      * @param callbackQuery The Telegram callback query received from the user.
      * @return SendMessage object with the response to the callback query.
@@ -46,22 +47,20 @@ public class UnsubscribeQueryHandler implements CallbackQueryHandler {
         final long chatId = callbackQuery.getMessage().getChatId();
 
         final String subscriptionID = parseService.parseSubscriptionIdFromUnsubscribeQuery(callbackQuery);
-        Optional<UserTicketsSubscription> optionalUserSubscription = subscriptionService.getUsersSubscriptionById(subscriptionID);
-        if (optionalUserSubscription.isEmpty()) {
+        Optional<TrainDeparture> optionalUnsubscribedTrain = subscriptionService.removeUserSubscription(chatId, subscriptionID);
+        if (optionalUnsubscribedTrain.isEmpty()) {
             return messagesService.getWarningReplyMessage(chatId, "reply.query.train.userHasNoSubscription");
         }
 
-        String trainNumber = subscriptionService.getTrainNumberBySubscriptionId(subscriptionID);
-        String dateDepart = subscriptionService.getDateDepartBySubscriptionId(subscriptionID);
-        String callbackData = String.format("%s|%s|%s", CallbackQueryType.SUBSCRIBE.name(), trainNumber, dateDepart);
-
-        UserTicketsSubscription userSubscription = optionalUserSubscription.get();
-        subscriptionService.deleteUserSubscriptionById(subscriptionID);
+        TrainDeparture unsubscribedTrain = optionalUnsubscribedTrain.get();
+        String callbackData = String.format("%s|%s|%s", CallbackQueryType.SUBSCRIBE.name(),
+                unsubscribedTrain.trainNumber(), unsubscribedTrain.dateDepart());
 
         sendMessageService.updateAndSendInlineKeyBoardMessage(callbackQuery,
                 String.format("%s", UserButtonStatus.UNSUBSCRIBED),
                 callbackData);
 
-        return messagesService.getReplyMessage(chatId, "reply.query.train.unsubscribed", Emojis.SUCCESS_UNSUBSCRIBED, userSubscription.getTrainNumber(), userSubscription.getDateDepart());
+        return messagesService.getReplyMessage(chatId, "reply.query.train.unsubscribed", Emojis.SUCCESS_UNSUBSCRIBED,
+                unsubscribedTrain.trainNumber(), unsubscribedTrain.dateDepart());
     }
 }
\ No newline at end of file
@@ -4,6 +4,8 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.Message;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import ru.tickets.trainschedulebot.botApi.handlers.InputMessageHandler;
 import ru.tickets.trainschedulebot.botApi.handlers.callbackquery.CallbackQueryType;
 import ru.tickets.trainschedulebot.botApi.handlers.state.BotState;
@@ -20,7 +22,7 @@ import java.util.List;
 
 /**
  * Handles user requests related to subscriptions. Displays a list of subscribed trains and cars
- * through an inline keyboard. If the user has no subscriptions, redirects to the main menu.
+ * through an inline keyboard, with buttons to unsubscribe and to show the price history of a train. If the user has no subscriptions, redirects to the main menu.
  *
  * @author Elgun Dilanchiev
  * @version 1.0
@@ -37,14 +39,39 @@ public class SubscriptionsMenuHandler implements InputMessageHandler {
     /**
      * Handles the user's request to view their subscriptions. Sends an inline keyboard with a list of subscribed trains and cars.
      * If the user has no subscriptions, redirects to the main menu.
+     * This synchronous variant waits for {@link #handleAsync(Message)}, which the bot uses to handle updates.
      *
      * @param message The Telegram message received from the user.
      * @return SendMessage object with the response to the user's request.
      */
     @Override
     public SendMessage handle(Message message) {
-        List<UserTicketsSubscription> usersSubscriptions = subscribeService.getUsersSubscriptionsByChatId(message.getChatId());
+        return handleAsync(message).block();
+    }
+
+    /**
+     * Handles the user's request to view their subscriptions, reading them from the database without blocking.
+     * The inline keyboards are sent through the blocking Telegram client, off the database driver threads.
+     *
+     * @param message The Telegram message received from the user.
+     * @return A Mono emitting the response to the user's request.
+     */
+    @Override
+    public Mono<SendMessage> handleAsync(Message message) {
+        return subscribeService.getUsersSubscriptionsByChatIdAsync(message.getChatId())
+                .collectList()
+                .publishOn(Schedulers.boundedElastic())
+                .map(usersSubscriptions -> replyWithSubscriptions(usersSubscriptions, message));
+    }
 
+    /**
+     * Sends the user's subscriptions, or redirects to the main menu if the user has none.
+     *
+     * @param usersSubscriptions List of UserTicketsSubscription representing the user's subscriptions.
+     * @param message            The Telegram message received from the user.
+     * @return SendMessage object with the response to the user's request.
+     */
+    private SendMessage replyWithSubscriptions(List<UserTicketsSubscription> usersSubscriptions, Message message) {
         if (usersSubscriptions.isEmpty()) {
             userDataCache.setUsersCurrentBotState(Math.toIntExact(message.getFrom().getId()), BotState.SHOW_MAIN_MENU);
             return messagesService.getReplyMessage(message.getChatId(), "reply.subscriptions.userHasNoSubscriptions");
@@ -72,8 +99,10 @@ public class SubscriptionsMenuHandler implements InputMessageHandler {
 
             String subscriptionInfo = getSubscriptionInfo(subscription, carsInfo);
             String unsubscribeCallbackData = getUnsubscribeCallbackData(subscription);
+            String priceHistoryCallbackData = getPriceHistoryCallbackData(subscription);
 
-            sendMessageService.sendInlineKeyBoardMessage(message.getChatId(), subscriptionInfo, UserButtonStatus.SUBSCRIBED.toString(), unsubscribeCallbackData);
+            sendMessageService.sendInlineKeyBoardMessage(message.getChatId(), subscriptionInfo, UserButtonStatus.SUBSCRIBED.toString(), unsubscribeCallbackData,
+                    messagesService.getReplyText("reply.subscriptions.priceHistoryButton"), priceHistoryCallbackData);
         }
     }
 
@@ -112,6 +141,16 @@ public class SubscriptionsMenuHandler implements InputMessageHandler {
         return String.format("%s|%s", CallbackQueryType.UNSUBSCRIBE, subscription.getId());
     }
 
+    /**
+     * Generates callback data for showing the price history of a subscribed train.
+     *
+     * @param subscription The UserTicketsSubscription object representing the user's subscription.
+     * @return String containing the callback data for showing the price history.
+     */
+    private String getPriceHistoryCallbackData(UserTicketsSubscription subscription) {
+        return String.format("%s|%s", CallbackQueryType.PRICE_HISTORY, subscription.getId());
+    }
+
     /**
      * Gets the handler's name representing the state.
      *
@@ -3,6 +3,7 @@ package ru.tickets.trainschedulebot.botApi.handlers.state;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.Message;
+import reactor.core.publisher.Mono;
 import ru.tickets.trainschedulebot.botApi.handlers.InputMessageHandler;
 
 import java.util.HashMap;
@@ -36,11 +37,11 @@ public class BotStateContext {
      *
      * @param currentState The current state of the bot.
      * @param message      The input message to be processed.
-     * @return SendMessage response based on the handled input.
+     * @return A Mono emitting the response based on the handled input.
      */
-    public SendMessage handleInputMessage(BotState currentState, Message message) {
+    public Mono<SendMessage> handleInputMessageAsync(BotState currentState, Message message) {
         InputMessageHandler currentMessageHandler = findMessageHandler(currentState);
-        return currentMessageHandler.handle(message);
+        return currentMessageHandler.handleAsync(message);
     }
 
     /**
@@ -2,22 +2,28 @@ package ru.tickets.trainschedulebot.botApi.handlers.trainsearch;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.Message;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import ru.tickets.trainschedulebot.botApi.handlers.state.BotState;
 import ru.tickets.trainschedulebot.botApi.handlers.InputMessageHandler;
 import ru.tickets.trainschedulebot.cache.UserDataCache;
 import ru.tickets.trainschedulebot.model.Train;
 import ru.tickets.trainschedulebot.service.ReplyMessagesService;
+import ru.tickets.trainschedulebot.service.SendMessageService;
 import ru.tickets.trainschedulebot.service.SendTicketsInfoService;
 import ru.tickets.trainschedulebot.service.StationCodeService;
 import ru.tickets.trainschedulebot.service.TrainTicketsGetInfoService;
+import ru.tickets.trainschedulebot.utils.DateTimeUtils;
+import ru.tickets.trainschedulebot.utils.Emojis;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Handler for processing train search-related user input.
@@ -33,11 +39,24 @@ import java.util.List;
 @Component
 @RequiredArgsConstructor
 public class TrainSearchHandler implements InputMessageHandler {
+
+    /**
+     * Separator between the first and the last date of a date range entered by the user.
+     */
+    private static final String DATE_RANGE_SEPARATOR = "-";
+
+    /**
+     * The maximum number of days of a date range the trains are searched over.
+     */
+    @Value("${trainSearch.maxDateRangeDays}")
+    private int maxDateRangeDays = 7;
+
     private final UserDataCache userDataCache;
     private final TrainTicketsGetInfoService trainTicketsService;
     private final StationCodeService stationCodeService;
     private final SendTicketsInfoService sendTicketsInfoService;
     private final ReplyMessagesService messagesService;
+    private final SendMessageService sendMessageService;
 
     /**
      * Handles the user's input message and processes it based on the current bot state.
@@ -102,6 +121,9 @@ public class TrainSearchHandler implements InputMessageHandler {
             case DATE_DEPART_RECEIVED:
                 replyToUser = processDateDepartReceived(userId, chatId, inputMessageText, requestData);
                 break;
+            case TRAIN_INFO_RESPONSE_AWAITING:
+                replyToUser = messagesService.getReplyMessage(chatId, "reply.trainSearch.searchInProgress");
+                break;
             default:
                 return messagesService.getWarningReplyMessage(chatId, "reply.query.failed");
         }
@@ -169,6 +191,9 @@ public class TrainSearchHandler implements InputMessageHandler {
 
     /**
      * Processes the user's input during the "Date Depart Received" state.
+     * The user may enter either a single date or a date range, in which case all dates of the range are searched.
+     * The train search is executed without blocking the calling thread, its results are sent
+     * to the user once they are received.
      *
      * @param userId The ID of the user.
      * @param chatId The ID of the chat.
@@ -177,24 +202,93 @@ public class TrainSearchHandler implements InputMessageHandler {
      * @return The reply message to be sent back to the user.
      */
     private SendMessage processDateDepartReceived(long userId, long chatId, String inputMessageText, TrainSearchRequestData requestData) {
-        Date dateDepart;
-        try {
-            SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy");
-            dateFormat.setLenient(false);
-            dateDepart = dateFormat.parse(inputMessageText);
-        } catch (ParseException e) {
+        String[] dates = inputMessageText.split(DATE_RANGE_SEPARATOR, 2);
+        Optional<LocalDate> parsedDateDepart = DateTimeUtils.parseDate(dates[0]);
+        Optional<LocalDate> parsedDateDepartTo = dates.length == 2 ? DateTimeUtils.parseDate(dates[1]) : parsedDateDepart;
+        if (parsedDateDepart.isEmpty() || parsedDateDepartTo.isEmpty()) {
             return messagesService.getWarningReplyMessage(chatId, "reply.trainSearch.wrongTimeFormat");
         }
+
+        LocalDate dateDepart = parsedDateDepart.get();
+        LocalDate dateDepartTo = parsedDateDepartTo.get();
+        if (!isValidDateRange(dateDepart, dateDepartTo)) {
+            return messagesService.getReplyMessage(chatId, "reply.trainSearch.wrongDateRange",
+                    Emojis.NOTIFICATION_MARK_FAILED, maxDateRangeDays);
+        }
+
         requestData.setDateDepart(dateDepart);
+        requestData.setDateDepartTo(dateDepartTo);
+        userDataCache.setUsersCurrentBotState(userId, BotState.TRAIN_INFO_RESPONSE_AWAITING);
 
-        List<Train> trainList = trainTicketsService.getTrainTicketsList(chatId, requestData.getDepartureStationCode(),
-                requestData.getArrivalStationCode(), dateDepart);
+        searchTrains(requestData)
+                .publishOn(Schedulers.boundedElastic())
+                .subscribe(trainList -> sendTrainSearchResult(userId, chatId, trainList),
+                        e -> sendTrainSearchFailure(userId, chatId, e));
+
+        return messagesService.getReplyMessage(chatId, "reply.trainSearch.searchStarted");
+    }
+
+    /**
+     * Checks that the date range is ordered and does not exceed the maximum number of days.
+     *
+     * @param dateDepart   The first date of the range.
+     * @param dateDepartTo The last date of the range.
+     * @return True if the date range can be searched, false otherwise.
+     */
+    private boolean isValidDateRange(LocalDate dateDepart, LocalDate dateDepartTo) {
+        long days = ChronoUnit.DAYS.between(dateDepart, dateDepartTo) + 1;
+        return days >= 1 && days <= maxDateRangeDays;
+    }
+
+    /**
+     * Searches trains for the single date or the date range of the request.
+     *
+     * @param requestData The train search request data.
+     * @return A Mono emitting the list of found trains.
+     */
+    private Mono<List<Train>> searchTrains(TrainSearchRequestData requestData) {
+        if (requestData.getDateDepart().equals(requestData.getDateDepartTo())) {
+            return trainTicketsService.getTrainTicketsListAsync(requestData.getDepartureStationCode(),
+                    requestData.getArrivalStationCode(), requestData.getDateDepart());
+        }
+        return trainTicketsService.getTrainTicketsListAsync(requestData.getDepartureStationCode(),
+                requestData.getArrivalStationCode(), requestData.getDateDepart(), requestData.getDateDepartTo());
+    }
+
+    /**
+     * Sends the result of the train search to the user and moves the conversation to the next state.
+     *
+     * @param userId The ID of the user.
+     * @param chatId The ID of the chat.
+     * @param trainList The list of found trains.
+     */
+    private void sendTrainSearchResult(long userId, long chatId, List<Train> trainList) {
         if (trainList.isEmpty()) {
-            return messagesService.getReplyMessage(chatId, "reply.trainSearch.trainsNotFound");
+            userDataCache.setUsersCurrentBotState(userId, BotState.DATE_DEPART_RECEIVED);
+            sendMessageService.sendMessage(messagesService.getReplyMessage(chatId, "reply.trainSearch.trainsNotFound"));
+            return;
         }
 
         sendTicketsInfoService.sendTrainTicketsInfo(chatId, trainList);
         userDataCache.setUsersCurrentBotState(userId, BotState.SHOW_MAIN_MENU);
-        return messagesService.getSuccessReplyMessage(chatId, "reply.trainSearch.finishedOK");
+        sendMessageService.sendMessage(messagesService.getSuccessReplyMessage(chatId, "reply.trainSearch.finishedOK"));
+    }
+
+    /**
+     * Tells the user that the train search has failed and lets them enter another departure date.
+     *
+     * @param userId The ID of the user.
+     * @param chatId The ID of the chat.
+     * @param error  The cause of the failure.
+     */
+    private void sendTrainSearchFailure(long userId, long chatId, Throwable error) {
+        userDataCache.setUsersCurrentBotState(userId, BotState.DATE_DEPART_RECEIVED);
+        if (error instanceof TrainTicketsGetInfoService.DateOutOfBoundException) {
+            sendMessageService.sendMessage(messagesService.getWarningReplyMessage(chatId, "reply.trainSearch.dateOutOfBoundError"));
+            return;
+        }
+
+        log.error("Error occurred while searching trains: {}", error.getMessage(), error);
+        sendMessageService.sendMessage(messagesService.getWarningReplyMessage(chatId, "reply.query.failed"));
     }
 }
\ No newline at end of file
@@ -4,7 +4,7 @@ import lombok.AccessLevel;
 import lombok.Data;
 import lombok.experimental.FieldDefaults;
 
-import java.util.Date;
+import java.time.LocalDate;
 
 /**
  * Data class representing the user's input data during the train search conversation flow.
@@ -40,5 +40,10 @@ public class TrainSearchRequestData {
     /**
      * The date of departure.
      */
-    private Date dateDepart;
+    private LocalDate dateDepart;
+
+    /**
+     * The last date of departure when searching over a date range, equal to the date of departure otherwise.
+     */
+    private LocalDate dateDepartTo;
 }
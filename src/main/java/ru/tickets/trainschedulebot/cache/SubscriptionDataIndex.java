@@ -0,0 +1,307 @@
+package ru.tickets.trainschedulebot.cache;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.model.changestream.OperationType;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonValue;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+import ru.tickets.trainschedulebot.model.TrainDeparture;
+import ru.tickets.trainschedulebot.model.UserTicketsSubscription;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * The {@code SubscriptionDataIndex} class is an implementation of the {@link SubscriptionIndex} interface
+ * that keeps all user subscriptions in memory, indexed by ID, by chat and by train.
+ * <p>
+ * The index is loaded at startup and reloaded every {@code reloadPeriod}. Between reloads it is kept up to date
+ * by the writes of this instance, through {@code SubscriptionService}, and by the writes of the other bot
+ * instances, through a change stream of the subscriptions collection. Changes arriving while a reload reads
+ * the collection are recorded and replayed onto the reloaded subscriptions before they replace the current ones,
+ * so that the reload does not undo them.
+ * <p>
+ * The change stream needs a replica set. If it fails, it is reopened every {@code changeStreamRetryDelay}; on a
+ * standalone server, which does not support change streams at all, it is not reopened, and the changes made by
+ * other instances are only picked up by the reloads.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-23
+ */
+@Slf4j
+@Service
+public class SubscriptionDataIndex implements SubscriptionIndex {
+
+    /**
+     * Error code of the server refusing to open a change stream, since it is not a member of a replica set.
+     */
+    private static final int CHANGE_STREAM_UNSUPPORTED_ERROR_CODE = 40573;
+
+    private final MongoTemplate mongoTemplate;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final Duration changeStreamRetryDelay;
+
+    /**
+     * The indexed subscriptions, or {@code null} until the index has been loaded.
+     */
+    private volatile Entries entries;
+
+    /**
+     * Guards the changes of the index, so that none is lost while a reload replaces the indexed subscriptions.
+     */
+    private final Object changesLock = new Object();
+
+    /**
+     * The changes applied while a reload reads the subscriptions, {@code null} while no reload is in progress.
+     */
+    private List<Consumer<Entries>> changesDuringReload;
+
+    private Disposable changeStream;
+
+    /**
+     * Constructs a new SubscriptionDataIndex with the specified settings.
+     *
+     * @param mongoTemplate          The MongoTemplate the subscriptions are loaded with.
+     * @param reactiveMongoTemplate  The ReactiveMongoTemplate the change stream is opened with.
+     * @param changeStreamRetryDelay The delay before reopening a failed change stream.
+     */
+    public SubscriptionDataIndex(MongoTemplate mongoTemplate, ReactiveMongoTemplate reactiveMongoTemplate,
+                                 @Value("${subscriptionIndex.changeStreamRetryDelay}") Duration changeStreamRetryDelay) {
+        this.mongoTemplate = mongoTemplate;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.changeStreamRetryDelay = changeStreamRetryDelay;
+    }
+
+    /**
+     * Opens the change stream of the subscriptions collection, applying the changes to the index.
+     * A failed change stream is reopened, unless the server does not support change streams.
+     */
+    @PostConstruct
+    public void watchChanges() {
+        ChangeStreamOptions options = ChangeStreamOptions.builder().returnFullDocumentOnUpdate().build();
+        changeStream = reactiveMongoTemplate.changeStream(reactiveMongoTemplate.getCollectionName(UserTicketsSubscription.class),
+                        options, UserTicketsSubscription.class)
+                .doOnNext(this::applyChange)
+                .doOnError(e -> !isChangeStreamUnsupported(e), e ->
+                        log.warn("Change stream of subscriptions failed, reopening in {}: {}", changeStreamRetryDelay, e.getMessage()))
+                .retryWhen(Retry.fixedDelay(Long.MAX_VALUE, changeStreamRetryDelay).filter(e -> !isChangeStreamUnsupported(e)))
+                .subscribe(event -> { }, e -> log.info("Change streams are not supported by the database, subscriptions "
+                        + "changed by other instances are picked up by the periodic reload: {}", e.getMessage()));
+    }
+
+    /**
+     * Checks whether a change stream failed because the server does not support change streams.
+     *
+     * @param e The failure of the change stream.
+     * @return True if the server does not support change streams, false otherwise.
+     */
+    static boolean isChangeStreamUnsupported(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoCommandException commandException
+                    && commandException.getErrorCode() == CHANGE_STREAM_UNSUPPORTED_ERROR_CODE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Closes the change stream of the subscriptions collection.
+     */
+    @PreDestroy
+    public void stopWatchingChanges() {
+        if (changeStream != null) {
+            changeStream.dispose();
+        }
+    }
+
+    /**
+     * Scheduled task loading all subscriptions from the database into a new index, which then replaces
+     * the current one. The first run loads the index at startup. If loading fails, the current index is kept.
+     * The changes applied while the subscriptions are read are replayed onto the loaded subscriptions, since
+     * the read may have returned the subscriptions as they were before the changes.
+     */
+    @Scheduled(fixedDelayString = "${subscriptionIndex.reloadPeriod}")
+    public synchronized void reload() {
+        synchronized (changesLock) {
+            changesDuringReload = new ArrayList<>();
+        }
+
+        Entries loadedEntries = new Entries();
+        try (Stream<UserTicketsSubscription> subscriptions = mongoTemplate.stream(new Query(), UserTicketsSubscription.class)) {
+            subscriptions.forEach(loadedEntries::put);
+        } catch (DataAccessException e) {
+            log.error("Error occurred while loading the subscription index: {}", e.getMessage(), e);
+            synchronized (changesLock) {
+                changesDuringReload = null;
+            }
+            return;
+        }
+
+        synchronized (changesLock) {
+            changesDuringReload.forEach(change -> change.accept(loadedEntries));
+            log.debug("Loaded {} subscriptions into the subscription index, replayed {} changes made while loading",
+                    loadedEntries.size(), changesDuringReload.size());
+            changesDuringReload = null;
+            entries = loadedEntries;
+        }
+    }
+
+    @Override
+    public boolean isLoaded() {
+        return entries != null;
+    }
+
+    @Override
+    public Optional<UserTicketsSubscription> getById(String subscriptionId) {
+        Entries currentEntries = entries;
+        return currentEntries == null ? Optional.empty() : Optional.ofNullable(currentEntries.byId.get(subscriptionId));
+    }
+
+    @Override
+    public List<UserTicketsSubscription> getByChatId(long chatId) {
+        Entries currentEntries = entries;
+        return currentEntries == null ? List.of() : currentEntries.get(currentEntries.byChatId.get(chatId));
+    }
+
+    @Override
+    public List<UserTicketsSubscription> getByTrain(TrainDeparture train) {
+        Entries currentEntries = entries;
+        return currentEntries == null ? List.of() : currentEntries.get(currentEntries.byTrain.get(train));
+    }
+
+    @Override
+    public void put(UserTicketsSubscription subscription) {
+        if (subscription.getId() != null) {
+            changeEntries(changedEntries -> changedEntries.put(subscription));
+        }
+    }
+
+    @Override
+    public void remove(String subscriptionId) {
+        changeEntries(changedEntries -> changedEntries.remove(subscriptionId));
+    }
+
+    /**
+     * Applies a change to the indexed subscriptions and records it for the reload in progress, if any.
+     *
+     * @param change The change of the indexed subscriptions.
+     */
+    private void changeEntries(Consumer<Entries> change) {
+        synchronized (changesLock) {
+            Entries currentEntries = entries;
+            if (currentEntries != null) {
+                change.accept(currentEntries);
+            }
+            if (changesDuringReload != null) {
+                changesDuringReload.add(change);
+            }
+        }
+    }
+
+    private void applyChange(ChangeStreamEvent<UserTicketsSubscription> event) {
+        BsonValue documentId = event.getRaw() == null ? null : event.getRaw().getDocumentKey().get("_id");
+        String subscriptionId = documentId == null ? null
+                : documentId.isObjectId() ? documentId.asObjectId().getValue().toHexString()
+                : documentId.isString() ? documentId.asString().getValue() : null;
+        applyChange(event.getOperationType(), subscriptionId, event.getBody());
+    }
+
+    /**
+     * Applies a change of the subscriptions collection to the index.
+     *
+     * @param operationType  The type of the change.
+     * @param subscriptionId The ID of the changed subscription, or {@code null} if unknown.
+     * @param subscription   The subscription after the change, or {@code null} if it has been deleted.
+     */
+    void applyChange(OperationType operationType, String subscriptionId, UserTicketsSubscription subscription) {
+        if (operationType == null) {
+            return;
+        }
+        switch (operationType) {
+            case INSERT, UPDATE, REPLACE, DELETE -> {
+                if (subscription != null) {
+                    put(subscription);
+                } else if (subscriptionId != null) {
+                    remove(subscriptionId);
+                }
+            }
+            // The change stream is closed by these changes and reopened, the index is reloaded off the driver threads
+            case DROP, DROP_DATABASE, RENAME, INVALIDATE -> Schedulers.boundedElastic().schedule(this::reload);
+            default -> log.debug("Ignoring change of subscriptions of type {}", operationType);
+        }
+    }
+
+    /**
+     * The indexed subscriptions. Writes are serialized, so that the indexes by chat and by train always follow
+     * the subscriptions indexed by ID; reads are lock-free. Subscriptions are returned in the order of their IDs,
+     * which is the order they were created in.
+     */
+    private static final class Entries {
+        private final Map<String, UserTicketsSubscription> byId = new ConcurrentHashMap<>();
+        private final Map<Long, Set<String>> byChatId = new ConcurrentHashMap<>();
+        private final Map<TrainDeparture, Set<String>> byTrain = new ConcurrentHashMap<>();
+
+        private synchronized void put(UserTicketsSubscription subscription) {
+            remove(subscription.getId());
+            byId.put(subscription.getId(), subscription);
+            byChatId.computeIfAbsent(subscription.getChatId(), chatId -> ConcurrentHashMap.newKeySet()).add(subscription.getId());
+            byTrain.computeIfAbsent(TrainDeparture.of(subscription), train -> ConcurrentHashMap.newKeySet()).add(subscription.getId());
+        }
+
+        private synchronized void remove(String subscriptionId) {
+            UserTicketsSubscription removed = byId.remove(subscriptionId);
+            if (removed == null) {
+                return;
+            }
+            removeKey(byChatId, removed.getChatId(), subscriptionId);
+            removeKey(byTrain, TrainDeparture.of(removed), subscriptionId);
+        }
+
+        private <K> void removeKey(Map<K, Set<String>> index, K key, String subscriptionId) {
+            index.computeIfPresent(key, (k, ids) -> {
+                ids.remove(subscriptionId);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+
+        private List<UserTicketsSubscription> get(Collection<String> subscriptionIds) {
+            if (subscriptionIds == null) {
+                return List.of();
+            }
+            return subscriptionIds.stream()
+                    .map(byId::get)
+                    .filter(Objects::nonNull)
+                    .sorted(Comparator.comparing(UserTicketsSubscription::getId))
+                    .toList();
+        }
+
+        private int size() {
+            return byId.size();
+        }
+    }
+}
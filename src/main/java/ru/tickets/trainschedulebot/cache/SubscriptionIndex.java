@@ -0,0 +1,67 @@
+package ru.tickets.trainschedulebot.cache;
+
+import ru.tickets.trainschedulebot.model.TrainDeparture;
+import ru.tickets.trainschedulebot.model.UserTicketsSubscription;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The {@code SubscriptionIndex} interface represents an in-memory index of the user subscriptions stored
+ * in the database, serving the read paths of the bot without a database round trip.
+ * <p>
+ * The database remains the source of truth: the index is loaded from it and is only updated after the
+ * corresponding write to the database has succeeded. Until the index is loaded, reads have to go to the database.
+ * The subscriptions returned by the index are shared between readers and must not be modified by them.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-23
+ */
+public interface SubscriptionIndex {
+
+    /**
+     * Checks if the index has been loaded and may serve reads.
+     *
+     * @return True if the index is loaded, false otherwise.
+     */
+    boolean isLoaded();
+
+    /**
+     * Retrieves a subscription by its ID.
+     *
+     * @param subscriptionId The ID of the subscription.
+     * @return An optional containing the subscription, or empty if it is not indexed.
+     */
+    Optional<UserTicketsSubscription> getById(String subscriptionId);
+
+    /**
+     * Retrieves the subscriptions of a user.
+     *
+     * @param chatId The chat ID of the user.
+     * @return A list of the user's subscriptions.
+     */
+    List<UserTicketsSubscription> getByChatId(long chatId);
+
+    /**
+     * Retrieves the subscriptions of all users to a train.
+     *
+     * @param train The number and departure date of the train.
+     * @return A list of the subscriptions to the train.
+     */
+    List<UserTicketsSubscription> getByTrain(TrainDeparture train);
+
+    /**
+     * Adds a saved subscription to the index, replacing its previous version.
+     *
+     * @param subscription The saved user subscription.
+     */
+    void put(UserTicketsSubscription subscription);
+
+    /**
+     * Removes a deleted subscription from the index.
+     *
+     * @param subscriptionId The ID of the deleted subscription.
+     */
+    void remove(String subscriptionId);
+}
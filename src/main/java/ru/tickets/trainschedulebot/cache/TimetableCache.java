@@ -0,0 +1,31 @@
+package ru.tickets.trainschedulebot.cache;
+
+import reactor.core.publisher.Mono;
+import ru.tickets.trainschedulebot.model.Train;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The {@code TimetableCache} interface represents a caching mechanism for train timetables
+ * received from the remote API, keyed by route and departure date.
+ * <p>
+ * Implementations of this interface should make sure that concurrent requests for the same key
+ * share a single request to the remote API.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-10
+ */
+public interface TimetableCache {
+
+    /**
+     * Retrieves the trains for the specified timetable key, loading them with the provided loader
+     * if they are not cached or have expired.
+     *
+     * @param key    The {@link TimetableKey} identifying the route and departure date.
+     * @param loader Supplier of the request loading the trains from the remote API.
+     * @return A Mono emitting the list of {@link Train} objects for the key.
+     */
+    Mono<List<Train>> getTrains(TimetableKey key, Supplier<Mono<List<Train>>> loader);
+}
@@ -0,0 +1,137 @@
+package ru.tickets.trainschedulebot.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import ru.tickets.trainschedulebot.model.Train;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * The {@code TimetableDataCache} class is an implementation of the {@link TimetableCache} interface
+ * that keeps train timetables in memory for a limited time.
+ * <p>
+ * A cached timetable is fresh for {@code ttl}. After that it is still served for {@code staleWhileRevalidate}
+ * while it is reloaded in the background. Concurrent requests for the same key share one in-flight request,
+ * and the oldest timetable is evicted once the cache holds more than {@code maxSize} entries.
+ * Empty timetables are not cached, since trains may still be added to a date that has no trains yet.
+ * Failed loads are not cached either, their errors are passed to all requests sharing the load.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-10
+ */
+@Slf4j
+@Service
+public class TimetableDataCache implements TimetableCache {
+
+    /**
+     * The in-memory cache to store loaded timetables, ordered by the time they were loaded at.
+     */
+    private final Map<TimetableKey, CachedTimetable> timetables;
+
+    /**
+     * The requests to the remote API currently in flight, shared by all requests for the same key.
+     */
+    private final Map<TimetableKey, Mono<List<Train>>> inFlightRequests = new ConcurrentHashMap<>();
+
+    private final long ttlNanos;
+    private final long staleWhileRevalidateNanos;
+
+    /**
+     * Constructs a new TimetableDataCache with the specified expiration settings.
+     *
+     * @param ttl                  The time a loaded timetable is considered fresh.
+     * @param staleWhileRevalidate The time an expired timetable is still served while it is being reloaded.
+     * @param maxSize              The maximum number of cached timetables.
+     */
+    public TimetableDataCache(@Value("${timetableCache.ttl}") Duration ttl,
+                              @Value("${timetableCache.staleWhileRevalidate}") Duration staleWhileRevalidate,
+                              @Value("${timetableCache.maxSize}") int maxSize) {
+        this.ttlNanos = ttl.toNanos();
+        this.staleWhileRevalidateNanos = staleWhileRevalidate.toNanos();
+        this.timetables = Collections.synchronizedMap(new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TimetableKey, CachedTimetable> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    /**
+     * Retrieves the trains for the specified timetable key. Fresh timetables are served from memory,
+     * stale ones are served from memory and reloaded in the background, missing or expired ones are loaded.
+     *
+     * @param key    The {@link TimetableKey} identifying the route and departure date.
+     * @param loader Supplier of the request loading the trains from the remote API.
+     * @return A Mono emitting the list of {@link Train} objects for the key.
+     */
+    @Override
+    public Mono<List<Train>> getTrains(TimetableKey key, Supplier<Mono<List<Train>>> loader) {
+        return Mono.defer(() -> {
+            CachedTimetable cachedTimetable = timetables.get(key);
+            if (cachedTimetable != null) {
+                long age = System.nanoTime() - cachedTimetable.loadedAt();
+                if (age < ttlNanos) {
+                    return Mono.just(cachedTimetable.trains());
+                }
+                if (age < ttlNanos + staleWhileRevalidateNanos) {
+                    log.debug("Serving stale timetable for {} while reloading it", key);
+                    load(key, loader).subscribe(trains -> { },
+                            e -> log.warn("Failed to reload stale timetable for {}: {}", key, e.getMessage()));
+                    return Mono.just(cachedTimetable.trains());
+                }
+                timetables.remove(key, cachedTimetable);
+            }
+            return load(key, loader);
+        });
+    }
+
+    /**
+     * Loads the trains for the specified key, joining the request already in flight for the key if there is one.
+     *
+     * @param key    The {@link TimetableKey} identifying the route and departure date.
+     * @param loader Supplier of the request loading the trains from the remote API.
+     * @return A Mono emitting the loaded list of {@link Train} objects.
+     */
+    private Mono<List<Train>> load(TimetableKey key, Supplier<Mono<List<Train>>> loader) {
+        return inFlightRequests.computeIfAbsent(key, timetableKey -> loader.get()
+                .doOnNext(trains -> cacheTrains(timetableKey, trains))
+                .doFinally(signalType -> inFlightRequests.remove(timetableKey))
+                .cache());
+    }
+
+    /**
+     * Adds a loaded timetable to the in-memory cache, evicting the oldest timetable if the cache is full.
+     *
+     * @param key    The {@link TimetableKey} identifying the route and departure date.
+     * @param trains The loaded list of {@link Train} objects.
+     */
+    private void cacheTrains(TimetableKey key, List<Train> trains) {
+        if (trains.isEmpty()) {
+            return;
+        }
+
+        synchronized (timetables) {
+            // Reloaded timetables are moved to the end, so that the map stays ordered by the time of loading
+            timetables.remove(key);
+            timetables.put(key, new CachedTimetable(List.copyOf(trains), System.nanoTime()));
+        }
+    }
+
+    /**
+     * A timetable stored in the cache together with the {@link System#nanoTime()} value at which it was loaded.
+     *
+     * @param trains   The loaded list of {@link Train} objects.
+     * @param loadedAt The {@link System#nanoTime()} value at which the timetable was loaded.
+     */
+    private record CachedTimetable(List<Train> trains, long loadedAt) {
+    }
+}
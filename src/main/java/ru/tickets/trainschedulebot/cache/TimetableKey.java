@@ -0,0 +1,17 @@
+package ru.tickets.trainschedulebot.cache;
+
+import java.time.LocalDate;
+
+/**
+ * The {@code TimetableKey} record identifies a timetable of the remote API by route and departure date.
+ *
+ * @param stationDepartCode  The code of the departure station.
+ * @param stationArrivalCode The code of the arrival station.
+ * @param dateDepart         The departure date.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-10
+ */
+public record TimetableKey(int stationDepartCode, int stationArrivalCode, LocalDate dateDepart) {
+}
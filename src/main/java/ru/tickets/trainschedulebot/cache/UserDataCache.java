@@ -6,6 +6,7 @@ import ru.tickets.trainschedulebot.botApi.handlers.trainsearch.TrainSearchReques
 import ru.tickets.trainschedulebot.model.Train;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The {@code UserDataCache} class is an implementation of the {@link DataCache} interface
@@ -26,17 +27,17 @@ public class UserDataCache implements DataCache {
     /**
      * Map to store the current bot state for each user identified by their unique user ID.
      */
-    private final Map<Long, BotState> usersBotStates = new HashMap<>();
+    private final Map<Long, BotState> usersBotStates = new ConcurrentHashMap<>();
 
     /**
      * Map to store user-specific train search data for each user identified by their unique user ID.
      */
-    private final Map<Long, TrainSearchRequestData> trainSearchUsersData = new HashMap<>();
+    private final Map<Long, TrainSearchRequestData> trainSearchUsersData = new ConcurrentHashMap<>();
 
     /**
      * Map to store the list of trains found during a search for each chat identified by its unique chat ID.
      */
-    private final Map<Long, List<Train>> searchFoundedTrains = new HashMap<>();
+    private final Map<Long, List<Train>> searchFoundedTrains = new ConcurrentHashMap<>();
 
     /**
      * Sets the current bot state for the specified user.
@@ -1,21 +1,53 @@
 package ru.tickets.trainschedulebot.config;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.MessageSource;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.support.ReloadableResourceBundleMessageSource;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
 
 /**
  * The {@code AppConfig} class is a Spring configuration class that defines and configures beans
  * for the application. It includes methods to create and customize beans such as {@link RestTemplate}
- * for making HTTP requests and {@link MessageSource} for handling message localization.
+ * and {@link WebClient} for making HTTP requests and {@link MessageSource} for handling message localization.
+ * <p>
+ * Both HTTP clients are backed by connection pools configured with {@link HttpClientProperties}.
  * <p>
  * This class is annotated with {@link Configuration} to indicate that it contains configuration
  * methods for creating and customizing beans.
  *
  * @see RestTemplate
+ * @see WebClient
  * @see MessageSource
  * @see RestTemplateBuilder
  * @see ReloadableResourceBundleMessageSource
@@ -27,15 +59,124 @@ import org.springframework.web.client.RestTemplate;
 @Configuration
 public class AppConfig {
 
+    /**
+     * Name of the connection pool metrics of the {@link RestTemplate} client.
+     */
+    private static final String REST_TEMPLATE_POOL_METRIC_NAME = "httpclient.pool.connections";
+
+    /**
+     * Name of the connection pool of the {@link WebClient} client.
+     */
+    private static final String WEB_CLIENT_CONNECTION_PROVIDER_NAME = "webclient";
+
+    /**
+     * Name prefix of the subscription processing threads.
+     */
+    private static final String SUBSCRIPTION_PROCESSING_THREAD_NAME = "subscription-processing";
+
+    /**
+     * Creates and configures a pooled connection manager for the {@link RestTemplate} client.
+     *
+     * @param properties The settings of the HTTP clients.
+     * @return The configured {@link PoolingHttpClientConnectionManager} bean.
+     */
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager httpClientConnectionManager(HttpClientProperties properties) {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(properties.getMaxConnectionsTotal())
+                .setMaxConnPerRoute(properties.getMaxConnectionsPerRoute())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(properties.getConnectTimeout()))
+                        .setSocketTimeout(Timeout.of(properties.getReadTimeout()))
+                        .build())
+                .build();
+    }
+
     /**
      * Creates and configures a {@link RestTemplate} bean for making HTTP requests.
+     * The template is backed by a pooled Apache HttpClient that evicts idle connections and accepts gzip responses.
      *
-     * @param builder The {@link RestTemplateBuilder} used to build the {@link RestTemplate}.
+     * @param builder           The {@link RestTemplateBuilder} used to build the {@link RestTemplate}.
+     * @param connectionManager The pooled connection manager of the client.
+     * @param properties        The settings of the HTTP clients.
+     * @param meterRegistry     The registry for connection pool metrics.
      * @return The configured {@link RestTemplate} bean.
      */
     @Bean
-    public RestTemplate restTemplate(RestTemplateBuilder builder) {
-        return builder.build();
+    public RestTemplate restTemplate(RestTemplateBuilder builder, PoolingHttpClientConnectionManager connectionManager,
+                                     HttpClientProperties properties, MeterRegistry meterRegistry) {
+        HttpClientBuilder httpClientBuilder = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.of(properties.getPendingAcquireTimeout()))
+                        .setResponseTimeout(Timeout.of(properties.getResponseTimeout()))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(properties.getMaxIdleTime()));
+
+        if (!properties.isCompressionEnabled()) {
+            httpClientBuilder.disableContentCompression();
+        }
+
+        CloseableHttpClient httpClient = httpClientBuilder.build();
+        bindConnectionPoolMetrics(connectionManager, meterRegistry);
+
+        return builder
+                .requestFactory(() -> new HttpComponentsClientHttpRequestFactory(httpClient))
+                .build();
+    }
+
+    /**
+     * Creates and configures a non-blocking {@link WebClient} bean for making HTTP requests
+     * without holding a thread for the whole request/response exchange.
+     * The client uses a pooled Reactor Netty connection provider that publishes its metrics to Micrometer.
+     * Reactor Netty keeps a separate pool per remote host: hosts are limited to {@code maxConnectionsTotal}
+     * connections by default, and the host of the remote API to {@code maxConnectionsPerRoute}.
+     *
+     * @param builder            The {@link WebClient.Builder} used to build the {@link WebClient}.
+     * @param properties         The settings of the HTTP clients.
+     * @param rzdRequestTemplate The request template of the remote API, the host of which gets the per-route limit.
+     * @return The configured {@link WebClient} bean.
+     */
+    @Bean
+    public WebClient webClient(WebClient.Builder builder, HttpClientProperties properties,
+                               @Value("${trainTicketsGetInfoService.ridRequestTemplate}") String rzdRequestTemplate) {
+        ConnectionProvider connectionProvider = ConnectionProvider.builder(WEB_CLIENT_CONNECTION_PROVIDER_NAME)
+                .maxConnections(properties.getMaxConnectionsTotal())
+                .forRemoteHost(getRemoteAddress(rzdRequestTemplate),
+                        hostSpec -> hostSpec.maxConnections(properties.getMaxConnectionsPerRoute()))
+                .pendingAcquireTimeout(properties.getPendingAcquireTimeout())
+                .maxIdleTime(properties.getMaxIdleTime())
+                .evictInBackground(properties.getEvictionInterval())
+                .metrics(true)
+                .build();
+
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, Math.toIntExact(properties.getConnectTimeout().toMillis()))
+                .responseTimeout(properties.getResponseTimeout())
+                .compress(properties.isCompressionEnabled())
+                .doOnConnected(connection -> connection.addHandlerLast(
+                        new ReadTimeoutHandler(properties.getReadTimeout().toMillis(), TimeUnit.MILLISECONDS)));
+
+        if (properties.isHttp2Enabled()) {
+            httpClient = httpClient.secure().protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        }
+
+        return builder
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+
+    /**
+     * Creates the scheduler subscription processing runs on. Processing a subscription saves it to the database
+     * and notifies the user, both blocking, so it runs on a bounded pool of worker threads.
+     *
+     * @param threads The number of worker threads.
+     * @return The configured {@link Scheduler} bean.
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler subscriptionProcessingScheduler(@Value("${subscriptions.processingThreads}") int threads) {
+        return Schedulers.newBoundedElastic(threads, Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE, SUBSCRIPTION_PROCESSING_THREAD_NAME);
     }
 
     /**
@@ -52,4 +193,46 @@ public class AppConfig {
         messageSource.setDefaultEncoding("UTF-8");
         return messageSource;
     }
-}
\ No newline at end of file
+
+    /**
+     * Resolves the remote address requests built from a URI template are sent to, in the unresolved form
+     * Reactor Netty uses as the key of its per-host connection pools.
+     *
+     * @param uriTemplate The URI template of the requests.
+     * @return The unresolved address of the remote host.
+     */
+    private InetSocketAddress getRemoteAddress(String uriTemplate) {
+        UriComponents uri = UriComponentsBuilder.fromUriString(uriTemplate).build();
+        int port = uri.getPort() != -1 ? uri.getPort() : "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        return InetSocketAddress.createUnresolved(uri.getHost(), port);
+    }
+
+    /**
+     * Registers gauges reporting the occupancy of the {@link RestTemplate} connection pool.
+     *
+     * @param connectionManager The pooled connection manager of the client.
+     * @param meterRegistry     The registry for connection pool metrics.
+     */
+    private void bindConnectionPoolMetrics(PoolingHttpClientConnectionManager connectionManager, MeterRegistry meterRegistry) {
+        registerConnectionPoolGauge(connectionManager, meterRegistry, "leased", PoolStats::getLeased);
+        registerConnectionPoolGauge(connectionManager, meterRegistry, "available", PoolStats::getAvailable);
+        registerConnectionPoolGauge(connectionManager, meterRegistry, "pending", PoolStats::getPending);
+        registerConnectionPoolGauge(connectionManager, meterRegistry, "max", PoolStats::getMax);
+    }
+
+    /**
+     * Registers a gauge reporting one statistic of the {@link RestTemplate} connection pool.
+     *
+     * @param connectionManager The pooled connection manager of the client.
+     * @param meterRegistry     The registry for connection pool metrics.
+     * @param state             The name of the reported statistic.
+     * @param statistic         Function extracting the statistic from the pool stats.
+     */
+    private void registerConnectionPoolGauge(PoolingHttpClientConnectionManager connectionManager, MeterRegistry meterRegistry,
+                                             String state, ToDoubleFunction<PoolStats> statistic) {
+        Gauge.builder(REST_TEMPLATE_POOL_METRIC_NAME, connectionManager, manager -> statistic.applyAsDouble(manager.getTotalStats()))
+                .description("Connections of the RestTemplate connection pool")
+                .tag("state", state)
+                .register(meterRegistry);
+    }
+}
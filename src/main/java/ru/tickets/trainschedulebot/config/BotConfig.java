@@ -22,7 +22,8 @@ import ru.tickets.trainschedulebot.botApi.TelegramFacade;
  * and configuration properties to externalize the bot-related settings.
  * <p>
  * This class configures and initializes the {@link TelegramBot} bean using the provided Telegram
- * Bot token, username, and webhook settings. Additionally, it sets up a proxy for the bot if specified
+ * Bot token, username, and webhook settings. The Telegram Bot API base URL may be overridden, for example to point
+ * the bot at a local stand-in server in tests. Additionally, it sets up a proxy for the bot if specified
  * in the configuration properties.
  * <p>
  * The bot webhook is also set using the {@link SetWebhook} method during bean initialization.
@@ -47,6 +48,7 @@ public class BotConfig {
     private String webHookPath;
     private String userName;
     private String botToken;
+    private String baseUrl;
 
     private DefaultBotOptions.ProxyType proxyType;
     private String proxyHost;
@@ -70,6 +72,9 @@ public class BotConfig {
         options.setProxyHost(proxyHost);
         options.setProxyPort(proxyPort);
         options.setProxyType(proxyTypeEnum);
+        if (baseUrl != null) {
+            options.setBaseUrl(baseUrl);
+        }
 
         // Create the Telegram bot instance with the configured options, token, and TelegramFacade
         TelegramBot myTelegramBot = new TelegramBot(options, botToken, telegramFacade);
@@ -0,0 +1,40 @@
+package ru.tickets.trainschedulebot.config;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * The {@code HttpClientProperties} class holds the externalized settings of the pooled HTTP clients
+ * used for outbound requests to the remote APIs.
+ * <p>
+ * The settings apply both to the client behind the {@link org.springframework.web.client.RestTemplate}
+ * and to the client behind the {@link org.springframework.web.reactive.function.client.WebClient}.
+ * HTTP/2 is only supported by the latter.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-12
+ */
+@Getter
+@Setter
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "httpclient")
+public class HttpClientProperties {
+    int maxConnectionsTotal = 100;
+    int maxConnectionsPerRoute = 50;
+    Duration connectTimeout = Duration.ofSeconds(5);
+    Duration readTimeout = Duration.ofSeconds(15);
+    Duration responseTimeout = Duration.ofSeconds(20);
+    Duration pendingAcquireTimeout = Duration.ofSeconds(10);
+    Duration maxIdleTime = Duration.ofSeconds(30);
+    Duration evictionInterval = Duration.ofSeconds(30);
+    boolean compressionEnabled = true;
+    boolean http2Enabled = false;
+}
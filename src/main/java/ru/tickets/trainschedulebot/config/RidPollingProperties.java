@@ -0,0 +1,36 @@
+package ru.tickets.trainschedulebot.config;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * The {@code RidPollingProperties} class holds the externalized settings used for polling the remote API
+ * while it is still preparing the result for a Request ID (RID).
+ * <p>
+ * The delay between polls starts at {@code initialDelay} and grows by {@code multiplier} after every attempt,
+ * up to {@code maxDelay}. Each delay is randomized by {@code jitter} (a fraction of the delay), and polling
+ * stops after {@code maxAttempts} attempts or once {@code deadline} has passed, whichever comes first.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-10
+ */
+@Getter
+@Setter
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "ridpolling")
+public class RidPollingProperties {
+    Duration initialDelay = Duration.ofMillis(300);
+    Duration maxDelay = Duration.ofSeconds(3);
+    double multiplier = 2.0;
+    double jitter = 0.2;
+    int maxAttempts = 10;
+    Duration deadline = Duration.ofSeconds(20);
+}
@@ -0,0 +1,46 @@
+package ru.tickets.trainschedulebot.config;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * The {@code RzdUpstreamProperties} class holds the externalized settings protecting the remote API from overload.
+ * <p>
+ * The number of concurrent requests starts at {@code initialLimit} and is adapted between {@code minLimit}
+ * and {@code maxLimit} from the ratio of the long-term to the recent response time, tolerating responses
+ * up to {@code rttTolerance} times slower than usual. Background requests may use at most
+ * {@code backgroundShare} of the limit, so interactive requests always have free capacity.
+ * <p>
+ * The circuit breaker opens once at least {@code failureRateThreshold} of the last {@code slidingWindowSize}
+ * requests have failed (after {@code minimumCalls} requests), rejects requests for {@code openDuration}
+ * and then lets {@code halfOpenProbes} requests through to decide whether the remote API has recovered.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-14
+ */
+@Getter
+@Setter
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "rzdupstream")
+public class RzdUpstreamProperties {
+    int initialLimit = 20;
+    int minLimit = 2;
+    int maxLimit = 100;
+    double smoothing = 0.2;
+    double rttTolerance = 1.5;
+    int longWindow = 600;
+    double backgroundShare = 0.5;
+    double failureRateThreshold = 0.5;
+    int slidingWindowSize = 20;
+    int minimumCalls = 10;
+    Duration openDuration = Duration.ofSeconds(30);
+    int halfOpenProbes = 3;
+}
@@ -5,6 +5,7 @@ import org.springframework.web.bind.annotation.*;
 import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.Update;
+import reactor.core.publisher.Mono;
 import ru.tickets.trainschedulebot.botApi.TelegramBot;
 
 /**
@@ -16,7 +17,9 @@ import ru.tickets.trainschedulebot.botApi.TelegramBot;
  * it is responsible for defining the endpoint ("/") for receiving webhook updates.
  * <p>
  * The {@link RequestMapping} annotation specifies that this controller method is triggered for HTTP POST
- * requests to the root ("/") path.
+ * requests to the root ("/") path. The response is returned asynchronously, so that the request thread is not
+ * held while the handlers wait for I/O: non-blocking handlers wait without a thread, blocking handlers run on
+ * bounded elastic workers.
  *
  * @author Elgun Dilanchiev
  * @version 1.0
@@ -40,10 +43,10 @@ public class WebHookController {
      * Handles incoming webhook updates from the Telegram Bot API.
      *
      * @param update The {@link Update} object containing the incoming update data.
-     * @return The {@link BotApiMethod} representing the response to be sent to Telegram.
+     * @return A Mono emitting the {@link BotApiMethod} representing the response to be sent to Telegram.
      */
     @RequestMapping(value = "/", method = RequestMethod.POST)
-    public BotApiMethod<?> onUpdateReceived(@RequestBody Update update) {
-        return telegramBot.onWebhookUpdateReceived(update);
+    public Mono<? extends BotApiMethod<?>> onUpdateReceived(@RequestBody Update update) {
+        return telegramBot.onWebhookUpdateReceivedAsync(update);
     }
 }
\ No newline at end of file
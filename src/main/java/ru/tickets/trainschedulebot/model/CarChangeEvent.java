@@ -0,0 +1,32 @@
+package ru.tickets.trainschedulebot.model;
+
+/**
+ * A change of a train carriage type detected between the subscribed and the actual carriages of a train.
+ * The values missing for the type of the change, such as the old values of a new carriage type, are {@code null}.
+ *
+ * @param type          The type of the change.
+ * @param carType       The type of the train carriage.
+ * @param oldFreeSeats  The number of free seats known before the change.
+ * @param newFreeSeats  The number of free seats after the change.
+ * @param oldPrice      The minimal price known before the change.
+ * @param newPrice      The minimal price after the change.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-18
+ */
+public record CarChangeEvent(Type type, String carType, Integer oldFreeSeats, Integer newFreeSeats,
+                             Integer oldPrice, Integer newPrice) {
+
+    /**
+     * Types of carriage changes.
+     */
+    public enum Type {
+        PRICE_UP,
+        PRICE_DOWN,
+        SEATS_APPEARED,
+        SOLD_OUT,
+        CAR_TYPE_ADDED,
+        CAR_TYPE_REMOVED
+    }
+}
@@ -0,0 +1,30 @@
+package ru.tickets.trainschedulebot.model;
+
+import java.util.List;
+
+/**
+ * The result of comparing the subscribed carriages of a train with the actual ones.
+ *
+ * @param events The detected changes, in the order of the carriage types.
+ * @param cars   The snapshot of the actual carriages to store in the subscription.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-18
+ */
+public record CarsDiff(List<CarChangeEvent> events, List<Car> cars) {
+
+    public CarsDiff {
+        events = List.copyOf(events);
+        cars = List.copyOf(cars);
+    }
+
+    /**
+     * Checks whether any changes have been detected.
+     *
+     * @return True if the carriages have changed, false otherwise.
+     */
+    public boolean hasChanges() {
+        return !events.isEmpty();
+    }
+}
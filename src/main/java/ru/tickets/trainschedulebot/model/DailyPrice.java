@@ -0,0 +1,92 @@
+package ru.tickets.trainschedulebot.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Represents the prices of a train carriage type observed during a day, downsampled from {@link PriceSample} samples.
+ * <p>
+ * The documents are stored in the MongoDB collection named "dailyPrices", indexed by train, departure date, day
+ * and car type, so that the price history of a train is read with a single range query already in display order. Documents are removed half a year
+ * after the day they describe.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-19
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "dailyPrices")
+@CompoundIndex(name = "train_date_day_car", def = "{'trainNumber': 1, 'dateDepart': 1, 'day': 1, 'carType': 1}")
+public class DailyPrice {
+    /**
+     * The unique identifier of the document, made of the train, departure date, car type and day.
+     */
+    @Id
+    private Key id;
+
+    /**
+     * The number of the train.
+     */
+    private String trainNumber;
+
+    /**
+     * The departure date of the train.
+     */
+    private String dateDepart;
+
+    /**
+     * The type of the train carriage.
+     */
+    private String carType;
+
+    /**
+     * The start of the day in the railway time zone.
+     */
+    @Indexed(name = "day_ttl", expireAfter = "180d")
+    private Instant day;
+
+    /**
+     * The lowest minimal price observed during the day.
+     */
+    private Integer minPrice;
+
+    /**
+     * The highest minimal price observed during the day.
+     */
+    private Integer maxPrice;
+
+    /**
+     * The last minimal price observed during the day.
+     */
+    private Integer lastPrice;
+
+    /**
+     * The last number of free seats observed during the day.
+     */
+    private Integer lastFreeSeats;
+
+    /**
+     * The number of samples observed during the day.
+     */
+    private Integer samples;
+
+    /**
+     * Identifies the prices of a train carriage type on a day.
+     *
+     * @param trainNumber The number of the train.
+     * @param dateDepart  The departure date of the train.
+     * @param carType     The type of the train carriage.
+     * @param day         The start of the day.
+     */
+    public record Key(String trainNumber, String dateDepart, String carType, Instant day) {
+    }
+}
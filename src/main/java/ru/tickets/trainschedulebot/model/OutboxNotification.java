@@ -0,0 +1,93 @@
+package ru.tickets.trainschedulebot.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Represents a notification waiting to be delivered to a user.
+ * <p>
+ * Notifications are written to the MongoDB collection named "notificationOutbox" when subscriptions are processed
+ * and are removed once delivered, so that a notification survives a crash or a slow Telegram API and the processing
+ * of subscriptions does not wait for the delivery.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-20
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "notificationOutbox")
+public class OutboxNotification {
+    /**
+     * The unique identifier of the notification.
+     */
+    @Id
+    private String id;
+
+    /**
+     * The chat ID of the user to notify.
+     */
+    private long chatId;
+
+    /**
+     * The text of the notification.
+     */
+    private String text;
+
+    /**
+     * The time the notification was created at.
+     */
+    private Instant createdAt;
+
+    /**
+     * The time of the next delivery attempt. While a delivery is in progress, the time the attempt is considered
+     * lost at, so that the notification is delivered again if the delivering instance stops.
+     */
+    @Indexed
+    private Instant nextAttemptAt;
+
+    /**
+     * The number of delivery attempts made.
+     */
+    private int attempts;
+
+    /**
+     * The identifier of the delivery attempt the notification is claimed by, {@code null} if it is not claimed.
+     */
+    @Indexed(sparse = true)
+    private String claimId;
+
+    /**
+     * Creates a notification ready to be delivered, with a new unique identifier.
+     *
+     * @param chatId The chat ID of the user to notify.
+     * @param text   The text of the notification.
+     * @param now    The current time.
+     * @return The new notification.
+     */
+    public static OutboxNotification of(long chatId, String text, Instant now) {
+        return of(ObjectId.get().toHexString(), chatId, text, now);
+    }
+
+    /**
+     * Creates a notification ready to be delivered, with an identifier derived from the change it notifies about,
+     * so that the notification is stored once however many times the change is detected.
+     *
+     * @param id     The identifier of the notification.
+     * @param chatId The chat ID of the user to notify.
+     * @param text   The text of the notification.
+     * @param now    The current time.
+     * @return The new notification.
+     */
+    public static OutboxNotification of(String id, long chatId, String text, Instant now) {
+        return new OutboxNotification(id, chatId, text, now, now, 0, null);
+    }
+}
@@ -0,0 +1,78 @@
+package ru.tickets.trainschedulebot.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.TimeSeries;
+import org.springframework.data.mongodb.core.timeseries.Granularity;
+
+import java.time.Instant;
+
+/**
+ * Represents the price and free seats of a train carriage type observed at a point in time.
+ * <p>
+ * The samples are stored in the MongoDB time series collection named "priceSamples", which groups the samples
+ * of the same train, date and car type into compressed buckets. Samples are removed after two weeks, by then
+ * they have been downsampled into {@link DailyPrice} documents.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-19
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "priceSamples")
+@TimeSeries(timeField = "observedAt", metaField = "train", granularity = Granularity.HOURS, expireAfter = "14d")
+public class PriceSample {
+    /**
+     * The unique identifier of the sample.
+     */
+    @Id
+    private String id;
+
+    /**
+     * The time the sample was observed at.
+     */
+    private Instant observedAt;
+
+    /**
+     * The train, departure date and car type the sample belongs to.
+     */
+    private Series train;
+
+    /**
+     * The number of free seats.
+     */
+    private Integer freeSeats;
+
+    /**
+     * The minimal price.
+     */
+    private Integer price;
+
+    /**
+     * Creates a sample of a train carriage type.
+     *
+     * @param train      The train the carriage belongs to.
+     * @param car        The carriage with the minimal price of its type.
+     * @param observedAt The time the sample was observed at.
+     * @return The new sample.
+     */
+    public static PriceSample of(Train train, Car car, Instant observedAt) {
+        return new PriceSample(null, observedAt, new Series(train.getNumber(), train.getDateDepart(), car.getCarType()),
+                car.getFreeSeats(), car.getMinimalPrice());
+    }
+
+    /**
+     * Identifies the series of samples of a train carriage type.
+     *
+     * @param trainNumber The number of the train.
+     * @param dateDepart  The departure date of the train.
+     * @param carType     The type of the train carriage.
+     */
+    public record Series(String trainNumber, String dateDepart, String carType) {
+    }
+}
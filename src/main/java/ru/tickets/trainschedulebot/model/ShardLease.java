@@ -0,0 +1,46 @@
+package ru.tickets.trainschedulebot.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Represents a lease of a subscription shard held by a bot instance.
+ * Only the instance owning the unexpired lease of a shard processes the subscriptions of that shard.
+ * <p>
+ * The leases are stored in the MongoDB collection named "shardLeases".
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-16
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "shardLeases")
+public class ShardLease {
+    /**
+     * The number of the shard.
+     */
+    @Id
+    private int shard;
+
+    /**
+     * The identifier of the bot instance holding the lease.
+     */
+    private String owner;
+
+    /**
+     * The time the lease expires at unless it is renewed by its owner.
+     */
+    private Instant expiresAt;
+
+    /**
+     * The time of the last renewal of the lease.
+     */
+    private Instant heartbeatAt;
+}
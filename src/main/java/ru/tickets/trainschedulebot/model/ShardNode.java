@@ -0,0 +1,44 @@
+package ru.tickets.trainschedulebot.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Represents the heartbeat of a bot instance taking part in subscription processing.
+ * Every instance renews its heartbeat together with its shard leases, so that the instances holding no lease yet
+ * are counted when the shards are shared out.
+ * <p>
+ * The heartbeats are stored in the MongoDB collection named "shardNodes" and removed by MongoDB once expired.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-16
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "shardNodes")
+public class ShardNode {
+    /**
+     * The identifier of the bot instance.
+     */
+    @Id
+    private String nodeId;
+
+    /**
+     * The time the instance is considered stopped at unless it renews its heartbeat.
+     */
+    @Indexed(name = "expires_ttl", expireAfter = "0s")
+    private Instant expiresAt;
+
+    /**
+     * The time of the last heartbeat of the instance.
+     */
+    private Instant heartbeatAt;
+}
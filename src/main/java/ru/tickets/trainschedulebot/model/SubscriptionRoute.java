@@ -0,0 +1,27 @@
+package ru.tickets.trainschedulebot.model;
+
+/**
+ * Identifies the route and departure date shared by subscriptions, so that the trains of the route
+ * are requested from the remote API once for all of them.
+ *
+ * @param stationDepart  The departure station.
+ * @param stationArrival The arrival station.
+ * @param dateDepart     The departure date in the {@code dd.MM.yyyy} format.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-15
+ */
+public record SubscriptionRoute(String stationDepart, String stationArrival, String dateDepart) {
+
+    /**
+     * Creates the route of a subscription.
+     *
+     * @param subscription The user subscription.
+     * @return The route and departure date of the subscription.
+     */
+    public static SubscriptionRoute of(UserTicketsSubscription subscription) {
+        return new SubscriptionRoute(subscription.getStationDepart(), subscription.getStationArrival(),
+                subscription.getDateDepart());
+    }
+}
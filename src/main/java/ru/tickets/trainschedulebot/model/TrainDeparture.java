@@ -0,0 +1,34 @@
+package ru.tickets.trainschedulebot.model;
+
+/**
+ * Identifies a train by its number and departure date, the way subscriptions refer to the trains found by a search.
+ *
+ * @param trainNumber The number of the train.
+ * @param dateDepart  The departure date in the {@code dd.MM.yyyy} format.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-21
+ */
+public record TrainDeparture(String trainNumber, String dateDepart) {
+
+    /**
+     * Creates the departure of a found train.
+     *
+     * @param train The train.
+     * @return The number and departure date of the train.
+     */
+    public static TrainDeparture of(Train train) {
+        return new TrainDeparture(train.getNumber(), train.getDateDepart());
+    }
+
+    /**
+     * Creates the departure of a subscribed train.
+     *
+     * @param subscription The user subscription.
+     * @return The number and departure date of the subscribed train.
+     */
+    public static TrainDeparture of(UserTicketsSubscription subscription) {
+        return new TrainDeparture(subscription.getTrainNumber(), subscription.getDateDepart());
+    }
+}
@@ -0,0 +1,32 @@
+package ru.tickets.trainschedulebot.model;
+
+import java.util.List;
+
+/**
+ * Represents a response of the remote API to a train information request.
+ * While the remote API is still preparing the result for a Request ID (RID), the response
+ * carries the {@code RID} result and no trains.
+ *
+ * @param result The result status reported by the remote API.
+ * @param trains The list of trains found in the response.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-11
+ */
+public record TrainInfoResponse(String result, List<Train> trains) {
+
+    /**
+     * The result status reported while the remote API is still preparing the result.
+     */
+    private static final String RESULT_RID_PENDING = "RID";
+
+    /**
+     * Checks if the remote API is still preparing the result for the requested RID.
+     *
+     * @return True if the result is still pending, otherwise false.
+     */
+    public boolean isPending() {
+        return RESULT_RID_PENDING.equals(result);
+    }
+}
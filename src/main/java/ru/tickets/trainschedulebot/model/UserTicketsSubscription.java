@@ -4,8 +4,14 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
+import ru.tickets.trainschedulebot.utils.DateTimeUtils;
 
+import java.time.Instant;
+import java.time.LocalDate;
 import java.util.List;
 
 /**
@@ -13,7 +19,10 @@ import java.util.List;
  * This class is annotated with Lombok {@code @Data} annotation for automatic
  * generation of getters, setters, equals, hashCode, and toString methods.
  * <p>
- * The subscriptions are stored in the MongoDB collection named "subscriptions".
+ * The subscriptions are stored in the MongoDB collection named "subscriptions", indexed by route and departure date,
+ * by the time they are due to be checked for updates at and by the query shapes of {@code UserSubscriptionRepository}:
+ * the chat, train and departure date index also serves the lookups by chat alone.
+ * The indexes are created at startup, as {@code spring.data.mongodb.auto-index-creation} is enabled.
  *
  * @author Elgun Dilanbchiev
  * @version 1.0
@@ -21,6 +30,10 @@ import java.util.List;
  */
 @Data
 @Document(collection = "subscriptions")
+@CompoundIndexes({
+        @CompoundIndex(name = "route_date", def = "{'stationDepart': 1, 'stationArrival': 1, 'dateDepart': 1}"),
+        @CompoundIndex(name = "chat_train_date", def = "{'chatId': 1, 'trainNumber': 1, 'dateDepart': 1}")
+})
 public class UserTicketsSubscription {
     /**
      * The unique identifier for the subscription.
@@ -58,6 +71,20 @@ public class UserTicketsSubscription {
      */
     private String dateDepart;
 
+    /**
+     * The departure date of the subscribed train, stored as a sortable date so that it is not re-parsed
+     * on every processing cycle. May be {@code null} for subscriptions saved before this field was introduced.
+     */
+    private LocalDate departureDate;
+
+    /**
+     * The departure time of the subscribed train. Subscriptions are removed by the database a day after departure,
+     * in case they have not been removed with a notice to the user by then.
+     * May be {@code null} for subscriptions saved before this field was introduced.
+     */
+    @Indexed(name = "departure_ttl", expireAfter = "1d")
+    private Instant departureAt;
+
     /**
      * The arrival date of the subscribed train.
      */
@@ -78,6 +105,17 @@ public class UserTicketsSubscription {
      */
     private List<Car> subscribedCars;
 
+    /**
+     * The time the subscription is due to be checked for updates at, {@code null} if it is due immediately.
+     */
+    @Indexed
+    private Instant nextPollAt;
+
+    /**
+     * The time a change of ticket prices was last detected at, {@code null} if none was detected yet.
+     */
+    private Instant lastPriceChangeAt;
+
     /**
      * Constructs a new UserTicketsSubscription with the specified parameters.
      *
@@ -101,9 +139,48 @@ public class UserTicketsSubscription {
         this.stationDepart = stationDepart;
         this.stationArrival = stationArrival;
         this.dateDepart = dateDepart;
+        this.departureDate = DateTimeUtils.parseDate(dateDepart).orElse(null);
         this.dateArrival = dateArrival;
         this.timeDepart = timeDepart;
         this.timeArrival = timeArrival;
         this.subscribedCars = subscribedCars;
+        this.departureAt = DateTimeUtils.toInstant(dateDepart, timeDepart).orElse(null);
+    }
+
+    /**
+     * Returns the departure date of the subscribed train.
+     * Subscriptions saved before the departure date was stored as a date are parsed from the date string.
+     *
+     * @return The departure date, or {@code null} if the date string is invalid.
+     */
+    public LocalDate getDepartureDate() {
+        if (departureDate != null) {
+            return departureDate;
+        }
+        return DateTimeUtils.parseDate(dateDepart).orElse(null);
+    }
+
+    /**
+     * Returns the departure time of the subscribed train.
+     * Subscriptions saved before the departure time was stored are converted from the date and time strings.
+     *
+     * @return The departure time, or {@code null} if the date string is invalid.
+     */
+    public Instant getDepartureAt() {
+        if (departureAt != null) {
+            return departureAt;
+        }
+        return DateTimeUtils.toInstant(dateDepart, timeDepart).orElse(null);
+    }
+
+    /**
+     * Checks if the subscribed train has departed by the given time.
+     *
+     * @param now The current time.
+     * @return True if the train has departed, false if it has not or its departure time is unknown.
+     */
+    public boolean hasDepartedBy(Instant now) {
+        Instant departure = getDepartureAt();
+        return departure != null && !departure.isAfter(now);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,39 @@
+package ru.tickets.trainschedulebot.repository;
+
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.tickets.trainschedulebot.model.UserTicketsSubscription;
+
+/**
+ * Reactive repository interface for managing user subscriptions to train tickets.
+ * This interface extends Spring Data MongoDB's {@code ReactiveMongoRepository}, so that the subscriptions
+ * are read and written without blocking the calling thread.
+ * <p>
+ * The query methods have the same shapes as those of {@link UserSubscriptionRepository} and use the same indexes.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-22
+ */
+@Repository
+public interface ReactiveUserSubscriptionRepository extends ReactiveMongoRepository<UserTicketsSubscription, String> {
+    /**
+     * Retrieves the user subscriptions based on the provided chat ID.
+     *
+     * @param chatId The chat ID associated with the user.
+     * @return A Flux emitting the user subscriptions with the given chat ID.
+     */
+    Flux<UserTicketsSubscription> findByChatId(Long chatId);
+
+    /**
+     * Checks if a user subscription exists for the provided chat ID, train number, and departure date.
+     *
+     * @param chatId      The chat ID associated with the user.
+     * @param trainNumber The train number of the subscribed train.
+     * @param dateDepart  The departure date of the subscribed train.
+     * @return A Mono emitting true if such a subscription exists, false otherwise.
+     */
+    Mono<Boolean> existsByChatIdAndTrainNumberAndDateDepart(Long chatId, String trainNumber, String dateDepart);
+}
@@ -18,23 +18,6 @@ import java.util.List;
  */
 @Repository
 public interface UserSubscriptionRepository extends MongoRepository<UserTicketsSubscription, String> {
-    /**
-     * Retrieves a list of user subscriptions based on the provided chat ID.
-     *
-     * @param id The chat ID associated with the user.
-     * @return A list of user subscriptions with the given chat ID.
-     */
-    List<UserTicketsSubscription> findByChatId(Long id);
-
-    /**
-     * Retrieves a user subscription based on the provided train number and departure date.
-     *
-     * @param trainNumber The train number of the subscribed train.
-     * @param dateDepart  The departure date of the subscribed train.
-     * @return The user subscription matching the train number and departure date.
-     */
-    UserTicketsSubscription findByTrainNumberAndDateDepart(String trainNumber, String dateDepart);
-
     /**
      * Retrieves a list of user subscriptions based on the provided chat ID, train number, and departure date.
      *
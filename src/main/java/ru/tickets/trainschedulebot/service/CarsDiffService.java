@@ -0,0 +1,100 @@
+package ru.tickets.trainschedulebot.service;
+
+import org.springframework.stereotype.Service;
+import ru.tickets.trainschedulebot.model.Car;
+import ru.tickets.trainschedulebot.model.CarChangeEvent;
+import ru.tickets.trainschedulebot.model.CarsDiff;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Service class comparing the subscribed carriages of a train with the actual ones.
+ * Carriages are indexed by their type, so that the comparison takes linear time, and the changes are reported
+ * as {@link CarChangeEvent} events, leaving it to the caller how the changes are presented to users.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-18
+ */
+@Service
+public class CarsDiffService {
+
+    /**
+     * Compares the subscribed carriages with the actual ones. Neither of the lists is modified.
+     *
+     * @param subscribedCars The carriages stored in the subscription, one per car type.
+     * @param actualCars     The actual carriages with the minimal price, one per car type.
+     * @return The detected changes and a new snapshot of the actual carriages.
+     */
+    public CarsDiff diff(List<Car> subscribedCars, List<Car> actualCars) {
+        Map<String, Car> subscribedByType = indexByType(subscribedCars);
+        List<CarChangeEvent> events = new ArrayList<>();
+        List<Car> snapshot = new ArrayList<>(actualCars.size());
+
+        for (Car actualCar : actualCars) {
+            Car subscribedCar = subscribedByType.remove(actualCar.getCarType());
+            if (subscribedCar == null) {
+                events.add(new CarChangeEvent(CarChangeEvent.Type.CAR_TYPE_ADDED, actualCar.getCarType(),
+                        null, actualCar.getFreeSeats(), null, actualCar.getMinimalPrice()));
+            } else {
+                addCarChanges(subscribedCar, actualCar, events);
+            }
+            snapshot.add(new Car(actualCar.getCarType(), actualCar.getFreeSeats(), actualCar.getMinimalPrice()));
+        }
+
+        for (Car goneCar : subscribedByType.values()) {
+            events.add(new CarChangeEvent(CarChangeEvent.Type.CAR_TYPE_REMOVED, goneCar.getCarType(),
+                    goneCar.getFreeSeats(), null, goneCar.getMinimalPrice(), null));
+        }
+
+        return new CarsDiff(events, snapshot);
+    }
+
+    /**
+     * Indexes carriages by their type, keeping the order of the list.
+     *
+     * @param cars The carriages to index.
+     * @return A map of carriages by car type.
+     */
+    private Map<String, Car> indexByType(List<Car> cars) {
+        Map<String, Car> carsByType = new LinkedHashMap<>();
+        if (cars != null) {
+            cars.forEach(car -> carsByType.put(car.getCarType(), car));
+        }
+        return carsByType;
+    }
+
+    /**
+     * Adds the changes between a subscribed carriage and the actual carriage of the same type.
+     *
+     * @param subscribedCar The subscribed carriage.
+     * @param actualCar     The actual carriage.
+     * @param events        The list to add the changes to.
+     */
+    private void addCarChanges(Car subscribedCar, Car actualCar, List<CarChangeEvent> events) {
+        int oldSeats = Objects.requireNonNullElse(subscribedCar.getFreeSeats(), 0);
+        int newSeats = Objects.requireNonNullElse(actualCar.getFreeSeats(), 0);
+        if (oldSeats == 0 && newSeats > 0) {
+            events.add(newEvent(CarChangeEvent.Type.SEATS_APPEARED, subscribedCar, actualCar));
+        } else if (oldSeats > 0 && newSeats == 0) {
+            events.add(newEvent(CarChangeEvent.Type.SOLD_OUT, subscribedCar, actualCar));
+        }
+
+        int priceComparison = Integer.compare(Objects.requireNonNullElse(actualCar.getMinimalPrice(), 0),
+                Objects.requireNonNullElse(subscribedCar.getMinimalPrice(), 0));
+        if (priceComparison > 0) {
+            events.add(newEvent(CarChangeEvent.Type.PRICE_UP, subscribedCar, actualCar));
+        } else if (priceComparison < 0) {
+            events.add(newEvent(CarChangeEvent.Type.PRICE_DOWN, subscribedCar, actualCar));
+        }
+    }
+
+    private CarChangeEvent newEvent(CarChangeEvent.Type type, Car subscribedCar, Car actualCar) {
+        return new CarChangeEvent(type, actualCar.getCarType(), subscribedCar.getFreeSeats(), actualCar.getFreeSeats(),
+                subscribedCar.getMinimalPrice(), actualCar.getMinimalPrice());
+    }
+}
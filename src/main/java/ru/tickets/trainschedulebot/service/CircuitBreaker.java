@@ -0,0 +1,174 @@
+package ru.tickets.trainschedulebot.service;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Count-based circuit breaker protecting the remote API.
+ * <p>
+ * While {@link State#CLOSED} the outcome of the last {@code slidingWindowSize} requests is recorded and the breaker
+ * opens once the failure rate reaches the threshold. While {@link State#OPEN} all requests are rejected until
+ * {@code openDuration} has passed, then the breaker becomes {@link State#HALF_OPEN} and lets a limited number of probe
+ * requests through: the breaker closes if all of them succeed and opens again as soon as one of them fails.
+ * Instances are thread-safe.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-14
+ */
+class CircuitBreaker {
+
+    /**
+     * States of the circuit breaker.
+     */
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long openDurationNanos;
+    private final int halfOpenProbes;
+    private final LongSupplier nanoTime;
+
+    /**
+     * Outcomes of the last requests in a ring buffer, true for failed requests.
+     */
+    private final boolean[] outcomes;
+
+    private State state = State.CLOSED;
+    private int recordedCalls;
+    private int failedCalls;
+    private int nextOutcome;
+    private long openedAtNanos;
+    private int permittedProbes;
+    private int succeededProbes;
+
+    /**
+     * Constructs a new CircuitBreaker.
+     *
+     * @param failureRateThreshold The failure rate, between 0 and 1, at which the breaker opens.
+     * @param slidingWindowSize    The number of the last requests the failure rate is calculated over.
+     * @param minimumCalls         The number of requests that must be recorded before the breaker can open.
+     * @param openDuration         How long the breaker stays open before probing the remote API.
+     * @param halfOpenProbes       The number of probe requests let through while half-open.
+     * @param nanoTime             Source of the current time in nanoseconds.
+     */
+    CircuitBreaker(double failureRateThreshold, int slidingWindowSize, int minimumCalls, Duration openDuration,
+                   int halfOpenProbes, LongSupplier nanoTime) {
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = Math.min(minimumCalls, slidingWindowSize);
+        this.openDurationNanos = openDuration.toNanos();
+        this.halfOpenProbes = halfOpenProbes;
+        this.nanoTime = nanoTime;
+        this.outcomes = new boolean[slidingWindowSize];
+    }
+
+    /**
+     * Returns the current state, moving an open breaker to half-open once the open duration has passed.
+     *
+     * @return The state of the circuit breaker.
+     */
+    synchronized State getState() {
+        if (state == State.OPEN && nanoTime.getAsLong() - openedAtNanos >= openDurationNanos) {
+            state = State.HALF_OPEN;
+            permittedProbes = 0;
+            succeededProbes = 0;
+        }
+        return state;
+    }
+
+    /**
+     * Checks whether a request may be sent to the remote API.
+     * Every permitted request must be followed by {@link #onSuccess()}, {@link #onError()} or {@link #onCancel()}.
+     *
+     * @return True if the request is permitted, false if it must be rejected.
+     */
+    synchronized boolean tryAcquirePermission() {
+        return switch (getState()) {
+            case CLOSED -> true;
+            case OPEN -> false;
+            case HALF_OPEN -> {
+                if (permittedProbes >= halfOpenProbes) {
+                    yield false;
+                }
+                permittedProbes++;
+                yield true;
+            }
+        };
+    }
+
+    /**
+     * Records a successful request.
+     */
+    synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            if (++succeededProbes >= halfOpenProbes) {
+                close();
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    /**
+     * Records a failed request.
+     */
+    synchronized void onError() {
+        if (state == State.HALF_OPEN) {
+            open();
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (recordedCalls >= minimumCalls && (double) failedCalls / recordedCalls >= failureRateThreshold) {
+                open();
+            }
+        }
+    }
+
+    /**
+     * Releases the permission of a request that was cancelled before its outcome was known.
+     */
+    synchronized void onCancel() {
+        if (state == State.HALF_OPEN && permittedProbes > succeededProbes) {
+            permittedProbes--;
+        }
+    }
+
+    /**
+     * Records the outcome of a request in the sliding window.
+     *
+     * @param failed True if the request has failed.
+     */
+    private void record(boolean failed) {
+        if (recordedCalls == outcomes.length) {
+            if (outcomes[nextOutcome]) {
+                failedCalls--;
+            }
+        } else {
+            recordedCalls++;
+        }
+        outcomes[nextOutcome] = failed;
+        if (failed) {
+            failedCalls++;
+        }
+        nextOutcome = (nextOutcome + 1) % outcomes.length;
+    }
+
+    /**
+     * Opens the breaker.
+     */
+    private void open() {
+        state = State.OPEN;
+        openedAtNanos = nanoTime.getAsLong();
+    }
+
+    /**
+     * Closes the breaker and clears the recorded outcomes.
+     */
+    private void close() {
+        state = State.CLOSED;
+        recordedCalls = 0;
+        failedCalls = 0;
+        nextOutcome = 0;
+    }
+}
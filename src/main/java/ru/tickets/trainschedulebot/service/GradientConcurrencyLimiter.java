@@ -0,0 +1,101 @@
+package ru.tickets.trainschedulebot.service;
+
+/**
+ * Concurrency limit adapted from the response time of the remote API.
+ * <p>
+ * The limit is multiplied by the gradient between the long-term (no load) and the recent response time,
+ * so it shrinks as soon as the remote API gets slower than usual and grows again, by a small queue allowance,
+ * while the response time stays stable. Requests that failed or timed out decrease the limit multiplicatively.
+ * Instances are thread-safe.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-14
+ */
+class GradientConcurrencyLimiter {
+
+    /**
+     * The factor the limit is multiplied by after a failed request.
+     */
+    private static final double BACKOFF_RATIO = 0.9;
+
+    /**
+     * The lowest gradient applied to the limit after a single sample.
+     */
+    private static final double MIN_GRADIENT = 0.5;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double smoothing;
+    private final double rttTolerance;
+    private final int longWindow;
+
+    private double limit;
+    private double longRttNanos;
+    private int samples;
+
+    /**
+     * Constructs a new GradientConcurrencyLimiter.
+     *
+     * @param initialLimit The limit used until response times have been sampled.
+     * @param minLimit     The lowest possible limit.
+     * @param maxLimit     The highest possible limit.
+     * @param smoothing    The weight of a new limit relative to the current one, between 0 and 1.
+     * @param rttTolerance How many times slower than the long-term response time a response may be without shrinking the limit.
+     * @param longWindow   The number of samples the long-term response time is averaged over.
+     */
+    GradientConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double smoothing,
+                               double rttTolerance, int longWindow) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.smoothing = smoothing;
+        this.rttTolerance = rttTolerance;
+        this.longWindow = longWindow;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Returns the current concurrency limit.
+     *
+     * @return The maximum number of concurrent requests.
+     */
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Updates the limit with the response time of a successful request.
+     *
+     * @param rttNanos The response time in nanoseconds.
+     * @param inFlight The number of requests in flight when the request was completed.
+     */
+    synchronized void onSuccess(long rttNanos, int inFlight) {
+        samples = Math.min(samples + 1, longWindow);
+        longRttNanos = samples == 1 ? rttNanos : longRttNanos + (rttNanos - longRttNanos) / samples;
+
+        // The limit is not grown while it is not being used, otherwise it would drift up to the maximum
+        if (inFlight < limit / 2) {
+            return;
+        }
+
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, rttTolerance * longRttNanos / rttNanos));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        updateLimit(limit * (1 - smoothing) + newLimit * smoothing);
+    }
+
+    /**
+     * Decreases the limit after a failed or timed out request.
+     */
+    synchronized void onDropped() {
+        updateLimit(limit * BACKOFF_RATIO);
+    }
+
+    /**
+     * Sets the limit, keeping it within the configured bounds.
+     *
+     * @param newLimit The new limit.
+     */
+    private void updateLimit(double newLimit) {
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+}
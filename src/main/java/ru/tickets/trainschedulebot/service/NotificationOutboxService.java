@@ -0,0 +1,228 @@
+package ru.tickets.trainschedulebot.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import ru.tickets.trainschedulebot.model.OutboxNotification;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Service class delivering the notifications of the notification outbox to users.
+ * <p>
+ * Notifications are claimed in batches of {@code batchSize}: the claimed notifications are hidden from other
+ * deliveries for {@code claimTimeout}, so that several bot instances may deliver concurrently, and reappear
+ * if the claiming instance stops before finishing. Delivered notifications are removed, failed deliveries are
+ * retried with exponential backoff up to {@code maxAttempts} times. A notification is therefore delivered at least
+ * once, and in rare cases of a crash right after the delivery, more than once.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-20
+ */
+@Slf4j
+@Service
+public class NotificationOutboxService {
+
+    /**
+     * Telegram error codes of requests that will never succeed, such as messages to users who blocked the bot.
+     */
+    private static final int BAD_REQUEST = 400;
+    private static final int FORBIDDEN = 403;
+
+    private final MongoTemplate mongoTemplate;
+    private final SendMessageService sendMessageService;
+    private final Clock clock;
+    private final int batchSize;
+    private final Duration claimTimeout;
+    private final int maxAttempts;
+    private final Duration retryBaseDelay;
+    private final Duration retryMaxDelay;
+
+    /**
+     * Constructs a new NotificationOutboxService with the specified settings.
+     *
+     * @param mongoTemplate      The MongoTemplate used to store the outbox.
+     * @param sendMessageService Service for sending Telegram messages.
+     * @param batchSize          The maximum number of notifications claimed at once.
+     * @param claimTimeout       The time after which a claimed notification that was not delivered is claimed again.
+     * @param maxAttempts        The maximum number of delivery attempts of a notification.
+     * @param retryBaseDelay     The delay before the first retry of a failed delivery.
+     * @param retryMaxDelay      The maximum delay between retries of a failed delivery.
+     */
+    public NotificationOutboxService(MongoTemplate mongoTemplate, SendMessageService sendMessageService,
+                                     @Value("${outbox.batchSize}") int batchSize,
+                                     @Value("${outbox.claimTimeout}") Duration claimTimeout,
+                                     @Value("${outbox.maxAttempts}") int maxAttempts,
+                                     @Value("${outbox.retryBaseDelay}") Duration retryBaseDelay,
+                                     @Value("${outbox.retryMaxDelay}") Duration retryMaxDelay) {
+        this(mongoTemplate, sendMessageService, Clock.systemUTC(), batchSize, claimTimeout, maxAttempts, retryBaseDelay, retryMaxDelay);
+    }
+
+    NotificationOutboxService(MongoTemplate mongoTemplate, SendMessageService sendMessageService, Clock clock,
+                              int batchSize, Duration claimTimeout, int maxAttempts,
+                              Duration retryBaseDelay, Duration retryMaxDelay) {
+        this.mongoTemplate = mongoTemplate;
+        this.sendMessageService = sendMessageService;
+        this.clock = clock;
+        this.batchSize = batchSize;
+        this.claimTimeout = claimTimeout;
+        this.maxAttempts = maxAttempts;
+        this.retryBaseDelay = retryBaseDelay;
+        this.retryMaxDelay = retryMaxDelay;
+    }
+
+    /**
+     * Adds the given notifications to the outbox in a single bulk write, skipping those the outbox already holds.
+     * Each notification is stored with an upsert that only sets its fields on insert, so enqueueing the same
+     * notification again, such as after a crash before the change it notifies about was written, is harmless.
+     *
+     * @param notifications The notifications, with identifiers derived from the changes they notify about.
+     */
+    public void enqueueAllOnce(List<OutboxNotification> notifications) {
+        if (notifications.isEmpty()) {
+            return;
+        }
+        BulkOperations outboxOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, OutboxNotification.class);
+        notifications.forEach(notification ->
+                outboxOps.upsert(new Query(Criteria.where("_id").is(notification.getId())), insertOnly(notification)));
+        outboxOps.execute();
+    }
+
+    /**
+     * Builds the upsert of a notification that only sets its fields on insert, leaving a stored notification
+     * with the same identifier untouched.
+     *
+     * @param notification The notification.
+     * @return The update storing the notification unless it is already stored.
+     */
+    static Update insertOnly(OutboxNotification notification) {
+        return new Update()
+                .setOnInsert("chatId", notification.getChatId())
+                .setOnInsert("text", notification.getText())
+                .setOnInsert("createdAt", notification.getCreatedAt())
+                .setOnInsert("nextAttemptAt", notification.getNextAttemptAt())
+                .setOnInsert("attempts", notification.getAttempts());
+    }
+
+    /**
+     * Scheduled task delivering the notifications that are due, batch after batch until the outbox has no due
+     * notifications left.
+     */
+    @Scheduled(fixedDelayString = "${outbox.deliveryPeriod}")
+    public void deliverPendingNotifications() {
+        try {
+            int claimed;
+            do {
+                List<OutboxNotification> notifications = claimNotifications();
+                claimed = notifications.size();
+                deliver(notifications);
+            } while (claimed == batchSize);
+        } catch (DataAccessException e) {
+            log.error("Error occurred while delivering outbox notifications: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Claims a batch of due notifications, most overdue first.
+     *
+     * @return The claimed notifications.
+     */
+    List<OutboxNotification> claimNotifications() {
+        Instant now = clock.instant();
+        Query dueQuery = new Query(Criteria.where("nextAttemptAt").lte(now))
+                .with(Sort.by("nextAttemptAt"))
+                .limit(batchSize);
+        dueQuery.fields().include("_id");
+        List<String> dueIds = mongoTemplate.find(dueQuery, OutboxNotification.class).stream()
+                .map(OutboxNotification::getId)
+                .toList();
+        if (dueIds.isEmpty()) {
+            return List.of();
+        }
+
+        // Notifications claimed by another instance in the meantime are no longer due and are skipped
+        String claimId = UUID.randomUUID().toString();
+        mongoTemplate.updateMulti(new Query(Criteria.where("_id").in(dueIds).and("nextAttemptAt").lte(now)),
+                new Update().set("claimId", claimId).set("nextAttemptAt", now.plus(claimTimeout)).inc("attempts", 1),
+                OutboxNotification.class);
+        return mongoTemplate.find(new Query(Criteria.where("claimId").is(claimId)), OutboxNotification.class);
+    }
+
+    /**
+     * Delivers claimed notifications, removing the delivered ones in a single operation. Any failure of a delivery
+     * is retried, and the notifications delivered before a failure of the outbox itself are still removed.
+     *
+     * @param notifications The claimed notifications.
+     */
+    private void deliver(List<OutboxNotification> notifications) {
+        List<String> finishedIds = new ArrayList<>(notifications.size());
+        try {
+            for (OutboxNotification notification : notifications) {
+                try {
+                    sendMessageService.deliverMessage(notification.getChatId(), notification.getText());
+                    finishedIds.add(notification.getId());
+                } catch (TelegramApiException | RuntimeException e) {
+                    if (isPermanentFailure(e) || notification.getAttempts() >= maxAttempts) {
+                        log.error("Dropping notification {} to chat {} after {} attempts: {}", notification.getId(),
+                                notification.getChatId(), notification.getAttempts(), e.getMessage());
+                        finishedIds.add(notification.getId());
+                    } else {
+                        scheduleRetry(notification, e);
+                    }
+                }
+            }
+        } finally {
+            if (!finishedIds.isEmpty()) {
+                mongoTemplate.remove(new Query(Criteria.where("_id").in(finishedIds)), OutboxNotification.class);
+            }
+        }
+    }
+
+    /**
+     * Releases a notification whose delivery failed, to be delivered again after a backoff delay.
+     *
+     * @param notification The notification.
+     * @param e            The delivery failure.
+     */
+    private void scheduleRetry(OutboxNotification notification, Exception e) {
+        Duration delay = getRetryDelay(notification.getAttempts());
+        log.warn("Delivery of notification {} to chat {} failed, retrying in {}: {}", notification.getId(),
+                notification.getChatId(), delay, e.getMessage());
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(notification.getId())),
+                new Update().set("nextAttemptAt", clock.instant().plus(delay)).unset("claimId"),
+                OutboxNotification.class);
+    }
+
+    /**
+     * Calculates the delay before the next delivery attempt, doubling with every attempt.
+     *
+     * @param attempts The number of attempts made.
+     * @return The retry delay.
+     */
+    Duration getRetryDelay(int attempts) {
+        Duration delay = retryBaseDelay.multipliedBy(1L << Math.min(Math.max(attempts - 1, 0), 20));
+        return delay.compareTo(retryMaxDelay) > 0 ? retryMaxDelay : delay;
+    }
+
+    private boolean isPermanentFailure(Exception e) {
+        return e instanceof TelegramApiRequestException requestException
+                && requestException.getErrorCode() != null
+                && (requestException.getErrorCode() == BAD_REQUEST || requestException.getErrorCode() == FORBIDDEN);
+    }
+}
@@ -43,4 +43,14 @@ public class ParseQueryDataService {
     public String parseSubscriptionIdFromUnsubscribeQuery(CallbackQuery callbackQuery) {
         return callbackQuery.getData().split("\\|")[1];
     }
+
+    /**
+     * Parses the subscription ID from a price history query in a Telegram callback.
+     *
+     * @param callbackQuery The CallbackQuery containing the necessary data.
+     * @return The parsed subscription ID from the price history query.
+     */
+    public String parseSubscriptionIdFromPriceHistoryQuery(CallbackQuery callbackQuery) {
+        return callbackQuery.getData().split("\\|")[1];
+    }
 }
\ No newline at end of file
@@ -0,0 +1,149 @@
+package ru.tickets.trainschedulebot.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.springframework.stereotype.Service;
+import ru.tickets.trainschedulebot.model.Train;
+import ru.tickets.trainschedulebot.model.TrainInfoResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Service class for parsing train information responses of the remote API.
+ * The response is read with a streaming {@link JsonParser}: the parser walks to the {@code tp[].list} arrays
+ * and binds each train directly with a pre-built {@link ObjectReader}, without building a tree of the whole response.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-11
+ */
+@Service
+public class ParseTrainsResponseService {
+
+    /**
+     * Name of the field holding the result status of the response.
+     */
+    private static final String FIELD_RESULT = "result";
+
+    /**
+     * Name of the field holding the array of timetables of the response.
+     */
+    private static final String FIELD_TIMETABLES = "tp";
+
+    /**
+     * Name of the timetable field holding the array of trains.
+     */
+    private static final String FIELD_TRAINS = "list";
+
+    /**
+     * ObjectMapper providing the parser factory.
+     */
+    private final ObjectMapper objectMapper;
+
+    /**
+     * ObjectReader binding a single train.
+     */
+    private final ObjectReader trainReader;
+
+    /**
+     * Constructs a new ParseTrainsResponseService with the specified ObjectMapper.
+     *
+     * @param objectMapper The ObjectMapper used for JSON processing.
+     */
+    public ParseTrainsResponseService(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.trainReader = objectMapper.readerFor(Train.class);
+    }
+
+    /**
+     * Parses a train information response from the specified input stream. The stream is closed once it has been read.
+     *
+     * @param inputStream The input stream of the response body.
+     * @return The parsed response.
+     * @throws UncheckedIOException If the body could not be parsed or carries no result status. The error fails
+     *                              the request instead of being mistaken for a pending result, so that the RID
+     *                              is not polled any further.
+     */
+    public TrainInfoResponse parse(InputStream inputStream) {
+        try (JsonParser parser = objectMapper.getFactory().createParser(inputStream)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Response body is not a JSON object");
+            }
+
+            String result = null;
+            List<Train> trains = new ArrayList<>();
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                JsonToken valueToken = parser.nextToken();
+
+                if (FIELD_RESULT.equals(fieldName)) {
+                    result = parser.getValueAsString();
+                } else if (FIELD_TIMETABLES.equals(fieldName) && valueToken == JsonToken.START_ARRAY) {
+                    readTimetables(parser, trains);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+
+            if (result == null) {
+                throw new IOException("Response has no result status");
+            }
+            return new TrainInfoResponse(result, trains);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads the trains of every timetable in the {@code tp} array. The parser must be positioned at the start of the array.
+     *
+     * @param parser The parser positioned at the start of the {@code tp} array.
+     * @param trains The list to add the read trains to.
+     * @throws IOException If the response could not be read.
+     */
+    private void readTimetables(JsonParser parser, List<Train> trains) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                JsonToken valueToken = parser.nextToken();
+
+                if (FIELD_TRAINS.equals(fieldName) && valueToken == JsonToken.START_ARRAY) {
+                    readTrains(parser, trains);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    /**
+     * Binds every train of a {@code list} array. The parser must be positioned at the start of the array.
+     *
+     * @param parser The parser positioned at the start of the {@code list} array.
+     * @param trains The list to add the read trains to.
+     * @throws IOException If the response could not be read.
+     */
+    private void readTrains(JsonParser parser, List<Train> trains) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (token == JsonToken.START_OBJECT) {
+                trains.add(trainReader.readValue(parser));
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package ru.tickets.trainschedulebot.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.tickets.trainschedulebot.model.Car;
+import ru.tickets.trainschedulebot.model.DailyPrice;
+import ru.tickets.trainschedulebot.model.PriceSample;
+import ru.tickets.trainschedulebot.model.Train;
+import ru.tickets.trainschedulebot.utils.DateTimeUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Service class keeping the price history of the polled trains.
+ * <p>
+ * Every poll of a route appends a {@link PriceSample} per train and car type to a time series collection,
+ * in a single insert per route. The samples are periodically downsampled into one {@link DailyPrice} document
+ * per train, car type and day by an aggregation running in the database, so the price history of a train is read
+ * from a few small documents whatever the number of samples. Both collections expire old data on their own.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-19
+ */
+@Slf4j
+@Service
+public class PriceHistoryService {
+
+    private final MongoTemplate mongoTemplate;
+    private final CarsProcessingService carsProcessingService;
+    private final ShardLeaseService shardLeaseService;
+    private final Duration downsampleWindow;
+
+    /**
+     * Constructs a new PriceHistoryService with the specified settings.
+     *
+     * @param mongoTemplate         The MongoTemplate used to store the price history.
+     * @param carsProcessingService Service selecting the carriages with the minimal price of every type.
+     * @param shardLeaseService     Service distributing work between bot instances.
+     * @param downsampleWindow      How far back the samples are downsampled on every run.
+     */
+    public PriceHistoryService(MongoTemplate mongoTemplate, CarsProcessingService carsProcessingService,
+                               ShardLeaseService shardLeaseService,
+                               @Value("${priceHistory.downsampleWindow}") Duration downsampleWindow) {
+        this.mongoTemplate = mongoTemplate;
+        this.carsProcessingService = carsProcessingService;
+        this.shardLeaseService = shardLeaseService;
+        this.downsampleWindow = downsampleWindow;
+    }
+
+    /**
+     * Creates the time series collection of the samples, since inserting into a missing collection
+     * would create a regular one.
+     */
+    @PostConstruct
+    public void createSamplesCollection() {
+        try {
+            if (!mongoTemplate.collectionExists(PriceSample.class)) {
+                mongoTemplate.createCollection(PriceSample.class);
+            }
+        } catch (DataAccessException e) {
+            log.error("Error occurred while creating the price samples collection: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Records the prices of the polled trains. Errors are logged, as the price history must not fail the polling.
+     *
+     * @param trains     The trains returned by a poll of a route.
+     * @param observedAt The time of the poll.
+     */
+    public void recordPrices(List<Train> trains, Instant observedAt) {
+        List<PriceSample> samples = new ArrayList<>();
+        for (Train train : trains) {
+            if (train.getAvailableCars() == null) {
+                continue;
+            }
+            for (Car car : carsProcessingService.filterCarriagesWithMinPrice(train.getAvailableCars())) {
+                samples.add(PriceSample.of(train, car, observedAt));
+            }
+        }
+        if (samples.isEmpty()) {
+            return;
+        }
+
+        try {
+            mongoTemplate.insert(samples, PriceSample.class);
+        } catch (DataAccessException e) {
+            log.error("Error occurred while recording {} price samples: {}", samples.size(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Retrieves the daily prices of a train, ordered by day and car type.
+     *
+     * @param trainNumber The number of the train.
+     * @param dateDepart  The departure date of the train.
+     * @return A list of daily prices of the train.
+     */
+    public List<DailyPrice> getDailyPrices(String trainNumber, String dateDepart) {
+        Query query = new Query(Criteria.where("trainNumber").is(trainNumber).and("dateDepart").is(dateDepart))
+                .with(Sort.by("day", "carType"));
+        return mongoTemplate.find(query, DailyPrice.class);
+    }
+
+    /**
+     * Scheduled task downsampling the recent samples into daily prices.
+     * The days within {@code downsampleWindow} are recalculated from their samples and replace the stored
+     * daily prices, so the task may run any number of times. Only the instance owning the first shard runs it.
+     */
+    @Scheduled(fixedDelayString = "${priceHistory.downsamplePeriod}")
+    public void downsample() {
+        if (!shardLeaseService.getOwnedShards().contains(0)) {
+            return;
+        }
+
+        Instant from = Instant.now().minus(downsampleWindow)
+                .atZone(DateTimeUtils.RAILWAY_ZONE).toLocalDate()
+                .atStartOfDay(DateTimeUtils.RAILWAY_ZONE).toInstant();
+        try {
+            mongoTemplate.getCollection(mongoTemplate.getCollectionName(PriceSample.class))
+                    .aggregate(getDownsamplePipeline(from))
+                    .allowDiskUse(true)
+                    .toCollection();
+            log.debug("Downsampled price samples observed since {}", from);
+        } catch (RuntimeException e) {
+            log.error("Error occurred while downsampling price samples: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Builds the aggregation pipeline grouping the samples observed since the given time by train, car type
+     * and day in the railway time zone and merging the groups into the daily prices collection.
+     *
+     * @param from The start of the first day to downsample.
+     * @return The aggregation pipeline.
+     */
+    List<Document> getDownsamplePipeline(Instant from) {
+        Document day = new Document("$dateTrunc", new Document("date", "$observedAt")
+                .append("unit", "day")
+                .append("timezone", DateTimeUtils.RAILWAY_ZONE.getId()));
+        Document id = new Document("trainNumber", "$train.trainNumber")
+                .append("dateDepart", "$train.dateDepart")
+                .append("carType", "$train.carType")
+                .append("day", day);
+
+        return List.of(
+                new Document("$match", new Document("observedAt", new Document("$gte", Date.from(from)))),
+                new Document("$sort", new Document("observedAt", 1)),
+                new Document("$group", new Document("_id", id)
+                        .append("minPrice", new Document("$min", "$price"))
+                        .append("maxPrice", new Document("$max", "$price"))
+                        .append("lastPrice", new Document("$last", "$price"))
+                        .append("lastFreeSeats", new Document("$last", "$freeSeats"))
+                        .append("samples", new Document("$sum", 1))),
+                new Document("$set", new Document("trainNumber", "$_id.trainNumber")
+                        .append("dateDepart", "$_id.dateDepart")
+                        .append("carType", "$_id.carType")
+                        .append("day", "$_id.day")),
+                new Document("$merge", new Document("into", mongoTemplate.getCollectionName(DailyPrice.class))
+                        .append("on", "_id")
+                        .append("whenMatched", "replace")
+                        .append("whenNotMatched", "insert")));
+    }
+}
@@ -0,0 +1,151 @@
+package ru.tickets.trainschedulebot.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import ru.tickets.trainschedulebot.config.RidPollingProperties;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Service class for polling the remote API while it is still preparing the result for a Request ID (RID).
+ * Polls are repeated with an exponentially growing, jittered delay and are bounded by a maximum number
+ * of attempts and an overall deadline. Delays are scheduled on a timer instead of parking the calling thread.
+ * <p>
+ * If the result is still pending once the attempts or the deadline are exhausted, polling fails with
+ * a {@link PollingExhaustedException}, so that callers can tell a missing result from an empty one.
+ * <p>
+ * The number of attempts made for each RID is recorded in the {@code rzd.rid.polling.attempts} distribution summary,
+ * tagged with the polling outcome.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-10
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RidPollingService {
+
+    /**
+     * Name of the metric recording the number of attempts made for each RID.
+     */
+    private static final String ATTEMPTS_METRIC_NAME = "rzd.rid.polling.attempts";
+
+    /**
+     * Exception signalling that the remote API has not prepared the result for a RID within the polling limits.
+     */
+    public static class PollingExhaustedException extends RuntimeException {
+        public PollingExhaustedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Settings of the polling delays and limits.
+     */
+    private final RidPollingProperties pollingProperties;
+
+    /**
+     * Registry for recording polling metrics.
+     */
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Polls the remote API until the response is no longer pending.
+     *
+     * @param ridValue  The Request ID (RID) being polled, used for logging.
+     * @param request   Supplier of the request to repeat, a new Mono is obtained for every attempt.
+     * @param isPending Predicate telling whether a response means the result is still being prepared.
+     * @return A Mono emitting the first response that is not pending, or failing with a {@link PollingExhaustedException}
+     *         if the maximum number of attempts or the deadline has been reached.
+     */
+    public <T> Mono<T> poll(String ridValue, Supplier<Mono<T>> request, Predicate<T> isPending) {
+        return Mono.defer(() -> {
+            long deadlineNanos = System.nanoTime() + pollingProperties.getDeadline().toNanos();
+            return pollAttempt(ridValue, request, isPending, 1, Duration.ZERO, deadlineNanos);
+        });
+    }
+
+    /**
+     * Executes a single poll after the given delay and schedules the next one if the response is still pending.
+     *
+     * @param ridValue      The Request ID (RID) being polled.
+     * @param request       Supplier of the request to repeat.
+     * @param isPending     Predicate telling whether a response means the result is still being prepared.
+     * @param attempt       The number of the current attempt, starting from 1.
+     * @param delay         The delay before the current attempt.
+     * @param deadlineNanos The {@link System#nanoTime()} value after which polling stops.
+     * @return A Mono emitting the first response that is not pending, or failing with a {@link PollingExhaustedException}.
+     */
+    private <T> Mono<T> pollAttempt(String ridValue, Supplier<Mono<T>> request, Predicate<T> isPending,
+                                    int attempt, Duration delay, long deadlineNanos) {
+        Mono<T> response = Mono.defer(request);
+        if (!delay.isZero()) {
+            response = Mono.delay(delay).then(response);
+        }
+
+        return response
+                .filter(isPending.negate())
+                .doOnNext(result -> recordAttempts(ridValue, attempt, "completed"))
+                .switchIfEmpty(Mono.defer(() -> {
+                    if (attempt >= pollingProperties.getMaxAttempts()) {
+                        log.warn("RID {} is still pending after {} attempts, giving up", ridValue, attempt);
+                        recordAttempts(ridValue, attempt, "exhausted");
+                        return Mono.error(new PollingExhaustedException(
+                                "RID " + ridValue + " is still pending after " + attempt + " attempts"));
+                    }
+
+                    Duration nextDelay = getDelay(attempt);
+                    if (System.nanoTime() + nextDelay.toNanos() > deadlineNanos) {
+                        log.warn("RID {} is still pending after {} attempts, deadline of {} reached",
+                                ridValue, attempt, pollingProperties.getDeadline());
+                        recordAttempts(ridValue, attempt, "deadline");
+                        return Mono.error(new PollingExhaustedException(
+                                "RID " + ridValue + " is still pending after the deadline of " + pollingProperties.getDeadline()));
+                    }
+
+                    return pollAttempt(ridValue, request, isPending, attempt + 1, nextDelay, deadlineNanos);
+                }));
+    }
+
+    /**
+     * Calculates the jittered delay to wait after the given attempt.
+     *
+     * @param attempt The number of the attempt that has just been made, starting from 1.
+     * @return The delay before the next attempt.
+     */
+    Duration getDelay(int attempt) {
+        double backoffMillis = pollingProperties.getInitialDelay().toMillis()
+                * Math.pow(pollingProperties.getMultiplier(), attempt - 1);
+        double delayMillis = Math.min(backoffMillis, pollingProperties.getMaxDelay().toMillis());
+
+        double jitter = pollingProperties.getJitter();
+        if (jitter > 0) {
+            delayMillis *= 1 + ThreadLocalRandom.current().nextDouble(-jitter, jitter);
+        }
+        return Duration.ofMillis(Math.max(1, Math.round(delayMillis)));
+    }
+
+    /**
+     * Records the number of attempts made for a RID.
+     *
+     * @param ridValue The Request ID (RID) that has been polled.
+     * @param attempts The number of attempts made.
+     * @param outcome  The outcome of the polling.
+     */
+    private void recordAttempts(String ridValue, int attempts, String outcome) {
+        log.debug("RID {} polling {} after {} attempts", ridValue, outcome, attempts);
+        DistributionSummary.builder(ATTEMPTS_METRIC_NAME)
+                .description("Number of train information requests made for a RID")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(attempts);
+    }
+}
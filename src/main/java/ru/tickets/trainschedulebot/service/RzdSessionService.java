@@ -0,0 +1,177 @@
+package ru.tickets.trainschedulebot.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Service class for keeping a pool of warm sessions with the remote API.
+ * Session cookies received from the remote API are reused across train searches, so a search does not need
+ * to start a new session. Sessions about to expire are replaced in the background by a handshake request.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-12
+ */
+@Slf4j
+@Service
+public class RzdSessionService {
+
+    /**
+     * The pooled sessions.
+     */
+    private final List<RzdSession> sessions = new CopyOnWriteArrayList<>();
+
+    /**
+     * Index of the next session to hand out, sessions are handed out round-robin.
+     */
+    private final AtomicInteger nextSessionIndex = new AtomicInteger();
+
+    /**
+     * Flag preventing overlapping background refreshes.
+     */
+    private final AtomicBoolean refreshInProgress = new AtomicBoolean();
+
+    private final WebClient webClient;
+    private final String handshakeUrl;
+    private final String headerValue;
+    private final int poolSize;
+    private final long ttlNanos;
+    private final long refreshAheadNanos;
+
+    /**
+     * Constructs a new RzdSessionService with the specified settings.
+     *
+     * @param webClient     The WebClient used for handshake requests.
+     * @param handshakeUrl  The URL requested to start a new session.
+     * @param headerValue   The User-Agent header value for handshake requests.
+     * @param poolSize      The number of sessions kept warm.
+     * @param ttl           The time after which a session is considered expired.
+     * @param refreshPeriod The period of the background refresh, sessions expiring before the next refresh are replaced.
+     */
+    public RzdSessionService(WebClient webClient,
+                             @Value("${rzdSession.handshakeUrl}") String handshakeUrl,
+                             @Value("${header.value}") String headerValue,
+                             @Value("${rzdSession.poolSize}") int poolSize,
+                             @Value("${rzdSession.ttl}") Duration ttl,
+                             @Value("${rzdSession.refreshPeriod}") Duration refreshPeriod) {
+        this.webClient = webClient;
+        this.handshakeUrl = handshakeUrl;
+        this.headerValue = headerValue;
+        this.poolSize = poolSize;
+        this.ttlNanos = ttl.toNanos();
+        this.refreshAheadNanos = refreshPeriod.toNanos();
+    }
+
+    /**
+     * Retrieves a valid session from the pool.
+     *
+     * @return An Optional containing a valid session, or empty if the pool has no valid session.
+     */
+    public Optional<RzdSession> acquireSession() {
+        long now = System.nanoTime();
+        List<RzdSession> validSessions = sessions.stream()
+                .filter(session -> now - session.createdAt() < ttlNanos)
+                .toList();
+
+        if (validSessions.isEmpty()) {
+            return Optional.empty();
+        }
+        int index = Math.floorMod(nextSessionIndex.getAndIncrement(), validSessions.size());
+        return Optional.of(validSessions.get(index));
+    }
+
+    /**
+     * Registers a session started by the remote API and adds it to the pool if the pool is not full.
+     *
+     * @param setCookieHeaders The {@code Set-Cookie} header values received from the remote API.
+     * @return The registered session.
+     */
+    public RzdSession registerSession(List<String> setCookieHeaders) {
+        RzdSession session = new RzdSession(toCookies(setCookieHeaders), System.nanoTime());
+        if (sessions.size() < poolSize) {
+            sessions.add(session);
+        }
+        return session;
+    }
+
+    /**
+     * Removes a session the remote API no longer accepts from the pool.
+     *
+     * @param session The session to remove.
+     */
+    public void invalidateSession(RzdSession session) {
+        if (sessions.remove(session)) {
+            log.debug("RZD session invalidated, {} sessions left in the pool", sessions.size());
+        }
+    }
+
+    /**
+     * Scheduled task removing sessions that expire before the next refresh and filling the pool up with new sessions.
+     * Handshake requests are executed without blocking the scheduling thread.
+     */
+    @Scheduled(fixedDelayString = "${rzdSession.refreshPeriod}")
+    public void refreshSessions() {
+        if (!refreshInProgress.compareAndSet(false, true)) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        sessions.removeIf(session -> now - session.createdAt() >= ttlNanos - refreshAheadNanos);
+
+        int missingSessions = poolSize - sessions.size();
+        Flux.range(0, Math.max(0, missingSessions))
+                .flatMap(i -> startSession())
+                .doOnNext(setCookieHeaders -> registerSession(setCookieHeaders))
+                .doFinally(signalType -> refreshInProgress.set(false))
+                .subscribe(session -> { },
+                        e -> log.warn("Error occurred while refreshing RZD sessions: {}", e.getMessage()));
+    }
+
+    /**
+     * Sends a handshake request starting a new session with the remote API.
+     *
+     * @return A Mono emitting the {@code Set-Cookie} header values of the new session, or an empty Mono if none were received.
+     */
+    private Mono<List<String>> startSession() {
+        return webClient.get()
+                .uri(handshakeUrl)
+                .header(HttpHeaders.USER_AGENT, headerValue)
+                .exchangeToMono(response -> response.releaseBody()
+                        .then(Mono.justOrEmpty(response.headers().asHttpHeaders().get(HttpHeaders.SET_COOKIE))));
+    }
+
+    /**
+     * Converts {@code Set-Cookie} header values into {@code Cookie} header values by dropping the cookie attributes.
+     *
+     * @param setCookieHeaders The {@code Set-Cookie} header values.
+     * @return The {@code name=value} pairs of the cookies.
+     */
+    private List<String> toCookies(List<String> setCookieHeaders) {
+        return setCookieHeaders.stream()
+                .map(setCookie -> setCookie.split(";", 2)[0].trim())
+                .filter(cookie -> !cookie.isEmpty())
+                .toList();
+    }
+
+    /**
+     * A session with the remote API.
+     *
+     * @param cookies   The {@code Cookie} header values of the session.
+     * @param createdAt The {@link System#nanoTime()} value at which the session was started.
+     */
+    public record RzdSession(List<String> cookies, long createdAt) {
+    }
+}
@@ -0,0 +1,201 @@
+package ru.tickets.trainschedulebot.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import ru.tickets.trainschedulebot.config.RzdUpstreamProperties;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Service class guarding the requests sent to the remote API.
+ * <p>
+ * Requests are admitted by an adaptive concurrency limit derived from response times and by a circuit breaker,
+ * so that a degraded remote API is not flooded with requests that would only time out. The concurrency limit is
+ * split into bulkheads: {@link Bulkhead#BACKGROUND} requests of the subscription processing may only use a share
+ * of it, leaving the rest to {@link Bulkhead#INTERACTIVE} searches of the users. Rejected requests fail immediately
+ * with a {@link RejectedException}.
+ * <p>
+ * The current limit, the requests in flight and the circuit breaker state are exposed as the {@code rzd.upstream.limit},
+ * {@code rzd.upstream.inflight} and {@code rzd.upstream.circuit.open} gauges, rejections are counted by
+ * {@code rzd.upstream.rejected}.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-14
+ */
+@Slf4j
+@Service
+public class RzdUpstreamGuard {
+
+    /**
+     * Kinds of requests sharing the concurrency limit.
+     */
+    public enum Bulkhead {
+        /**
+         * Requests of users waiting for an answer.
+         */
+        INTERACTIVE,
+
+        /**
+         * Requests of the scheduled subscription processing.
+         */
+        BACKGROUND
+    }
+
+    /**
+     * Exception signalling that a request was not sent to the remote API to protect it from overload.
+     */
+    public static class RejectedException extends RuntimeException {
+        public RejectedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Name of the metric counting rejected requests.
+     */
+    private static final String REJECTED_METRIC_NAME = "rzd.upstream.rejected";
+
+    private final GradientConcurrencyLimiter limiter;
+    private final CircuitBreaker circuitBreaker;
+    private final double backgroundShare;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * The number of requests in flight per bulkhead, guarded by {@code this}.
+     */
+    private final Map<Bulkhead, Integer> inFlight = new EnumMap<>(Bulkhead.class);
+
+    /**
+     * Constructs a new RzdUpstreamGuard.
+     *
+     * @param properties    Settings of the concurrency limit and the circuit breaker.
+     * @param meterRegistry Registry for recording guard metrics.
+     */
+    public RzdUpstreamGuard(RzdUpstreamProperties properties, MeterRegistry meterRegistry) {
+        this.limiter = new GradientConcurrencyLimiter(properties.getInitialLimit(), properties.getMinLimit(),
+                properties.getMaxLimit(), properties.getSmoothing(), properties.getRttTolerance(), properties.getLongWindow());
+        this.circuitBreaker = new CircuitBreaker(properties.getFailureRateThreshold(), properties.getSlidingWindowSize(),
+                properties.getMinimumCalls(), properties.getOpenDuration(), properties.getHalfOpenProbes(), System::nanoTime);
+        this.backgroundShare = properties.getBackgroundShare();
+        this.meterRegistry = meterRegistry;
+
+        for (Bulkhead bulkhead : Bulkhead.values()) {
+            inFlight.put(bulkhead, 0);
+            Gauge.builder("rzd.upstream.inflight", this, guard -> guard.getInFlight(bulkhead))
+                    .tag("bulkhead", bulkhead.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+        Gauge.builder("rzd.upstream.limit", limiter, GradientConcurrencyLimiter::getLimit).register(meterRegistry);
+        Gauge.builder("rzd.upstream.circuit.open", circuitBreaker,
+                breaker -> breaker.getState() == CircuitBreaker.State.CLOSED ? 0 : 1).register(meterRegistry);
+    }
+
+    /**
+     * Executes a request to the remote API if the concurrency limit of the bulkhead and the circuit breaker admit it.
+     * The response time and the outcome of the request are used to adapt the limit and to drive the circuit breaker.
+     *
+     * @param bulkhead The bulkhead the request belongs to.
+     * @param request  Supplier of the request, invoked on subscription only if the request is admitted.
+     * @return A Mono emitting the response, or failing with a {@link RejectedException} if the request was rejected.
+     */
+    public <T> Mono<T> execute(Bulkhead bulkhead, Supplier<Mono<T>> request) {
+        return Mono.defer(() -> {
+            if (!tryAcquire(bulkhead)) {
+                return reject(bulkhead, "limit");
+            }
+            if (!circuitBreaker.tryAcquirePermission()) {
+                release(bulkhead);
+                return reject(bulkhead, "circuit_open");
+            }
+
+            long startNanos = System.nanoTime();
+            AtomicBoolean completed = new AtomicBoolean();
+            return Mono.defer(request)
+                    .doOnSuccess(response -> {
+                        if (completed.compareAndSet(false, true)) {
+                            limiter.onSuccess(System.nanoTime() - startNanos, release(bulkhead));
+                            circuitBreaker.onSuccess();
+                        }
+                    })
+                    .doOnError(e -> {
+                        if (completed.compareAndSet(false, true)) {
+                            release(bulkhead);
+                            limiter.onDropped();
+                            circuitBreaker.onError();
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (completed.compareAndSet(false, true)) {
+                            release(bulkhead);
+                            circuitBreaker.onCancel();
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Returns the number of requests of the bulkhead currently in flight.
+     *
+     * @param bulkhead The bulkhead.
+     * @return The number of requests in flight.
+     */
+    synchronized int getInFlight(Bulkhead bulkhead) {
+        return inFlight.get(bulkhead);
+    }
+
+    /**
+     * Takes a place in the bulkhead if both the overall limit and the share of the bulkhead allow it.
+     *
+     * @param bulkhead The bulkhead of the request.
+     * @return True if the request may be sent, false otherwise.
+     */
+    private synchronized boolean tryAcquire(Bulkhead bulkhead) {
+        int limit = limiter.getLimit();
+        int total = inFlight.values().stream().mapToInt(Integer::intValue).sum();
+        if (total >= limit) {
+            return false;
+        }
+        if (bulkhead == Bulkhead.BACKGROUND && inFlight.get(bulkhead) >= Math.max(1, (int) (limit * backgroundShare))) {
+            return false;
+        }
+        inFlight.merge(bulkhead, 1, Integer::sum);
+        return true;
+    }
+
+    /**
+     * Frees the place of a completed request in the bulkhead.
+     *
+     * @param bulkhead The bulkhead of the request.
+     * @return The number of requests in flight, over all bulkheads, before the place was freed.
+     */
+    private synchronized int release(Bulkhead bulkhead) {
+        int total = inFlight.values().stream().mapToInt(Integer::intValue).sum();
+        inFlight.merge(bulkhead, -1, Integer::sum);
+        return total;
+    }
+
+    /**
+     * Rejects a request, counting the rejection.
+     *
+     * @param bulkhead The bulkhead of the request.
+     * @param reason   The reason of the rejection.
+     * @return A Mono failing with a {@link RejectedException}.
+     */
+    private <T> Mono<T> reject(Bulkhead bulkhead, String reason) {
+        Counter.builder(REJECTED_METRIC_NAME)
+                .tag("bulkhead", bulkhead.name().toLowerCase())
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+        log.debug("Rejected {} request to the remote API: {}", bulkhead, reason);
+        return Mono.error(new RejectedException("Request to the remote API rejected: " + reason));
+    }
+}
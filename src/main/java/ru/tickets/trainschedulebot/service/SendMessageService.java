@@ -64,6 +64,37 @@ public class SendMessageService {
         sendMessage(sendMessage);
     }
 
+    /**
+     * Sends an inline keyboard message with an additional row holding a single button.
+     *
+     * @param chatId            The ID of the chat to which the message will be sent.
+     * @param messageText       The text of the message.
+     * @param buttonText        The text to be displayed on the inline keyboard button.
+     * @param callbackData      The callback data associated with the inline keyboard button.
+     * @param extraButtonText   The text to be displayed on the button of the additional row.
+     * @param extraCallbackData The callback data associated with the button of the additional row.
+     */
+    public void sendInlineKeyBoardMessage(long chatId, String messageText, String buttonText, String callbackData,
+                                          String extraButtonText, String extraCallbackData) {
+        SendMessage sendMessage = new SendMessage();
+        sendMessage.setParseMode(ParseMode.MARKDOWN);
+        sendMessage.setChatId(chatId);
+        sendMessage.setText(messageText);
+
+        InlineKeyboardButton extraButton = new InlineKeyboardButton();
+        extraButton.setText(extraButtonText);
+        extraButton.setCallbackData(extraCallbackData);
+
+        List<List<InlineKeyboardButton>> rowsInline = getKeyboardButtonList(buttonText, callbackData);
+        rowsInline.add(List.of(extraButton));
+
+        InlineKeyboardMarkup inlineKeyboardMarkup = new InlineKeyboardMarkup();
+        inlineKeyboardMarkup.setKeyboard(rowsInline);
+        sendMessage.setReplyMarkup(inlineKeyboardMarkup);
+
+        sendMessage(sendMessage);
+    }
+
     /**
      * Retrieves a list of inline keyboard buttons based on the specified button text and callback data.
      *
@@ -143,4 +174,20 @@ public class SendMessageService {
 
         sendMessage(sendMessage);
     }
-}
\ No newline at end of file
+
+    /**
+     * Sends a simple text message with the specified chat ID and text, reporting failures to the caller
+     * so that the delivery can be retried.
+     *
+     * @param chatId      The ID of the chat to which the message will be sent.
+     * @param textMessage The text of the message.
+     * @throws TelegramApiException If the message could not be sent.
+     */
+    public void deliverMessage(long chatId, String textMessage) throws TelegramApiException {
+        SendMessage sendMessage = new SendMessage();
+        sendMessage.setChatId(chatId);
+        sendMessage.setText(textMessage);
+
+        telegramBot.execute(sendMessage);
+    }
+}
@@ -8,9 +8,11 @@ import ru.tickets.trainschedulebot.botApi.handlers.state.UserButtonStatus;
 import ru.tickets.trainschedulebot.cache.UserDataCache;
 import ru.tickets.trainschedulebot.model.Car;
 import ru.tickets.trainschedulebot.model.Train;
+import ru.tickets.trainschedulebot.model.TrainDeparture;
 import ru.tickets.trainschedulebot.utils.Emojis;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Service class for sending train tickets information to Telegram users.
@@ -57,8 +59,10 @@ public class SendTicketsInfoService {
      * @param trainsList   The list of trains for which to send tickets information.
      */
     public void sendTrainTicketsInfo(long chatId, List<Train> trainsList) {
+        Map<TrainDeparture, String> subscriptionIds = subscriptionService.getSubscriptionIds(chatId,
+                trainsList.stream().map(TrainDeparture::of).toList());
         for (Train train : trainsList) {
-            sendTrainInfoMessage(chatId, train);
+            sendTrainInfoMessage(chatId, train, subscriptionIds.get(TrainDeparture.of(train)));
         }
         userDataCache.saveSearchFoundedTrains(chatId, trainsList);
     }
@@ -66,18 +70,19 @@ public class SendTicketsInfoService {
     /**
      * Sends information about a specific train to the specified chat ID.
      *
-     * @param chatId The ID of the chat to which the message will be sent.
-     * @param train  The train for which to send information.
+     * @param chatId         The ID of the chat to which the message will be sent.
+     * @param train          The train for which to send information.
+     * @param subscriptionId The ID of the user's subscription to the train, or {@code null} if the user is not subscribed.
      */
-    private void sendTrainInfoMessage(long chatId, Train train) {
+    private void sendTrainInfoMessage(long chatId, Train train, String subscriptionId) {
         StringBuilder carsInfo = buildCarsInfo(train);
 
         String buttonText;
         String trainsInfoData;
 
-        if (subscriptionService.isUserSubscribed(train.getNumber(), train.getDateDepart())) {
+        if (subscriptionId != null) {
             buttonText = UserButtonStatus.SUBSCRIBED.toString();
-            trainsInfoData = buildUnsubscribeCallbackData(train);
+            trainsInfoData = buildUnsubscribeCallbackData(subscriptionId);
         } else {
             buttonText = UserButtonStatus.UNSUBSCRIBED.toString();
             trainsInfoData = buildSubscribeCallbackData(train);
@@ -119,12 +124,11 @@ public class SendTicketsInfoService {
     /**
      * Builds the callback data for unsubscribing from a train.
      *
-     * @param train The train for which to build the unsubscribe callback data.
+     * @param subscriptionId The ID of the subscription to the train.
      * @return The unsubscribe callback data.
      */
-    private String buildUnsubscribeCallbackData(Train train) {
-        String unsubscribeCallbackData = subscriptionService.getSubscriptionIdByTrainNumberAndDateDepart(train.getNumber(), train.getDateDepart());
-        return String.format("%s|%s", CallbackQueryType.UNSUBSCRIBE, unsubscribeCallbackData);
+    private String buildUnsubscribeCallbackData(String subscriptionId) {
+        return String.format("%s|%s", CallbackQueryType.UNSUBSCRIBE, subscriptionId);
     }
 
     /**
@@ -0,0 +1,232 @@
+package ru.tickets.trainschedulebot.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.tickets.trainschedulebot.model.ShardLease;
+import ru.tickets.trainschedulebot.model.ShardNode;
+import ru.tickets.trainschedulebot.model.SubscriptionRoute;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Service class distributing subscription processing between bot instances.
+ * <p>
+ * Subscription routes are partitioned into a fixed number of shards by their hash. Every instance periodically
+ * claims shard leases stored in MongoDB and renews the leases it holds, so each shard is processed by a single
+ * instance. Every instance also renews its own heartbeat, and claims a fair share of the shards among the instances
+ * with an unexpired heartbeat: when an instance joins, the others release their surplus shards on their next renewal
+ * and the new instance claims them, and when an instance stops renewing its leases, they expire and are taken over
+ * by the remaining instances.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-16
+ */
+@Slf4j
+@Service
+public class ShardLeaseService {
+
+    private final MongoTemplate mongoTemplate;
+    private final Clock clock;
+    private final int shards;
+    private final Duration leaseTtl;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * The shards owned by this instance, valid until {@code ownedUntil}.
+     */
+    private volatile Set<Integer> ownedShards = Set.of();
+
+    /**
+     * The time until which this instance may rely on owning {@code ownedShards} without renewing the leases.
+     */
+    private volatile Instant ownedUntil = Instant.EPOCH;
+
+    /**
+     * Constructs a new ShardLeaseService with the specified settings.
+     *
+     * @param mongoTemplate The MongoTemplate used to store the leases.
+     * @param shards        The number of shards the subscriptions are partitioned into.
+     * @param leaseTtl      The time after which a lease that was not renewed expires.
+     */
+    public ShardLeaseService(MongoTemplate mongoTemplate,
+                             @Value("${subscriptions.shards}") int shards,
+                             @Value("${subscriptions.leaseTtl}") Duration leaseTtl) {
+        this(mongoTemplate, Clock.systemUTC(), shards, leaseTtl);
+    }
+
+    ShardLeaseService(MongoTemplate mongoTemplate, Clock clock, int shards, Duration leaseTtl) {
+        this.mongoTemplate = mongoTemplate;
+        this.clock = clock;
+        this.shards = shards;
+        this.leaseTtl = leaseTtl;
+    }
+
+    /**
+     * Returns a predicate accepting the routes whose shard is owned by this instance.
+     * The predicate is a snapshot and does not change when the leases are renewed.
+     *
+     * @return The predicate accepting routes owned by this instance, rejecting all routes if the leases have expired.
+     */
+    public Predicate<SubscriptionRoute> ownedRoutes() {
+        if (clock.instant().isAfter(ownedUntil)) {
+            return route -> false;
+        }
+        Set<Integer> shardsSnapshot = ownedShards;
+        return route -> shardsSnapshot.contains(getShard(route));
+    }
+
+    /**
+     * Checks whether a route is owned by this instance according to the current leases.
+     * Unlike the snapshot returned by {@link #ownedRoutes()}, this reflects shards released or lost
+     * since the snapshot was taken, so long-running processing can re-check a route right before processing it.
+     *
+     * @param route The subscription route.
+     * @return True if the shard of the route is owned by this instance, false otherwise.
+     */
+    public boolean ownsRoute(SubscriptionRoute route) {
+        return getOwnedShards().contains(getShard(route));
+    }
+
+    /**
+     * Returns the shards owned by this instance.
+     *
+     * @return The owned shards, empty if the leases have expired.
+     */
+    Set<Integer> getOwnedShards() {
+        return clock.instant().isAfter(ownedUntil) ? Set.of() : ownedShards;
+    }
+
+    /**
+     * Returns the shard of a route. The shard depends only on the route, so it is the same on every instance.
+     *
+     * @param route The subscription route.
+     * @return The number of the shard.
+     */
+    int getShard(SubscriptionRoute route) {
+        return Math.floorMod(Objects.hash(route.stationDepart(), route.stationArrival(), route.dateDepart()), shards);
+    }
+
+    /**
+     * Scheduled task renewing the heartbeat and the leases of this instance and claiming its fair share of the shards.
+     * Failures are logged, the owned shards stay valid until the local lease validity ends.
+     */
+    @Scheduled(fixedDelayString = "${subscriptions.leaseHeartbeatPeriod}")
+    public void renewLeases() {
+        try {
+            Instant now = clock.instant();
+            long liveNodes = renewHeartbeat(now);
+            int fairShare = (int) Math.ceil((double) shards / Math.max(liveNodes, 1));
+
+            Map<Integer, ShardLease> leases = mongoTemplate.findAll(ShardLease.class).stream()
+                    .collect(Collectors.toMap(ShardLease::getShard, Function.identity()));
+
+            Set<Integer> claimedShards = new TreeSet<>();
+            // Renew the leases already held, releasing the shards above the fair share
+            List<Integer> heldShards = leases.values().stream()
+                    .filter(lease -> isActive(lease, now) && nodeId.equals(lease.getOwner()))
+                    .map(ShardLease::getShard)
+                    .sorted()
+                    .toList();
+            for (int shard : heldShards) {
+                if (claimedShards.size() < fairShare && tryClaim(shard, now)) {
+                    claimedShards.add(shard);
+                } else {
+                    release(shard);
+                }
+            }
+
+            // Claim free and expired shards up to the fair share
+            for (int shard = 0; shard < shards && claimedShards.size() < fairShare; shard++) {
+                ShardLease lease = leases.get(shard);
+                if ((lease == null || !isActive(lease, now)) && tryClaim(shard, now)) {
+                    claimedShards.add(shard);
+                }
+            }
+
+            ownedShards = Set.copyOf(claimedShards);
+            ownedUntil = now.plus(leaseTtl.dividedBy(2));
+            log.debug("Instance {} owns shards {} of {}", nodeId, claimedShards, shards);
+        } catch (DataAccessException e) {
+            log.error("Error occurred while renewing shard leases: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Renews the heartbeat of this instance and counts the instances with an unexpired heartbeat.
+     * Expired heartbeats are counted out before MongoDB removes them.
+     *
+     * @param now The current time.
+     * @return The number of live instances, including this one.
+     */
+    private long renewHeartbeat(Instant now) {
+        mongoTemplate.upsert(new Query(Criteria.where("_id").is(nodeId)),
+                new Update().set("expiresAt", now.plus(leaseTtl)).set("heartbeatAt", now), ShardNode.class);
+        return mongoTemplate.count(new Query(Criteria.where("expiresAt").gt(now)), ShardNode.class);
+    }
+
+    /**
+     * Claims or renews the lease of a shard if it is free, expired or already held by this instance.
+     *
+     * @param shard The number of the shard.
+     * @param now   The current time.
+     * @return True if this instance holds the lease, false otherwise.
+     */
+    private boolean tryClaim(int shard, Instant now) {
+        Query query = new Query(Criteria.where("_id").is(shard)
+                .orOperator(Criteria.where("owner").is(nodeId), Criteria.where("expiresAt").lte(now)));
+        Update update = new Update()
+                .set("owner", nodeId)
+                .set("expiresAt", now.plus(leaseTtl))
+                .set("heartbeatAt", now);
+        try {
+            ShardLease lease = mongoTemplate.findAndModify(query, update,
+                    FindAndModifyOptions.options().upsert(true).returnNew(true), ShardLease.class);
+            return lease != null && nodeId.equals(lease.getOwner());
+        } catch (DuplicateKeyException e) {
+            // The lease exists and is held by another instance
+            return false;
+        }
+    }
+
+    /**
+     * Releases the lease of a shard held by this instance, so another instance can claim it.
+     *
+     * @param shard The number of the shard.
+     */
+    private void release(int shard) {
+        Query query = new Query(Criteria.where("_id").is(shard).and("owner").is(nodeId));
+        mongoTemplate.updateFirst(query, new Update().set("expiresAt", Instant.EPOCH), ShardLease.class);
+    }
+
+    /**
+     * Checks whether a lease has not expired.
+     *
+     * @param lease The lease.
+     * @param now   The current time.
+     * @return True if the lease is active, false otherwise.
+     */
+    private boolean isActive(ShardLease lease, Instant now) {
+        return lease.getExpiresAt() != null && lease.getExpiresAt().isAfter(now);
+    }
+}
@@ -0,0 +1,95 @@
+package ru.tickets.trainschedulebot.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.tickets.trainschedulebot.model.UserTicketsSubscription;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Policy deciding when a subscription is checked for updates next.
+ * <p>
+ * The polling interval is a fraction ({@code pollIntervalRatio}) of the time left until the departure of the train,
+ * kept between {@code minPollInterval} and {@code maxPollInterval}: trains departing soon are checked often, trains
+ * departing in months rarely. The interval is halved while ticket prices of the train have changed within
+ * {@code priceChangeWindow}. Every interval is randomized by 10% so that polls of subscriptions created together spread out.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-17
+ */
+@Component
+public class SubscriptionPollingPolicy {
+
+    /**
+     * The fraction of the interval it is randomized by.
+     */
+    private static final double JITTER = 0.1;
+
+    private final Duration minPollInterval;
+    private final Duration maxPollInterval;
+    private final double pollIntervalRatio;
+    private final Duration priceChangeWindow;
+
+    /**
+     * Constructs a new SubscriptionPollingPolicy with the specified settings.
+     *
+     * @param minPollInterval   The shortest interval between polls of a subscription.
+     * @param maxPollInterval   The longest interval between polls of a subscription.
+     * @param pollIntervalRatio The fraction of the time left until departure used as the interval.
+     * @param priceChangeWindow How long after a price change a subscription is polled more often.
+     */
+    public SubscriptionPollingPolicy(@Value("${subscriptions.minPollInterval}") Duration minPollInterval,
+                                     @Value("${subscriptions.maxPollInterval}") Duration maxPollInterval,
+                                     @Value("${subscriptions.pollIntervalRatio}") double pollIntervalRatio,
+                                     @Value("${subscriptions.priceChangeWindow}") Duration priceChangeWindow) {
+        this.minPollInterval = minPollInterval;
+        this.maxPollInterval = maxPollInterval;
+        this.pollIntervalRatio = pollIntervalRatio;
+        this.priceChangeWindow = priceChangeWindow;
+    }
+
+    /**
+     * Calculates the time a subscription is due to be checked for updates at next.
+     *
+     * @param subscription The user subscription.
+     * @param now          The current time.
+     * @return The time of the next poll.
+     */
+    public Instant getNextPollAt(UserTicketsSubscription subscription, Instant now) {
+        Duration interval = getPollInterval(subscription, now);
+        long jitterMillis = (long) (interval.toMillis() * JITTER);
+        if (jitterMillis > 0) {
+            interval = interval.plusMillis(ThreadLocalRandom.current().nextLong(-jitterMillis, jitterMillis + 1));
+        }
+        return now.plus(interval);
+    }
+
+    /**
+     * Calculates the interval until the next poll of a subscription, without randomization.
+     *
+     * @param subscription The user subscription.
+     * @param now          The current time.
+     * @return The polling interval.
+     */
+    Duration getPollInterval(UserTicketsSubscription subscription, Instant now) {
+        Instant departure = subscription.getDepartureAt();
+        if (departure == null) {
+            return maxPollInterval;
+        }
+
+        Duration timeToDeparture = Duration.between(now, departure);
+        Duration interval = Duration.ofMillis((long) (Math.max(0, timeToDeparture.toMillis()) * pollIntervalRatio));
+        if (subscription.getLastPriceChangeAt() != null
+                && subscription.getLastPriceChangeAt().plus(priceChangeWindow).isAfter(now)) {
+            interval = interval.dividedBy(2);
+        }
+
+        if (interval.compareTo(minPollInterval) < 0) {
+            return minPollInterval;
+        }
+        return interval.compareTo(maxPollInterval) > 0 ? maxPollInterval : interval;
+    }
+}
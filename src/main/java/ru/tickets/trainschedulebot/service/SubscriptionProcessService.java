@@ -2,20 +2,31 @@ package ru.tickets.trainschedulebot.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 import ru.tickets.trainschedulebot.model.Car;
+import ru.tickets.trainschedulebot.model.CarChangeEvent;
+import ru.tickets.trainschedulebot.model.CarsDiff;
+import ru.tickets.trainschedulebot.model.OutboxNotification;
+import ru.tickets.trainschedulebot.model.SubscriptionRoute;
 import ru.tickets.trainschedulebot.model.Train;
 import ru.tickets.trainschedulebot.model.UserTicketsSubscription;
+import ru.tickets.trainschedulebot.utils.DateTimeUtils;
 import ru.tickets.trainschedulebot.utils.Emojis;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Collections;
-import java.util.Date;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.function.Predicate;
+import java.util.Optional;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Service class for processing user subscriptions and notifying users about train ticket updates.
@@ -31,9 +42,39 @@ import java.util.function.Predicate;
 public class SubscriptionProcessService {
 
     /**
-     * The date format for parsing date strings.
+     * Prefix of the outbox identifiers of the notifications about departed trains, followed by the subscription ID.
      */
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("dd.MM.yyyy");
+    private static final String TRAIN_HAS_DEPARTED_NOTIFICATION_PREFIX = "trainHasDeparted:";
+
+    /**
+     * The maximum number of routes whose train information is requested concurrently.
+     */
+    @Value("${subscriptions.maxConcurrentRequests}")
+    private int maxConcurrentRequests = 8;
+
+    /**
+     * The maximum number of routes processed on a single tick, bounding the request rate to the remote API.
+     */
+    @Value("${subscriptions.maxRoutesPerTick}")
+    private int maxRoutesPerTick = 50;
+
+    /**
+     * The maximum number of subscriptions of departed trains removed per run of the sweep.
+     */
+    @Value("${subscriptions.departedSweepLimit}")
+    private int departedSweepLimit = 500;
+
+    /**
+     * The maximum time the subscriptions of a single route may be processed for.
+     */
+    @Value("${subscriptions.routeTimeout}")
+    private Duration routeTimeout = Duration.ofMinutes(1);
+
+    /**
+     * The maximum time a processing tick may take, routes not processed by then are postponed to the next tick.
+     */
+    @Value("${subscriptions.cycleTimeout}")
+    private Duration cycleTimeout = Duration.ofMinutes(30);
 
     /**
      * Service for retrieving train ticket information.
@@ -45,6 +86,16 @@ public class SubscriptionProcessService {
      */
     private final CarsProcessingService carsProcessingService;
 
+    /**
+     * Service for detecting changes of the subscribed train carriages.
+     */
+    private final CarsDiffService carsDiffService;
+
+    /**
+     * Service keeping the price history of the polled trains.
+     */
+    private final PriceHistoryService priceHistoryService;
+
     /**
      * Service for managing user subscriptions.
      */
@@ -61,141 +112,391 @@ public class SubscriptionProcessService {
     private final ReplyMessagesService messagesService;
 
     /**
-     * Service for sending Telegram messages.
+     * Service delivering notifications to users independently of the processing of subscriptions.
+     */
+    private final NotificationOutboxService notificationOutboxService;
+
+    /**
+     * Policy deciding when subscriptions are checked for updates next.
      */
-    private final SendMessageService sendMessageService;
+    private final SubscriptionPollingPolicy pollingPolicy;
 
     /**
-     * Scheduled task to process all user subscriptions at fixed intervals.
+     * Service distributing subscription routes between bot instances.
      */
-    @Scheduled(fixedRateString = "${subscriptions.processPeriod}")
+    private final ShardLeaseService shardLeaseService;
+
+    /**
+     * Scheduler the blocking processing of subscriptions runs on.
+     */
+    private final Scheduler subscriptionProcessingScheduler;
+
+    /**
+     * Scheduled task processing the subscriptions that are due to be checked for updates.
+     * On every tick up to {@code maxRoutesPerTick} routes of due subscriptions are taken, most overdue first,
+     * which caps the number of requests to the remote API regardless of how many subscriptions are due.
+     * The trains of every route are requested once for all of its subscriptions, and every subscription
+     * of the route is then rescheduled by the {@link SubscriptionPollingPolicy}.
+     * <p>
+     * Only the routes of the shards leased by this instance are processed, the other routes are processed
+     * by other bot instances. Since a tick may outlast a lease, the ownership of every route is checked again
+     * right before the route is processed. Up to {@code maxConcurrentRequests} routes are requested concurrently without
+     * holding a thread per request, the subscriptions of a route are read from the database without blocking as well
+     * and are processed on the subscription processing scheduler. Every route is bounded by {@code routeTimeout} and the whole tick by {@code cycleTimeout}.
+     * Changes of the subscriptions are collected during the tick and written to the database in bulk, together with
+     * the notifications of the users, which are delivered from the notification outbox without slowing the tick down.
+     * Subscriptions of trains that have departed according to their departure time are removed without
+     * requesting the remote API.
+     */
+    @Scheduled(fixedDelayString = "${subscriptions.processPeriod}")
     public void processAllUsersSubscriptions() {
-        log.info("Started processing user subscriptions..");
-        subscriptionService.getAllSubscriptions().forEach(this::processSubscription);
-        log.info("Finished processing user subscriptions.");
+        Instant now = Instant.now();
+        List<SubscriptionRoute> dueRoutes = subscriptionService.findDueRoutes(now, maxRoutesPerTick, shardLeaseService.ownedRoutes());
+        if (dueRoutes.isEmpty()) {
+            log.debug("No subscriptions are due to be processed");
+            return;
+        }
+
+        log.info("Started processing subscriptions of {} routes..", dueRoutes.size());
+        ProcessingCycle cycle = new ProcessingCycle(subscriptionService.newWriteBuffer());
+        try {
+            Flux.fromIterable(dueRoutes)
+                    .filter(route -> isStillOwned(route, cycle))
+                    .flatMap(route -> subscriptionService.getRouteSubscriptionsAsync(route)
+                            .collectList()
+                            .publishOn(subscriptionProcessingScheduler)
+                            .map(routeSubscriptions -> removeDepartedRouteSubscriptions(routeSubscriptions, now, cycle.writes))
+                            .filter(routeSubscriptions -> !routeSubscriptions.isEmpty())
+                            .doOnNext(routeSubscriptions -> cycle.routeStarted(routeSubscriptions.size()))
+                            .flatMap(routeSubscriptions -> processRouteSubscriptionsAsync(route, routeSubscriptions, cycle)),
+                            maxConcurrentRequests)
+                    // Routes emit no items, so the timeout bounds the whole tick
+                    .timeout(cycleTimeout, Mono.fromRunnable(() ->
+                            log.warn("Processing cycle has not finished in {}, remaining routes are postponed", cycleTimeout)))
+                    .blockLast();
+        } finally {
+            cycle.writes.flush();
+        }
+
+        log.info("Finished processing user subscriptions: {}", cycle);
     }
 
     /**
-     * Processes a user subscription, checking for updates in train information and notifying users.
-     *
-     * @param subscription The user subscription to process.
+     * Scheduled task removing the subscriptions of departed trains and notifying their users.
+     * The departure time is stored with the subscriptions, so no requests to the remote API are needed.
+     * Up to {@code departedSweepLimit} subscriptions are read per run in a single query, then their notifications
+     * are added to the outbox in one bulk write and the subscriptions are removed with one delete.
+     * <p>
+     * The notifications are added to the outbox before the subscriptions are removed, under identifiers derived
+     * from the subscriptions. If the sweep stops in between, the next run finds the subscriptions again and
+     * enqueueing their notifications once more has no effect. Concurrent sweeps of several bot instances enqueue
+     * the same notifications as well, so every user is notified once.
      */
-    private void processSubscription(UserTicketsSubscription subscription) {
-        List<Train> actualTrains = getActualTrains(subscription);
+    @Scheduled(fixedDelayString = "${subscriptions.departedSweepPeriod}")
+    public void removeDepartedSubscriptions() {
+        Instant now = Instant.now();
+        long removed = 0;
+        try {
+            List<UserTicketsSubscription> departed = subscriptionService.findDepartedSubscriptions(now, departedSweepLimit);
+            if (!departed.isEmpty()) {
+                notificationOutboxService.enqueueAllOnce(departed.stream()
+                        .map(subscription -> OutboxNotification.of(TRAIN_HAS_DEPARTED_NOTIFICATION_PREFIX + subscription.getId(),
+                                subscription.getChatId(), getTrainHasDepartedText(subscription), now))
+                        .toList());
+                removed = subscriptionService.removeDepartedSubscriptions(departed.stream()
+                        .map(UserTicketsSubscription::getId)
+                        .toList());
+            }
+        } catch (RuntimeException e) {
+            log.error("Error occurred while removing subscriptions of departed trains: {}", e.getMessage(), e);
+        }
 
-        if (isTrainHasDeparted(actualTrains, subscription)) {
-            handleDepartedTrain(subscription);
-            return;
+        if (removed > 0) {
+            log.info("Removed {} subscriptions of departed trains", removed);
         }
+    }
 
-        actualTrains.forEach(actualTrain -> processTrain(subscription, actualTrain));
+    /**
+     * Checks that the shard of a route is still leased by this instance, since it may have been released
+     * or lost to another instance after the due routes were found.
+     *
+     * @param route The route about to be processed.
+     * @param cycle The processing cycle the route is processed in.
+     * @return True if the route may be processed, false otherwise.
+     */
+    private boolean isStillOwned(SubscriptionRoute route, ProcessingCycle cycle) {
+        if (shardLeaseService.ownsRoute(route)) {
+            return true;
+        }
+        cycle.skipped.incrementAndGet();
+        log.debug("Route {} is no longer owned by this instance, skipping it", route);
+        return false;
     }
 
     /**
-     * Retrieves the list of actual trains based on the user subscription.
+     * Removes the subscriptions of a route whose trains have departed and notifies their users.
+     * This covers subscriptions saved without a departure time, which the departed trains sweep does not find.
      *
-     * @param subscription The user subscription for which to retrieve actual trains.
-     * @return A list of actual trains.
+     * @param subscriptions The user subscriptions of a route.
+     * @param now           The current time.
+     * @param writes        The buffer collecting the subscription writes of the cycle.
+     * @return The subscriptions of the route whose trains have not departed.
      */
-    private List<Train> getActualTrains(UserTicketsSubscription subscription) {
-        int stationDepartCode = stationCodeService.getStationCode(subscription.getStationDepart());
-        int stationArrivalCode = stationCodeService.getStationCode(subscription.getStationArrival());
-        Date dateDeparture = parseDateDeparture(subscription.getDateDepart());
+    private List<UserTicketsSubscription> removeDepartedRouteSubscriptions(List<UserTicketsSubscription> subscriptions, Instant now,
+                                                                           SubscriptionWriteBuffer writes) {
+        List<UserTicketsSubscription> activeSubscriptions = new ArrayList<>(subscriptions.size());
+        for (UserTicketsSubscription subscription : subscriptions) {
+            if (subscription.hasDepartedBy(now)) {
+                handleDepartedTrain(subscription, writes);
+            } else {
+                activeSubscriptions.add(subscription);
+            }
+        }
+        return activeSubscriptions;
+    }
 
-        return trainTicketsGetInfoService.getTrainTicketsList(subscription.getChatId(),
-                stationDepartCode, stationArrivalCode, dateDeparture);
+    /**
+     * Processes the subscriptions of a route, requesting actual train information once without blocking
+     * and sharing it with all subscriptions of the route. The prices of all trains of the route are recorded
+     * in the price history.
+     * If no trains are received for the route, or they could not be received at all, the state of the subscribed
+     * trains is unknown: the subscriptions are left untouched and checked again on their next poll.
+     * Errors are logged so that a single failed route does not stop the whole processing cycle.
+     *
+     * @param route         The route and departure date of the subscriptions.
+     * @param subscriptions The user subscriptions of the route.
+     * @param cycle         The processing cycle the route is processed in.
+     * @return A Mono completing once the subscriptions have been processed.
+     */
+    private Mono<Void> processRouteSubscriptionsAsync(SubscriptionRoute route, List<UserTicketsSubscription> subscriptions,
+                                                      ProcessingCycle cycle) {
+        return getActualTrains(route)
+                .publishOn(subscriptionProcessingScheduler)
+                .filter(actualTrains -> hasReceivedTrains(route, actualTrains))
+                .doOnNext(actualTrains -> priceHistoryService.recordPrices(actualTrains, Instant.now()))
+                .doOnNext(actualTrains -> subscriptions.forEach(subscription ->
+                        processSubscriptionSafely(subscription, actualTrains, cycle.writes)))
+                .timeout(routeTimeout)
+                .doOnSuccess(actualTrains -> (actualTrains == null ? cycle.postponed : cycle.completed).incrementAndGet())
+                .onErrorResume(RzdUpstreamGuard.RejectedException.class, e -> {
+                    cycle.postponed.incrementAndGet();
+                    log.warn("Processing of {} subscriptions of route {} postponed: {}", subscriptions.size(), route, e.getMessage());
+                    return Mono.empty();
+                })
+                .onErrorResume(TimeoutException.class, e -> {
+                    cycle.timedOut.incrementAndGet();
+                    log.warn("Processing of {} subscriptions of route {} has not finished in {}", subscriptions.size(), route, routeTimeout);
+                    return Mono.empty();
+                })
+                .onErrorResume(e -> {
+                    cycle.failed.incrementAndGet();
+                    log.error("Error occurred while processing subscriptions of route {}: {}", route, e.getMessage(), e);
+                    return Mono.empty();
+                })
+                .then(Mono.fromRunnable(() -> scheduleNextPolls(subscriptions, cycle.writes)).subscribeOn(subscriptionProcessingScheduler))
+                .onErrorResume(e -> {
+                    log.error("Error occurred while rescheduling subscriptions of route {}: {}", route, e.getMessage(), e);
+                    return Mono.empty();
+                })
+                .then();
     }
 
     /**
-     * Checks if the subscribed train has departed and handles the case.
+     * Checks if any trains have been received for a route. The remote API returns no trains while it is unable
+     * to serve the route, which must not be mistaken for the departure of the subscribed trains.
      *
-     * @param actualTrains   The list of actual trains.
-     * @param subscription   The user subscription.
-     * @return True if the train has departed, false otherwise.
-     */
-    private boolean isTrainHasDeparted(List<Train> actualTrains, UserTicketsSubscription subscription) {
-        return actualTrains.stream()
-                .map(Train::getNumber)
-                .noneMatch(Predicate.isEqual(subscription.getTrainNumber()));
+     * @param route        The route and departure date of the subscriptions.
+     * @param actualTrains The list of actual trains received for the route.
+     * @return True if trains have been received, false otherwise.
+     */
+    private boolean hasReceivedTrains(SubscriptionRoute route, List<Train> actualTrains) {
+        if (actualTrains.isEmpty()) {
+            log.warn("No trains received for route {}, its subscriptions are checked again later", route);
+            return false;
+        }
+        return true;
     }
 
     /**
-     * Handles the case when the subscribed train has departed.
+     * Schedules the next poll of processed subscriptions according to the {@link SubscriptionPollingPolicy}.
+     * Subscriptions whose route could not be processed are rescheduled as well, so that a failing route does
+     * not stay at the head of the queue.
      *
-     * @param subscription The user subscription for the departed train.
+     * @param subscriptions The processed user subscriptions.
+     * @param writes        The buffer collecting the subscription writes of the cycle.
      */
-    private void handleDepartedTrain(UserTicketsSubscription subscription) {
-        subscriptionService.deleteUserSubscriptionById(subscription.getId());
-        sendMessageService.sendMessage(messagesService.getReplyMessage(subscription.getChatId(), "subscription.trainHasDeparted",
-                Emojis.NOTIFICATION_BELL, subscription.getTrainNumber(), subscription.getTrainName(),
-                subscription.getDateDepart(), subscription.getTimeDepart()));
+    private void scheduleNextPolls(List<UserTicketsSubscription> subscriptions, SubscriptionWriteBuffer writes) {
+        Instant now = Instant.now();
+        for (UserTicketsSubscription subscription : subscriptions) {
+            Instant nextPollAt = pollingPolicy.getNextPollAt(subscription, now);
+            subscription.setNextPollAt(nextPollAt);
+            writes.scheduleNextPoll(subscription, nextPollAt);
+        }
     }
 
     /**
-     * Processes an actual train, checking for updates in carriages information and notifying users.
+     * Processes a user subscription, logging errors so that other subscriptions of the route are still processed.
      *
-     * @param subscription The user subscription.
-     * @param actualTrain  The actual train information.
+     * @param subscription The user subscription to process.
+     * @param actualTrains The list of actual trains for the subscription's route and date.
+     * @param writes       The buffer collecting the subscription writes of the cycle.
      */
-    private void processTrain(UserTicketsSubscription subscription, Train actualTrain) {
-        if (isSameTrainAndDate(actualTrain, subscription)) {
-            List<Car> actualCarsWithMinimumPrice = carsProcessingService.filterCarriagesWithMinPrice(actualTrain.getAvailableCars());
-            Map<String, List<Car>> updatedCarsNotification = processCarsLists(subscription.getSubscribedCars(), actualCarsWithMinimumPrice);
+    private void processSubscriptionSafely(UserTicketsSubscription subscription, List<Train> actualTrains,
+                                           SubscriptionWriteBuffer writes) {
+        try {
+            processSubscription(subscription, actualTrains, writes);
+        } catch (RuntimeException e) {
+            log.error("Error occurred while processing subscription {}: {}", subscription.getId(), e.getMessage(), e);
+        }
+    }
 
-            if (!updatedCarsNotification.isEmpty()) {
-                updateSubscriptionAndNotifyUser(subscription, updatedCarsNotification);
-            }
+    /**
+     * Processes a user subscription, checking for updates in train information and notifying users.
+     * Departures are decided by the departure time of the subscription alone: a subscribed train missing from
+     * the actual trains may just be sold out or temporarily not returned by the remote API, so the subscription
+     * is kept and checked again on its next poll.
+     *
+     * @param subscription The user subscription to process.
+     * @param actualTrains The list of actual trains for the subscription's route and date.
+     * @param writes       The buffer collecting the subscription writes of the cycle.
+     */
+    private void processSubscription(UserTicketsSubscription subscription, List<Train> actualTrains,
+                                     SubscriptionWriteBuffer writes) {
+        Optional<Train> actualTrain = actualTrains.stream()
+                .filter(train -> isSameTrainAndDate(train, subscription))
+                .findFirst();
+        if (actualTrain.isEmpty()) {
+            log.info("Train {} of subscription {} is missing from the actual trains of {}, checking it again later",
+                    subscription.getTrainNumber(), subscription.getId(), subscription.getDateDepart());
+            return;
         }
+
+        processTrain(subscription, actualTrain.get(), writes);
     }
 
     /**
-     * Updates the user subscription and notifies the user about the changes in subscribed cars.
+     * Retrieves the list of actual trains of a route.
+     * Station codes may require a blocking request to the station service, so they are resolved off the calling thread.
+     * Requests to the remote API are sent in the background bulkhead, so they back off before interactive searches do.
+     *
+     * @param route The route and departure date for which to retrieve actual trains.
+     * @return A Mono emitting the list of actual trains.
+     */
+    private Mono<List<Train>> getActualTrains(SubscriptionRoute route) {
+        LocalDate dateDeparture = DateTimeUtils.parseDate(route.dateDepart()).orElse(null);
+        if (dateDeparture == null) {
+            log.error("Invalid departure date of subscriptions of route {}", route);
+            return Mono.empty();
+        }
+        Mono<Integer> stationDepartCode = Mono.fromCallable(() -> stationCodeService.getStationCode(route.stationDepart()));
+        Mono<Integer> stationArrivalCode = Mono.fromCallable(() -> stationCodeService.getStationCode(route.stationArrival()));
+
+        return Mono.zip(stationDepartCode, stationArrivalCode)
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(stationCodes -> trainTicketsGetInfoService.getTrainTicketsListAsync(
+                        stationCodes.getT1(), stationCodes.getT2(), dateDeparture, RzdUpstreamGuard.Bulkhead.BACKGROUND));
+    }
+
+    /**
+     * Handles the case when the subscribed train has departed, removing the subscription and notifying the user.
+     * The notice has the identifier used by the departed trains sweep, so the user is notified once even if the sweep
+     * removes the subscription concurrently.
+     *
+     * @param subscription The user subscription for the departed train.
+     * @param writes       The buffer collecting the subscription writes of the cycle.
+     */
+    private void handleDepartedTrain(UserTicketsSubscription subscription, SubscriptionWriteBuffer writes) {
+        writes.delete(subscription, TRAIN_HAS_DEPARTED_NOTIFICATION_PREFIX + subscription.getId(),
+                getTrainHasDepartedText(subscription));
+    }
+
+    /**
+     * Builds the notice that the subscribed train has departed and the subscription has been removed.
+     *
+     * @param subscription The removed user subscription.
+     * @return The notification message.
+     */
+    private String getTrainHasDepartedText(UserTicketsSubscription subscription) {
+        return messagesService.getReplyText("subscription.trainHasDeparted",
+                Emojis.NOTIFICATION_BELL, subscription.getTrainNumber(), subscription.getTrainName(),
+                subscription.getDateDepart(), subscription.getTimeDepart());
+    }
+
+    /**
+     * Processes the actual train of a subscription, checking for updates in carriages information and notifying users.
      *
-     * @param subscription           The user subscription.
-     * @param updatedCarsNotification The map containing the notification message and updated cars list.
+     * @param subscription The user subscription.
+     * @param actualTrain  The actual information of the subscribed train.
+     * @param writes       The buffer collecting the subscription writes of the cycle.
      */
-    private void updateSubscriptionAndNotifyUser(UserTicketsSubscription subscription, Map<String, List<Car>> updatedCarsNotification) {
-        String priceChangesMessage = updatedCarsNotification.keySet().iterator().next();
-        List<Car> updatedCars = updatedCarsNotification.get(priceChangesMessage);
+    private void processTrain(UserTicketsSubscription subscription, Train actualTrain, SubscriptionWriteBuffer writes) {
+        List<Car> actualCarsWithMinimumPrice = carsProcessingService.filterCarriagesWithMinPrice(actualTrain.getAvailableCars());
+        CarsDiff carsDiff = carsDiffService.diff(subscription.getSubscribedCars(), actualCarsWithMinimumPrice);
 
-        subscription.setSubscribedCars(updatedCars);
-        subscriptionService.saveUserSubscription(subscription);
-        sendUserNotification(subscription, priceChangesMessage, updatedCars);
+        if (carsDiff.hasChanges()) {
+            updateSubscriptionAndNotifyUser(subscription, carsDiff, writes);
+        }
     }
 
     /**
-     * Sends a notification message to the user about the changes in subscribed cars.
+     * Updates the user subscription and notifies the user about the changes in subscribed cars.
      *
-     * @param subscription      The user subscription.
-     * @param priceChangeMessage The message indicating the price changes.
-     * @param updatedCars        The list of updated cars.
+     * @param subscription The user subscription.
+     * @param carsDiff     The changes of the subscribed cars and the actual cars snapshot.
+     * @param writes       The buffer collecting the subscription writes of the cycle.
      */
-    private void sendUserNotification(UserTicketsSubscription subscription, String priceChangeMessage, List<Car> updatedCars) {
-        StringBuilder notificationMessage = buildNotificationMessage(subscription, priceChangeMessage, updatedCars);
-        sendMessageService.sendMessage(subscription.getChatId(), notificationMessage.toString());
+    private void updateSubscriptionAndNotifyUser(UserTicketsSubscription subscription, CarsDiff carsDiff,
+                                                 SubscriptionWriteBuffer writes) {
+        subscription.setSubscribedCars(new ArrayList<>(carsDiff.cars()));
+        subscription.setLastPriceChangeAt(Instant.now());
+        writes.updateSubscribedCars(subscription, buildNotificationMessage(subscription, carsDiff));
     }
 
     /**
      * Builds a notification message for the user.
      *
-     * @param subscription      The user subscription.
-     * @param priceChangeMessage The message indicating the price changes.
-     * @param updatedCars        The list of updated cars.
+     * @param subscription The user subscription.
+     * @param carsDiff     The changes of the subscribed cars and the actual cars snapshot.
      * @return The notification message.
      */
-    private StringBuilder buildNotificationMessage(UserTicketsSubscription subscription, String priceChangeMessage, List<Car> updatedCars) {
+    private String buildNotificationMessage(UserTicketsSubscription subscription, CarsDiff carsDiff) {
         StringBuilder notificationMessage = new StringBuilder(messagesService.getReplyText("subscription.trainTicketsPriceChanges",
                 Emojis.NOTIFICATION_BELL, subscription.getTrainNumber(), subscription.getTrainName(),
-                subscription.getDateDepart(), subscription.getTimeDepart(), subscription.getStationArrival())).append(priceChangeMessage);
+                subscription.getDateDepart(), subscription.getTimeDepart(), subscription.getStationArrival()));
+
+        carsDiff.events().forEach(event -> notificationMessage.append(renderCarChange(event)));
 
         notificationMessage.append(messagesService.getReplyText("subscription.lastTicketPrices"));
 
-        for (Car car : updatedCars) {
+        for (Car car : carsDiff.cars()) {
             notificationMessage.append(messagesService.getReplyText("subscription.carsTicketsInfo", Emojis.BED,
                     car.getCarType(), Emojis.MINUS, car.getFreeSeats(), Emojis.MINUS, car.getMinimalPrice()));
         }
 
-        return notificationMessage;
+        return notificationMessage.toString();
+    }
+
+    /**
+     * Renders a change of the subscribed cars as a line of the notification message.
+     *
+     * @param event The change of a car type.
+     * @return The localized description of the change.
+     */
+    private String renderCarChange(CarChangeEvent event) {
+        return switch (event.type()) {
+            case PRICE_UP -> messagesService.getReplyText("subscription.PriceUp", Emojis.NOTIFICATION_PRICE_UP,
+                    event.carType(), event.oldPrice(), event.newPrice());
+            case PRICE_DOWN -> messagesService.getReplyText("subscription.PriceDown", Emojis.NOTIFICATION_PRICE_DOWN,
+                    event.carType(), event.oldPrice(), event.newPrice());
+            case SEATS_APPEARED -> messagesService.getReplyText("subscription.SeatsAppeared", Emojis.NOTIFICATION_SEATS_APPEARED,
+                    event.carType(), event.newFreeSeats());
+            case SOLD_OUT -> messagesService.getReplyText("subscription.SoldOut", Emojis.NOTIFICATION_SOLD_OUT,
+                    event.carType());
+            case CAR_TYPE_ADDED -> messagesService.getReplyText("subscription.CarTypeAdded", Emojis.NOTIFICATION_SEATS_APPEARED,
+                    event.carType(), event.newFreeSeats(), event.newPrice());
+            case CAR_TYPE_REMOVED -> messagesService.getReplyText("subscription.CarTypeRemoved", Emojis.NOTIFICATION_SOLD_OUT,
+                    event.carType());
+        };
     }
 
     /**
@@ -211,77 +512,36 @@ public class SubscriptionProcessService {
     }
 
     /**
-     * Processes the lists of subscribed cars and actual cars, checking for changes and generating a notification message.
-     *
-     * @param subscribedCars The list of subscribed cars.
-     * @param actualCars     The list of actual cars.
-     * @return A map containing the notification message and the list of updated cars.
-     */
-    private Map<String, List<Car>> processCarsLists(List<Car> subscribedCars, List<Car> actualCars) {
-        StringBuilder notificationMessage = new StringBuilder();
-
-        for (Car subscribedCar : subscribedCars) {
-            for (Car actualCar : actualCars) {
-                if (actualCar.getCarType().equals(subscribedCar.getCarType())) {
-                    processCar(subscribedCar, actualCar, notificationMessage);
-                }
-            }
-        }
-
-        return notificationMessage.isEmpty() ? Collections.emptyMap() : Collections.singletonMap(notificationMessage.toString(), subscribedCars);
-    }
-
-    /**
-     * Processes a single car, checking for changes in price and free seats.
-     *
-     * @param subscribedCar     The subscribed car.
-     * @param actualCar         The actual car.
-     * @param notificationMessage The StringBuilder to append the notification message.
+     * Tracks the outcome of the routes processed in a processing cycle.
      */
-    private void processCar(Car subscribedCar, Car actualCar, StringBuilder notificationMessage) {
-
-        if (actualCar.getMinimalPrice() > subscribedCar.getMinimalPrice()) {
-            appendNotificationMessage(notificationMessage, "subscription.PriceUp", Emojis.NOTIFICATION_PRICE_UP,
-                    actualCar.getCarType(), subscribedCar.getMinimalPrice(), actualCar.getMinimalPrice());
-            subscribedCar.setMinimalPrice(actualCar.getMinimalPrice());
+    private static final class ProcessingCycle {
+        private final long startedAt = System.nanoTime();
+        private final SubscriptionWriteBuffer writes;
+        private final AtomicInteger routes = new AtomicInteger();
+        private final AtomicInteger subscriptions = new AtomicInteger();
+        private final AtomicInteger completed = new AtomicInteger();
+        private final AtomicInteger postponed = new AtomicInteger();
+        private final AtomicInteger timedOut = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+
+        private ProcessingCycle(SubscriptionWriteBuffer writes) {
+            this.writes = writes;
         }
 
-        else if (actualCar.getMinimalPrice() < subscribedCar.getMinimalPrice()) {
-            appendNotificationMessage(notificationMessage, "subscription.PriceDown", Emojis.NOTIFICATION_PRICE_DOWN,
-                    actualCar.getCarType(), subscribedCar.getMinimalPrice(), actualCar.getMinimalPrice());
-            subscribedCar.setMinimalPrice(actualCar.getMinimalPrice());
+        private void routeStarted(int routeSubscriptions) {
+            routes.incrementAndGet();
+            subscriptions.addAndGet(routeSubscriptions);
         }
 
-        subscribedCar.setFreeSeats(actualCar.getFreeSeats());
-    }
-
-    /**
-     * Appends a price change notification message to the StringBuilder.
-     *
-     * @param notificationMessage The StringBuilder to append the message.
-     * @param messageKey          The message key.
-     * @param emoji               The emoji to include in the message.
-     * @param carType             The car type.
-     * @param oldPrice            The old price.
-     * @param newPrice            The new price.
-     */
-    private void appendNotificationMessage(StringBuilder notificationMessage, String messageKey, Emojis emoji, String carType, int oldPrice, int newPrice) {
-        notificationMessage.append(messagesService.getReplyText(messageKey, emoji, carType, oldPrice, newPrice));
-    }
-
-    /**
-     * Parses a date string into a Date object.
-     *
-     * @param dateDeparture The date string to parse.
-     * @return A Date object representing the parsed date.
-     */
-    private Date parseDateDeparture(String dateDeparture) {
-        Date dateDepart = null;
-        try {
-            dateDepart = DATE_FORMAT.parse(dateDeparture);
-        } catch (ParseException e) {
-            log.error("Error parsing date: {}", e.getMessage());
+        @Override
+        public String toString() {
+            int finished = completed.get() + postponed.get() + timedOut.get() + failed.get();
+            return String.format("%d of %d routes (%d subscriptions) finished in %d ms (completed: %d, postponed: %d, timed out: %d, failed: %d), "
+                            + "%d routes no longer owned, %d writes (failed: %d)",
+                    finished, routes.get(), subscriptions.get(), Duration.ofNanos(System.nanoTime() - startedAt).toMillis(),
+                    completed.get(), postponed.get(), timedOut.get(), failed.get(), skipped.get(),
+                    writes.getWrites(), writes.getFailedWrites());
         }
-        return dateDepart;
     }
-}
\ No newline at end of file
+}
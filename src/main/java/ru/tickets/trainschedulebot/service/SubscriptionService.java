@@ -1,18 +1,47 @@
 package ru.tickets.trainschedulebot.service;
 
+import com.mongodb.client.result.DeleteResult;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.tickets.trainschedulebot.cache.SubscriptionIndex;
+import ru.tickets.trainschedulebot.model.SubscriptionRoute;
+import ru.tickets.trainschedulebot.model.TrainDeparture;
 import ru.tickets.trainschedulebot.model.UserTicketsSubscription;
+import ru.tickets.trainschedulebot.repository.ReactiveUserSubscriptionRepository;
 import ru.tickets.trainschedulebot.repository.UserSubscriptionRepository;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 /**
  * Service class for managing user subscriptions related to train tickets.
  * This class provides methods to retrieve, save, and delete user subscriptions,
  * as well as check for subscription existence and obtain subscription details.
+ * The methods with the {@code Async} suffix use the reactive MongoDB driver and do not block the calling thread,
+ * so that they can be composed with the other non-blocking I/O of the bot.
+ * <p>
+ * Lookups by ID, by chat and by train are served from the {@link SubscriptionIndex} once it is loaded, and every
+ * write made here is written through to the index after it has succeeded. The polling cycle keeps reading
+ * the subscriptions of a route from the database, since it compares them with the actual trains.
  *
  * @author Elgun Dilanchiev
  * @version 1.0
@@ -23,130 +52,251 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class SubscriptionService {
     private final UserSubscriptionRepository subscriptionsRepository;
+    private final ReactiveUserSubscriptionRepository reactiveSubscriptionsRepository;
+    private final MongoTemplate mongoTemplate;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final SubscriptionIndex subscriptionIndex;
 
     /**
-     * Retrieves all user subscriptions.
-     *
-     * @return A list of all user subscriptions.
+     * Name of the field holding the time a subscription is due to be checked for updates at.
      */
-    public List<UserTicketsSubscription> getAllSubscriptions() {
-        return subscriptionsRepository.findAll();
-    }
+    private static final String NEXT_POLL_AT_FIELD = "nextPollAt";
+
+    /**
+     * Name of the field holding the departure time of the subscribed train.
+     */
+    private static final String DEPARTURE_AT_FIELD = "departureAt";
 
     /**
-     * Saves a user subscription to the repository.
+     * The number of subscriptions fetched from the database per cursor batch when finding due subscriptions.
+     */
+    @Value("${subscriptions.cursorBatchSize}")
+    private int cursorBatchSize = 500;
+
+    /**
+     * The maximum number of subscription writes sent to the database in one bulk operation.
+     */
+    @Value("${subscriptions.writeBatchSize}")
+    private int writeBatchSize = 500;
+
+    /**
+     * Finds the routes of the subscriptions that are due to be checked for updates, most overdue first.
+     * Subscriptions of trains that have already departed are not returned.
+     * Due subscriptions are read from a database cursor in batches of {@code cursorBatchSize}, only their
+     * route fields are fetched, and reading stops as soon as {@code maxRoutes} routes have been found.
      *
-     * @param usersSubscription The user subscription to be saved.
+     * @param now         The current time.
+     * @param maxRoutes   The maximum number of routes to find.
+     * @param routeFilter Predicate accepting the routes to return.
+     * @return The due routes, in the order they became due.
      */
-    public void saveUserSubscription(UserTicketsSubscription usersSubscription) {
-        try {
-            subscriptionsRepository.save(usersSubscription);
-        } catch (Exception e) {
-            log.error("Error while saving subscription: {}", e.getMessage(), e);
+    public List<SubscriptionRoute> findDueRoutes(Instant now, int maxRoutes, Predicate<SubscriptionRoute> routeFilter) {
+        Query query = new Query(new Criteria().orOperator(
+                Criteria.where(NEXT_POLL_AT_FIELD).lte(now),
+                Criteria.where(NEXT_POLL_AT_FIELD).is(null))
+                .and(DEPARTURE_AT_FIELD).not().lte(now))
+                .with(Sort.by(NEXT_POLL_AT_FIELD))
+                .cursorBatchSize(cursorBatchSize);
+        query.fields().include("stationDepart", "stationArrival", "dateDepart");
+
+        Set<SubscriptionRoute> dueRoutes = new LinkedHashSet<>();
+        try (Stream<UserTicketsSubscription> dueSubscriptions = mongoTemplate.stream(query, UserTicketsSubscription.class)) {
+            Iterator<UserTicketsSubscription> iterator = dueSubscriptions.iterator();
+            while (dueRoutes.size() < maxRoutes && iterator.hasNext()) {
+                SubscriptionRoute route = SubscriptionRoute.of(iterator.next());
+                if (routeFilter.test(route)) {
+                    dueRoutes.add(route);
+                }
+            }
         }
+        return List.copyOf(dueRoutes);
     }
 
     /**
-     * Deletes a user subscription based on the subscription ID.
+     * Retrieves all subscriptions of a route without blocking. The subscriptions are read from the database, like the
+     * due routes, since the index may miss the subscriptions created by other instances until its next reload.
      *
-     * @param subscriptionID The ID of the subscription to be deleted.
+     * @param route The route and departure date.
+     * @return A Flux emitting the user subscriptions of the route.
      */
-    public void deleteUserSubscriptionById(String subscriptionID) {
-        subscriptionsRepository.deleteById(subscriptionID);
+    public Flux<UserTicketsSubscription> getRouteSubscriptionsAsync(SubscriptionRoute route) {
+        Query query = new Query(Criteria.where("stationDepart").is(route.stationDepart())
+                .and("stationArrival").is(route.stationArrival())
+                .and("dateDepart").is(route.dateDepart()));
+        return reactiveMongoTemplate.find(query, UserTicketsSubscription.class);
     }
 
     /**
-     * Checks if a user has a subscription for a particular train and date.
+     * Finds the subscriptions of the trains that have departed by the given time, in the order they departed.
      *
-     * @param userSubscription The user subscription to check.
-     * @return True if the user has a subscription, false otherwise.
+     * @param now   The current time.
+     * @param limit The maximum number of subscriptions to find.
+     * @return The departed subscriptions, at most {@code limit} of them.
      */
-    public boolean hasTicketsSubscription(UserTicketsSubscription userSubscription) {
-        return !subscriptionsRepository.findByChatIdAndTrainNumberAndDateDepart(userSubscription.getChatId(),
-                userSubscription.getTrainNumber(), userSubscription.getDateDepart()).isEmpty();
+    public List<UserTicketsSubscription> findDepartedSubscriptions(Instant now, int limit) {
+        Query query = new Query(Criteria.where(DEPARTURE_AT_FIELD).lte(now)).with(Sort.by(DEPARTURE_AT_FIELD)).limit(limit);
+        return mongoTemplate.find(query, UserTicketsSubscription.class);
     }
 
     /**
-     * Retrieves a user subscription by its ID.
+     * Removes subscriptions of departed trains with a single delete.
      *
-     * @param subscriptionID The ID of the subscription to retrieve.
-     * @return An optional containing the user subscription, or empty if not found.
+     * @param subscriptionIds The IDs of the subscriptions.
+     * @return The number of subscriptions removed, not counting those that had already been removed.
      */
-    public Optional<UserTicketsSubscription> getUsersSubscriptionById(String subscriptionID) {
-        return subscriptionsRepository.findById(subscriptionID);
+    public long removeDepartedSubscriptions(Collection<String> subscriptionIds) {
+        DeleteResult result = mongoTemplate.remove(new Query(Criteria.where("_id").in(subscriptionIds)), UserTicketsSubscription.class);
+        subscriptionIds.forEach(subscriptionIndex::remove);
+        return result.getDeletedCount();
     }
 
     /**
-     * Retrieves all subscriptions for a specific user based on their chat ID.
+     * Creates a buffer collecting subscription writes and sending them to the database in bulk operations
+     * of {@code writeBatchSize} writes.
      *
-     * @param chatId The chat ID of the user.
-     * @return A list of user subscriptions for the specified chat ID.
+     * @return A new, empty write buffer.
      */
-    public List<UserTicketsSubscription> getUsersSubscriptionsByChatId(long chatId) {
-        return subscriptionsRepository.findByChatId(chatId);
+    public SubscriptionWriteBuffer newWriteBuffer() {
+        return new SubscriptionWriteBuffer(mongoTemplate, subscriptionIndex, writeBatchSize);
     }
 
     /**
-     * Retrieves the subscription ID based on the train number and departure date.
+     * Saves a user subscription to the repository without blocking.
      *
-     * @param trainNumber The train number.
-     * @param dateDepart  The departure date.
-     * @return The subscription ID, or null if not found.
+     * @param usersSubscription The user subscription to be saved.
+     * @return A Mono emitting the saved user subscription with its ID.
      */
-    public String getSubscriptionIdByTrainNumberAndDateDepart(String trainNumber, String dateDepart) {
-        UserTicketsSubscription subscription = subscriptionsRepository.findByTrainNumberAndDateDepart(trainNumber, dateDepart);
+    public Mono<UserTicketsSubscription> saveUserSubscriptionAsync(UserTicketsSubscription usersSubscription) {
+        return reactiveSubscriptionsRepository.save(usersSubscription)
+                .doOnNext(subscriptionIndex::put)
+                .doOnError(e -> log.error("Error while saving subscription: {}", e.getMessage(), e));
+    }
 
-        return subscription.getId();
+    /**
+     * Removes a subscription of a user in a single atomic operation, fetching only the fields identifying
+     * the subscribed train. A subscription of another user is not removed.
+     *
+     * @param chatId         The chat ID of the user.
+     * @param subscriptionID The ID of the subscription to be removed.
+     * @return An optional containing the number and departure date of the unsubscribed train,
+     * or empty if the user has no such subscription.
+     */
+    public Optional<TrainDeparture> removeUserSubscription(long chatId, String subscriptionID) {
+        Query query = new Query(Criteria.where("_id").is(subscriptionID).and("chatId").is(chatId));
+        query.fields().include("trainNumber", "dateDepart");
+        Optional<UserTicketsSubscription> removed = Optional.ofNullable(mongoTemplate.findAndRemove(query, UserTicketsSubscription.class));
+        removed.ifPresent(subscription -> subscriptionIndex.remove(subscriptionID));
+        return removed.map(TrainDeparture::of);
     }
 
     /**
-     * Retrieves the train number based on the subscription ID.
+     * Checks if a user has a subscription for a particular train and date.
      *
-     * @param subscriptionId The subscription ID.
-     * @return The train number, or null if not found.
+     * @param userSubscription The user subscription to check.
+     * @return True if the user has a subscription, false otherwise.
      */
-    public String getTrainNumberBySubscriptionId(String subscriptionId) {
-        Optional<UserTicketsSubscription> subscription = getUsersSubscriptionById(subscriptionId);
+    public boolean hasTicketsSubscription(UserTicketsSubscription userSubscription) {
+        if (subscriptionIndex.isLoaded()) {
+            return findIndexedSubscription(userSubscription.getChatId(), TrainDeparture.of(userSubscription)).isPresent();
+        }
+        return !subscriptionsRepository.findByChatIdAndTrainNumberAndDateDepart(userSubscription.getChatId(),
+                userSubscription.getTrainNumber(), userSubscription.getDateDepart()).isEmpty();
+    }
 
-        String trainNumber = null;
-        if (subscription.isPresent()) {
-            trainNumber = subscription.get().getTrainNumber();
+    /**
+     * Checks without blocking if a user has a subscription for a particular train and date.
+     *
+     * @param userSubscription The user subscription to check.
+     * @return A Mono emitting true if the user has a subscription, false otherwise.
+     */
+    public Mono<Boolean> hasTicketsSubscriptionAsync(UserTicketsSubscription userSubscription) {
+        if (subscriptionIndex.isLoaded()) {
+            return Mono.just(hasTicketsSubscription(userSubscription));
         }
-        return trainNumber;
+        return reactiveSubscriptionsRepository.existsByChatIdAndTrainNumberAndDateDepart(userSubscription.getChatId(),
+                userSubscription.getTrainNumber(), userSubscription.getDateDepart());
     }
 
     /**
-     * Retrieves the departure date based on the subscription ID.
+     * Retrieves a user subscription by its ID.
      *
-     * @param subscriptionId The subscription ID.
-     * @return The departure date, or null if not found.
+     * @param subscriptionID The ID of the subscription to retrieve.
+     * @return An optional containing the user subscription, or empty if not found.
      */
-    public String getDateDepartBySubscriptionId(String subscriptionId) {
-        Optional<UserTicketsSubscription> subscription = getUsersSubscriptionById(subscriptionId);
+    public Optional<UserTicketsSubscription> getUsersSubscriptionById(String subscriptionID) {
+        if (subscriptionIndex.isLoaded()) {
+            return subscriptionIndex.getById(subscriptionID);
+        }
+        return subscriptionsRepository.findById(subscriptionID);
+    }
 
-        String dateDepart = null;
-        if (subscription.isPresent()) {
-            dateDepart = subscription.get().getDateDepart();
+    /**
+     * Retrieves all subscriptions for a specific user based on their chat ID without blocking.
+     *
+     * @param chatId The chat ID of the user.
+     * @return A Flux emitting the user subscriptions for the specified chat ID.
+     */
+    public Flux<UserTicketsSubscription> getUsersSubscriptionsByChatIdAsync(long chatId) {
+        if (subscriptionIndex.isLoaded()) {
+            return Flux.fromIterable(subscriptionIndex.getByChatId(chatId));
         }
-        return dateDepart;
+        return reactiveSubscriptionsRepository.findByChatId(chatId);
     }
 
     /**
-     * Checks if a user is subscribed to a specific train and date.
+     * Finds the subscriptions of a user to any of the given trains, from the subscription index or with a single query.
+     * The query selects the trains by {@code $in} on their numbers and departure dates, served by the chat, train
+     * and departure date index, and only fetches the fields needed to match the subscriptions to the trains.
      *
-     * @param trainNumber The train number.
-     * @param dateDepart  The departure date.
-     * @return True if the user is subscribed, false otherwise.
+     * @param chatId The chat ID of the user.
+     * @param trains The trains, identified by their numbers and departure dates.
+     * @return The IDs of the user's subscriptions by the subscribed train; trains without a subscription are absent.
      */
-    public boolean isUserSubscribed(String trainNumber, String dateDepart) {
-        List<UserTicketsSubscription> subscribedTrains = subscriptionsRepository.findAll();
+    public Map<TrainDeparture, String> getSubscriptionIds(long chatId, Collection<TrainDeparture> trains) {
+        if (trains.isEmpty()) {
+            return Map.of();
+        }
+        if (subscriptionIndex.isLoaded()) {
+            Map<TrainDeparture, String> subscriptionIds = new HashMap<>();
+            for (TrainDeparture train : trains) {
+                findIndexedSubscription(chatId, train).ifPresent(subscription -> subscriptionIds.put(train, subscription.getId()));
+            }
+            return subscriptionIds;
+        }
+
+        Set<String> trainNumbers = new HashSet<>();
+        Set<String> datesDepart = new HashSet<>();
+        for (TrainDeparture train : trains) {
+            trainNumbers.add(train.trainNumber());
+            datesDepart.add(train.dateDepart());
+        }
+        Query query = new Query(Criteria.where("chatId").is(chatId)
+                .and("trainNumber").in(trainNumbers)
+                .and("dateDepart").in(datesDepart));
+        query.fields().include("_id", "trainNumber", "dateDepart");
 
-        for (UserTicketsSubscription subscription : subscribedTrains) {
-            if (subscription.getTrainNumber().equals(trainNumber) && subscription.getDateDepart().equals(dateDepart)) {
-                return true;
+        // The $in conditions on both fields also match combinations of trains and dates that were not searched for
+        Set<TrainDeparture> searchedTrains = Set.copyOf(trains);
+        Map<TrainDeparture, String> subscriptionIds = new HashMap<>();
+        for (UserTicketsSubscription subscription : mongoTemplate.find(query, UserTicketsSubscription.class)) {
+            TrainDeparture train = TrainDeparture.of(subscription);
+            if (searchedTrains.contains(train)) {
+                subscriptionIds.putIfAbsent(train, subscription.getId());
             }
         }
+        return subscriptionIds;
+    }
 
-        return false;
+    /**
+     * Finds the subscription of a user to a train in the subscription index.
+     *
+     * @param chatId The chat ID of the user.
+     * @param train  The number and departure date of the train.
+     * @return An optional containing the user's subscription to the train, or empty if there is none.
+     */
+    private Optional<UserTicketsSubscription> findIndexedSubscription(long chatId, TrainDeparture train) {
+        return subscriptionIndex.getByTrain(train).stream()
+                .filter(subscription -> subscription.getChatId() == chatId)
+                .findFirst();
     }
 }
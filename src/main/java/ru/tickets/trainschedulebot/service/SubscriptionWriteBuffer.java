@@ -0,0 +1,321 @@
+package ru.tickets.trainschedulebot.service;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import ru.tickets.trainschedulebot.cache.SubscriptionIndex;
+import ru.tickets.trainschedulebot.model.OutboxNotification;
+import ru.tickets.trainschedulebot.model.UserTicketsSubscription;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Collects the writes to user subscriptions made during a processing cycle and sends them to the database
+ * as unordered bulk operations of up to {@code batchSize} writes, instead of one round trip per write.
+ * <p>
+ * Writes are flushed whenever a full batch has been collected and on {@link #flush()} at the end of the cycle.
+ * A failed write does not fail the rest of its batch; every failed write is logged and counted.
+ * Since the writes of a batch may be applied in any order, every write only sets the fields it changes.
+ * <p>
+ * Writes may carry a notification of the user, which is added to the notification outbox before the write is sent.
+ * Notifications are upserted by their identifier, so a notification with an identifier derived from its change,
+ * such as the notice of a departed train, is stored once even if the departed trains sweep stores it as well.
+ * If the notifications of a batch cannot be stored, the writes carrying them are dropped, so that the change is
+ * detected and notified again on the next poll rather than written without a notification. Conversely, the
+ * notifications of updates that failed or matched no subscription, such as one unsubscribed in the meantime, are
+ * removed from the outbox again, so the user is not told about a change that was not saved. The notices of
+ * deletions are kept, since their identifier is shared with the departed trains sweep.
+ * Changes of the subscribed cars and deletions are written through to the {@link SubscriptionIndex} once
+ * the database has applied them. The buffer is thread-safe.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-18
+ */
+@Slf4j
+public class SubscriptionWriteBuffer {
+    private final MongoTemplate mongoTemplate;
+    private final SubscriptionIndex subscriptionIndex;
+    private final int batchSize;
+    private final List<Write> pendingWrites = new ArrayList<>();
+    private final AtomicInteger writes = new AtomicInteger();
+    private final AtomicInteger failedWrites = new AtomicInteger();
+
+    /**
+     * Constructs a new SubscriptionWriteBuffer.
+     *
+     * @param mongoTemplate     The template used to execute bulk operations.
+     * @param subscriptionIndex The index the applied writes are written through to.
+     * @param batchSize         The maximum number of writes sent in one bulk operation.
+     */
+    SubscriptionWriteBuffer(MongoTemplate mongoTemplate, SubscriptionIndex subscriptionIndex, int batchSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.subscriptionIndex = subscriptionIndex;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Buffers an update of the subscribed cars of a subscription together with the notification of the user.
+     *
+     * @param subscription     The updated user subscription.
+     * @param notificationText The text of the notification about the update.
+     */
+    public void updateSubscribedCars(UserTicketsSubscription subscription, String notificationText) {
+        Update update = new Update()
+                .set("subscribedCars", subscription.getSubscribedCars())
+                .set("lastPriceChangeAt", subscription.getLastPriceChangeAt());
+        add(new Write("update cars", subscription.getId(), true, bulkOps -> bulkOps.updateOne(byId(subscription.getId()), update),
+                OutboxNotification.of(subscription.getChatId(), notificationText, Instant.now()),
+                index -> index.put(subscription)));
+    }
+
+    /**
+     * Buffers an update of the time a subscription is due to be checked for updates at.
+     * The departure time of the subscription is stored as well, in case the subscription was saved without it.
+     *
+     * @param subscription The user subscription.
+     * @param nextPollAt   The time of the next poll.
+     */
+    public void scheduleNextPoll(UserTicketsSubscription subscription, Instant nextPollAt) {
+        Update update = new Update().set("nextPollAt", nextPollAt);
+        if (subscription.getDepartureAt() != null) {
+            update.set("departureAt", subscription.getDepartureAt());
+        }
+        String subscriptionId = subscription.getId();
+        add(new Write("schedule poll", subscriptionId, true, bulkOps -> bulkOps.updateOne(byId(subscriptionId), update), null, null));
+    }
+
+    /**
+     * Buffers the deletion of a subscription together with the notification of the user.
+     *
+     * @param subscription     The user subscription.
+     * @param notificationId   The identifier of the notification about the deletion.
+     * @param notificationText The text of the notification about the deletion.
+     */
+    public void delete(UserTicketsSubscription subscription, String notificationId, String notificationText) {
+        String subscriptionId = subscription.getId();
+        add(new Write("delete", subscriptionId, false, bulkOps -> bulkOps.remove(byId(subscriptionId)),
+                OutboxNotification.of(notificationId, subscription.getChatId(), notificationText, Instant.now()),
+                index -> index.remove(subscriptionId)));
+    }
+
+    /**
+     * Sends all buffered writes to the database.
+     */
+    public void flush() {
+        List<Write> batch;
+        synchronized (pendingWrites) {
+            batch = new ArrayList<>(pendingWrites);
+            pendingWrites.clear();
+        }
+        for (int from = 0; from < batch.size(); from += batchSize) {
+            execute(batch.subList(from, Math.min(from + batchSize, batch.size())));
+        }
+    }
+
+    /**
+     * Returns the number of writes sent to the database so far.
+     *
+     * @return The number of writes.
+     */
+    public int getWrites() {
+        return writes.get();
+    }
+
+    /**
+     * Returns the number of writes that failed so far.
+     *
+     * @return The number of failed writes.
+     */
+    public int getFailedWrites() {
+        return failedWrites.get();
+    }
+
+    private void add(Write write) {
+        List<Write> batch = null;
+        synchronized (pendingWrites) {
+            pendingWrites.add(write);
+            if (pendingWrites.size() >= batchSize) {
+                batch = new ArrayList<>(pendingWrites);
+                pendingWrites.clear();
+            }
+        }
+        if (batch != null) {
+            execute(batch);
+        }
+    }
+
+    private void execute(List<Write> batch) {
+        batch = storeNotifications(batch);
+        if (batch.isEmpty()) {
+            return;
+        }
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UserTicketsSubscription.class);
+        batch.forEach(write -> write.operation().accept(bulkOps));
+        writes.addAndGet(batch.size());
+
+        try {
+            BulkWriteResult result = bulkOps.execute();
+            log.debug("Flushed {} subscription writes: {} modified, {} deleted", batch.size(),
+                    result.getModifiedCount(), result.getDeletedCount());
+            complete(batch, Set.of(), result);
+        } catch (BulkOperationException e) {
+            Set<Integer> failedIndexes = new HashSet<>();
+            for (BulkWriteError error : e.getErrors()) {
+                Write write = batch.get(error.getIndex());
+                log.error("Failed to {} subscription {}: {}", write.description(), write.subscriptionId(), error.getMessage());
+                failedIndexes.add(error.getIndex());
+            }
+            failedWrites.addAndGet(e.getErrors().size());
+            complete(batch, failedIndexes, e.getResult());
+        } catch (RuntimeException e) {
+            log.error("Failed to flush {} subscription writes: {}", batch.size(), e.getMessage(), e);
+            failedWrites.addAndGet(batch.size());
+            discardNotifications(batch);
+        }
+    }
+
+    /**
+     * Writes the applied writes of a batch through to the subscription index and discards the notifications
+     * of the updates that failed or matched no subscription.
+     *
+     * @param batch         The batch of writes.
+     * @param failedIndexes The indexes of the writes of the batch that have failed.
+     * @param result        The result of the writes of the batch that have not failed.
+     */
+    private void complete(List<Write> batch, Set<Integer> failedIndexes, BulkWriteResult result) {
+        List<Write> appliedWrites = new ArrayList<>();
+        List<Write> unappliedWrites = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            (failedIndexes.contains(i) ? unappliedWrites : appliedWrites).add(batch.get(i));
+        }
+
+        Set<String> unmatchedIds = findUnmatchedUpdates(appliedWrites, result);
+        for (Write write : appliedWrites) {
+            if (write.update() && unmatchedIds.contains(write.subscriptionId())) {
+                log.debug("Failed to {} subscription {}: it no longer exists", write.description(), write.subscriptionId());
+                unappliedWrites.add(write);
+            } else if (write.indexUpdate() != null) {
+                write.indexUpdate().accept(subscriptionIndex);
+            }
+        }
+        discardNotifications(unappliedWrites);
+    }
+
+    /**
+     * Finds the subscriptions whose updates carrying a notification matched no subscription. The subscriptions are
+     * only looked up if the batch matched fewer subscriptions than it updated.
+     *
+     * @param appliedWrites The writes of the batch that have not failed.
+     * @param result        The result of the writes.
+     * @return The IDs of the subscriptions that no longer exist.
+     */
+    private Set<String> findUnmatchedUpdates(List<Write> appliedWrites, BulkWriteResult result) {
+        long updates = appliedWrites.stream().filter(Write::update).count();
+        if (result != null && result.getMatchedCount() >= updates) {
+            return Set.of();
+        }
+        List<String> notifiedIds = appliedWrites.stream()
+                .filter(write -> write.update() && write.notification() != null)
+                .map(Write::subscriptionId)
+                .toList();
+        if (notifiedIds.isEmpty()) {
+            return Set.of();
+        }
+
+        Query query = new Query(Criteria.where("_id").in(notifiedIds));
+        query.fields().include("_id");
+        Set<String> unmatchedIds = new HashSet<>(notifiedIds);
+        try {
+            mongoTemplate.find(query, UserTicketsSubscription.class).forEach(subscription -> unmatchedIds.remove(subscription.getId()));
+            return unmatchedIds;
+        } catch (RuntimeException e) {
+            log.error("Failed to check {} updated subscriptions: {}", notifiedIds.size(), e.getMessage(), e);
+            return Set.of();
+        }
+    }
+
+    /**
+     * Removes from the outbox the notifications of updates that were not applied.
+     * The notices of deletions are kept, since they may have been stored by the departed trains sweep as well.
+     *
+     * @param unappliedWrites The writes that were not applied.
+     */
+    private void discardNotifications(List<Write> unappliedWrites) {
+        List<String> notificationIds = unappliedWrites.stream()
+                .filter(write -> write.update() && write.notification() != null)
+                .map(write -> write.notification().getId())
+                .toList();
+        if (notificationIds.isEmpty()) {
+            return;
+        }
+        try {
+            mongoTemplate.remove(new Query(Criteria.where("_id").in(notificationIds)), OutboxNotification.class);
+        } catch (RuntimeException e) {
+            log.error("Failed to discard {} notifications of unapplied writes: {}", notificationIds.size(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Adds the notifications carried by a batch of writes to the notification outbox.
+     *
+     * @param batch The batch of writes.
+     * @return The writes of the batch that may be sent.
+     */
+    private List<Write> storeNotifications(List<Write> batch) {
+        List<OutboxNotification> notifications = batch.stream()
+                .map(Write::notification)
+                .filter(Objects::nonNull)
+                .toList();
+        if (notifications.isEmpty()) {
+            return batch;
+        }
+
+        try {
+            BulkOperations outboxOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, OutboxNotification.class);
+            notifications.forEach(notification ->
+                    outboxOps.upsert(byId(notification.getId()), NotificationOutboxService.insertOnly(notification)));
+            outboxOps.execute();
+            return batch;
+        } catch (RuntimeException e) {
+            log.error("Failed to store {} notifications, dropping the writes carrying them: {}", notifications.size(), e.getMessage(), e);
+            failedWrites.addAndGet(notifications.size());
+            // Some of the notifications may have been stored nonetheless
+            discardNotifications(batch);
+            return batch.stream()
+                    .filter(write -> write.notification() == null)
+                    .toList();
+        }
+    }
+
+    private static Query byId(String subscriptionId) {
+        return new Query(Criteria.where("_id").is(subscriptionId));
+    }
+
+    /**
+     * A buffered write to a subscription.
+     *
+     * @param description    The description of the write used in error reports.
+     * @param subscriptionId The ID of the written subscription.
+     * @param update         True if the write updates the subscription, false if it deletes it.
+     * @param operation      Adds the write to a bulk operation.
+     * @param notification   The notification of the user to store before the write, or {@code null}.
+     * @param indexUpdate    Writes the write through to the subscription index, or {@code null}.
+     */
+    private record Write(String description, String subscriptionId, boolean update, Consumer<BulkOperations> operation,
+                         OutboxNotification notification, Consumer<SubscriptionIndex> indexUpdate) {
+    }
+}
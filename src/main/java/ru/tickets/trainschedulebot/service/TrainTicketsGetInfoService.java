@@ -8,16 +8,25 @@ import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.tickets.trainschedulebot.cache.TimetableCache;
+import ru.tickets.trainschedulebot.cache.TimetableKey;
+import ru.tickets.trainschedulebot.model.Car;
 import ru.tickets.trainschedulebot.model.Train;
+import ru.tickets.trainschedulebot.model.TrainInfoResponse;
+import ru.tickets.trainschedulebot.service.RzdSessionService.RzdSession;
+import ru.tickets.trainschedulebot.utils.DateTimeUtils;
 
-import java.text.SimpleDateFormat;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
 import java.util.*;
 
 /**
@@ -36,6 +45,15 @@ import java.util.*;
 @RequiredArgsConstructor
 public class TrainTicketsGetInfoService {
 
+    /**
+     * Exception signalling that the requested departure date is outside the advance sale period of the remote API.
+     */
+    public static class DateOutOfBoundException extends RuntimeException {
+        public DateOutOfBoundException(String message) {
+            super(message);
+        }
+    }
+
     /**
      * Request template for obtaining RID (Request ID) from the remote API.
      */
@@ -61,29 +79,45 @@ public class TrainTicketsGetInfoService {
     private String headerValue;
 
     /**
-     * RestTemplate for making HTTP requests.
+     * The maximum number of dates of a date range whose train information is requested concurrently.
      */
-    private final RestTemplate restTemplate;
+    @Value("${trainTicketsGetInfoService.maxConcurrentDateRequests}")
+    private int maxConcurrentDateRequests = 4;
 
     /**
-     * Service for handling reply messages.
+     * Non-blocking WebClient for making HTTP requests without holding a thread per request.
      */
-    private final ReplyMessagesService messagesService;
+    private final WebClient webClient;
 
     /**
-     * Service for sending messages using Telegram.
+     * Guard protecting the remote API from overload.
      */
-    private final SendMessageService sendMessageService;
+    private final RzdUpstreamGuard upstreamGuard;
 
     /**
-     * ObjectMapper for JSON processing.
+     * Service for polling the remote API while the RID result is being prepared.
      */
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final RidPollingService ridPollingService;
+
+    /**
+     * Cache of timetables already received from the remote API.
+     */
+    private final TimetableCache timetableCache;
 
     /**
-     * Date formatter for formatting dates.
+     * Service for parsing train information responses.
      */
-    private final SimpleDateFormat dateFormatter = new SimpleDateFormat("dd.MM.yyyy");
+    private final ParseTrainsResponseService parseTrainsResponseService;
+
+    /**
+     * Service keeping a pool of warm sessions with the remote API.
+     */
+    private final RzdSessionService rzdSessionService;
+
+    /**
+     * ObjectMapper for JSON processing.
+     */
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     /**
      * URI parameter key for the departure station code.
@@ -106,44 +140,118 @@ public class TrainTicketsGetInfoService {
     private static final String TRAIN_DATE_IS_OUT_OF_DATE_MESSAGE = "Нету рейсов на выбранную дату.";
 
     /**
-     * Retrieves a list of trains based on the provided criteria.
+     * Orders trains by the minimal ticket price among their cars, trains without available cars go last.
+     */
+    private static final Comparator<Train> TRAIN_MINIMAL_PRICE_ORDER = Comparator.comparingInt(train ->
+            train.getAvailableCars() == null ? Integer.MAX_VALUE : train.getAvailableCars().stream()
+                    .mapToInt(Car::getMinimalPrice)
+                    .min()
+                    .orElse(Integer.MAX_VALUE));
+
+    /**
+     * Retrieves a list of trains based on the provided criteria without blocking the calling thread.
+     * Timetables are served from the {@link TimetableCache} when possible, concurrent lookups of the same
+     * route and date share one request to the remote API.
      *
-     * @param chatId             The chat ID for sending messages.
      * @param stationDepartCode  The code of the departure station.
      * @param stationArrivalCode The code of the arrival station.
      * @param dateDepart         The departure date.
-     * @return A list of trains matching the criteria.
+     * @return A Mono emitting the list of trains matching the criteria, or an empty list if none were found.
+     *         The Mono fails with a {@link DateOutOfBoundException} if the date is not on sale,
+     *         and with the cause of the failure if the trains could not be received.
      */
-    public List<Train> getTrainTicketsList(long chatId, int stationDepartCode, int stationArrivalCode, Date dateDepart) {
-        try {
-            List<Train> trainList;
-
-            Map<String, HttpHeaders> ridAndHttpHeaders = sendRidRequest(chatId, getUriParams(stationDepartCode, stationArrivalCode, dateDepart));
-            if (ridAndHttpHeaders.isEmpty()) {
-                log.warn("No response received from sendRidRequest method");
-                return Collections.emptyList();
-            }
-
-            String ridValue = ridAndHttpHeaders.keySet().iterator().next();
-            HttpHeaders httpHeaders = ridAndHttpHeaders.get(ridValue);
+    public Mono<List<Train>> getTrainTicketsListAsync(int stationDepartCode, int stationArrivalCode, LocalDate dateDepart) {
+        return getTrainTicketsListAsync(stationDepartCode, stationArrivalCode, dateDepart, RzdUpstreamGuard.Bulkhead.INTERACTIVE);
+    }
 
-            List<String> cookies = httpHeaders.get(HttpHeaders.SET_COOKIE);
-            if (cookies == null) {
-                log.warn("No cookies received from RID request");
-                sendMessageService.sendMessage(messagesService.getWarningReplyMessage(chatId, "reply.query.failed"));
-                return Collections.emptyList();
-            }
+    /**
+     * Retrieves a list of trains based on the provided criteria without blocking the calling thread,
+     * sending the requests to the remote API in the given bulkhead.
+     *
+     * @param stationDepartCode  The code of the departure station.
+     * @param stationArrivalCode The code of the arrival station.
+     * @param dateDepart         The departure date.
+     * @param bulkhead           The bulkhead the requests to the remote API belong to.
+     * @return A Mono emitting the list of trains matching the criteria, or an empty list if none were found.
+     *         The Mono fails with a {@link RzdUpstreamGuard.RejectedException} if the remote API is overloaded,
+     *         with a {@link DateOutOfBoundException} if the date is not on sale,
+     *         and with the cause of the failure if the trains could not be received.
+     */
+    public Mono<List<Train>> getTrainTicketsListAsync(int stationDepartCode, int stationArrivalCode,
+                                                      LocalDate dateDepart, RzdUpstreamGuard.Bulkhead bulkhead) {
+        TimetableKey timetableKey = new TimetableKey(stationDepartCode, stationArrivalCode, dateDepart);
+        return timetableCache.getTrains(timetableKey,
+                () -> fetchTrainTicketsListAsync(stationDepartCode, stationArrivalCode, dateDepart, bulkhead));
+    }
 
-            HttpHeaders trainInfoRequestHeaders = prepareTrainInfoRequestHeaders(cookies);
-            String trainInfoResponseBody = sendTrainInfoJsonRequest(ridValue, trainInfoRequestHeaders);
+    /**
+     * Retrieves a list of trains departing on any date of the provided range without blocking the calling thread.
+     * Dates are requested concurrently, up to {@code maxConcurrentDateRequests} at a time, and the trains
+     * of all dates are merged into a single list sorted by the minimal ticket price.
+     *
+     * @param stationDepartCode  The code of the departure station.
+     * @param stationArrivalCode The code of the arrival station.
+     * @param dateDepartFrom     The first departure date of the range.
+     * @param dateDepartTo       The last departure date of the range, inclusive.
+     * @return A Mono emitting the merged list of trains, or an empty list if none were found.
+     *         Dates that are not on sale are skipped, the Mono fails if the trains of any other date could not be received.
+     */
+    public Mono<List<Train>> getTrainTicketsListAsync(int stationDepartCode, int stationArrivalCode,
+                                                      LocalDate dateDepartFrom, LocalDate dateDepartTo) {
+        List<LocalDate> datesDepart = dateDepartFrom.datesUntil(dateDepartTo.plusDays(1)).toList();
+        return Flux.fromIterable(datesDepart)
+                .flatMap(dateDepart -> getTrainTicketsListAsync(stationDepartCode, stationArrivalCode, dateDepart)
+                                .onErrorReturn(DateOutOfBoundException.class, Collections.emptyList()),
+                        maxConcurrentDateRequests)
+                .flatMapIterable(trains -> trains)
+                .collectSortedList(TRAIN_MINIMAL_PRICE_ORDER);
+    }
 
-            trainList = parseResponseBody(trainInfoResponseBody);
-            return trainList;
+    /**
+     * Requests a list of trains from the remote API without blocking the calling thread.
+     * Both the RID request and the train information requests are executed with the non-blocking {@link WebClient}
+     * and admitted by {@link RzdUpstreamGuard} in the given bulkhead.
+     *
+     * @param stationDepartCode  The code of the departure station.
+     * @param stationArrivalCode The code of the arrival station.
+     * @param dateDepart         The departure date.
+     * @param bulkhead           The bulkhead the requests to the remote API belong to.
+     * @return A Mono emitting the list of trains matching the criteria, or an empty list if none were found.
+     *         The Mono fails with a {@link RzdUpstreamGuard.RejectedException} if the remote API is overloaded,
+     *         with a {@link DateOutOfBoundException} if the date is not on sale,
+     *         and with the cause of the failure if the trains could not be received.
+     */
+    private Mono<List<Train>> fetchTrainTicketsListAsync(int stationDepartCode, int stationArrivalCode,
+                                                         LocalDate dateDepart, RzdUpstreamGuard.Bulkhead bulkhead) {
+        return Mono.defer(() -> {
+                    Optional<RzdSession> pooledSession = rzdSessionService.acquireSession();
+                    return upstreamGuard.execute(bulkhead, () -> webClient.get()
+                            .uri(trainInfoRidRequestTemplate, getUriParams(stationDepartCode, stationArrivalCode, dateDepart))
+                            .headers(headers -> prepareRidRequestHeaders(headers, pooledSession))
+                            .exchangeToMono(response -> readRidResponse(response, pooledSession)));
+                })
+                .flatMap(ridResponse -> sendTrainInfoJsonRequestAsync(ridResponse.body(), ridResponse.session(), bulkhead))
+                .map(TrainInfoResponse::trains)
+                .defaultIfEmpty(Collections.emptyList())
+                .doOnError(e -> !(e instanceof RzdUpstreamGuard.RejectedException || e instanceof DateOutOfBoundException), e ->
+                        log.error("Error occurred while executing getTrainTicketsListAsync method: {}", e.getMessage(), e));
+    }
 
-        } catch (Exception e) {
-            log.error("Error occurred while executing getTrainTicketsList method: " + e.getMessage(), e);
-            return Collections.emptyList();
+    /**
+     * Reads the response of the RID request. Error responses fail the request, so that they are accounted
+     * as failures of the remote API.
+     *
+     * @param response      The response of the RID request.
+     * @param pooledSession The pooled session the RID request was sent in, if any.
+     * @return A Mono emitting the response body together with the session the RID was issued in.
+     */
+    private Mono<RidResponse> readRidResponse(ClientResponse response, Optional<RzdSession> pooledSession) {
+        if (response.statusCode().isError()) {
+            return response.createError();
         }
+        return response.bodyToMono(String.class)
+                .defaultIfEmpty("")
+                .map(ridRespBody -> new RidResponse(ridRespBody, resolveSession(response.headers().asHttpHeaders(), pooledSession)));
     }
 
     /**
@@ -154,8 +262,8 @@ public class TrainTicketsGetInfoService {
      * @param dateDepart The date of departure for the train.
      * @return A map of URI parameters containing station codes and the date of departure.
      */
-    private HashMap<String, String> getUriParams(int stationDepartCode, int stationArrivalCode, Date dateDepart) {
-        String dateDepartStr = dateFormatter.format(dateDepart);
+    private HashMap<String, String> getUriParams(int stationDepartCode, int stationArrivalCode, LocalDate dateDepart) {
+        String dateDepartStr = DateTimeUtils.formatDate(dateDepart);
 
         // Create a map to store URI parameters
         HashMap<String, String> urlParams = new HashMap<>();
@@ -166,46 +274,6 @@ public class TrainTicketsGetInfoService {
         return urlParams;
     }
 
-    /**
-     * Checks if the response body contains a duplicate RID result, indicating a potential issue.
-     *
-     * @param resultResponse The response entity containing the HTTP result.
-     * @return True if the response body indicates a duplicate RID result, otherwise false.
-     */
-    private boolean isResponseResultRidDuplicate(ResponseEntity<String> resultResponse) {
-        if (resultResponse.getBody() == null) {
-            return true;
-        }
-        return resultResponse.getBody().contains("\"result\":\"RID");
-    }
-
-    /**
-     * Parses the JSON response body to extract information about available trains.
-     *
-     * @param responseBody The JSON response body received from the remote API.
-     * @return A list of Train objects containing information about available trains.
-     *         An empty list is returned if there is an issue parsing the response.
-     */
-    private List<Train> parseResponseBody(String responseBody) {
-        try {
-            // Retrieve the 'tp' node and its 'list' child node from the JSON response
-            JsonNode trainsNode = objectMapper.readTree(responseBody).path("tp").findPath("list");
-            if (trainsNode != null) {
-                // Convert the 'list' node to an array of Train objects
-                Train[] trainsArray = objectMapper.readValue(trainsNode.toString(), Train[].class);
-                return Arrays.asList(trainsArray);
-            } else {
-                // Log a warning if the expected nodes are not found in the JSON response
-                log.warn("Could not find 'tp' or 'list' in the JSON response: {}", responseBody);
-                return Collections.emptyList();
-            }
-        } catch (JsonProcessingException e) {
-            // Log an error if there is an issue parsing the JSON response
-            log.error("Error occurred while parsing JSON response: {}", e.getMessage(), e);
-            return Collections.emptyList();
-        }
-    }
-
     /**
      * Parses the response body to retrieve the Request ID (RID) value.
      *
@@ -224,66 +292,55 @@ public class TrainTicketsGetInfoService {
     }
 
     /**
-     * Sends a RID (Request ID) request to the remote API to obtain a unique identifier for subsequent requests.
+     * Sends train information requests to the remote API without blocking, polling them through
+     * {@link RidPollingService} until the remote API has prepared the result for the given RID.
      *
-     * @param chatId   The chat ID for sending messages.
-     * @param urlParams The URL parameters for the RID request.
-     * @return A map containing the RID value and the HTTP headers from the RID request.
+     * @param ridRespBody The JSON response body from the RID request.
+     * @param session     The session the RID was issued in.
+     * @param bulkhead    The bulkhead the requests to the remote API belong to.
+     * @return A Mono emitting the parsed response containing train ticket information, failing with
+     *         a {@link DateOutOfBoundException} if the requested date is not on sale, or with the cause of the failure
+     *         if the RID request did not yield a usable result.
      */
-    private Map<String, HttpHeaders> sendRidRequest(long chatId, Map<String, String> urlParams) {
-        HttpHeaders headers = new HttpHeaders();
-        headers.set(HttpHeaders.USER_AGENT, headerValue);
-        HttpEntity<String> entity = new HttpEntity<>(headers);
+    private Mono<TrainInfoResponse> sendTrainInfoJsonRequestAsync(String ridRespBody, Optional<RzdSession> session,
+                                                                  RzdUpstreamGuard.Bulkhead bulkhead) {
+        if (isResponseBodyHasNoTrains(ridRespBody)) {
+            return Mono.error(new DateOutOfBoundException("Departure date is out of the advance sale period"));
+        }
 
-        try {
-            ResponseEntity<String> passRzdResp = restTemplate.exchange(
-                    trainInfoRidRequestTemplate,
-                    HttpMethod.GET,
-                    entity,
-                    String.class,
-                    urlParams);
-
-            String jsonRespBody = passRzdResp.getBody();
-
-            if (isResponseBodyHasNoTrains(jsonRespBody)) {
-                sendMessageService.sendMessage(messagesService.getWarningReplyMessage(chatId, "reply.trainSearch.dateOutOfBoundError"));
-                return Collections.emptyMap();
-            }
-
-            Optional<String> parsedRID = parseRID(jsonRespBody);
-            return parsedRID.map(s -> Collections.singletonMap(s, passRzdResp.getHeaders())).orElse(Collections.emptyMap());
-
-        } catch (RestClientException e) {
-            log.error("Error occurred while sending RID request: {}", e.getMessage(), e);
-            return Collections.emptyMap();
+        Optional<String> parsedRID = parseRID(ridRespBody);
+        if (parsedRID.isEmpty()) {
+            return Mono.error(new IllegalStateException("No RID received from RID request"));
+        }
+
+        if (session.isEmpty()) {
+            return Mono.error(new IllegalStateException("No cookies received from RID request"));
         }
+
+        String ridValue = parsedRID.get();
+        HttpHeaders trainInfoRequestHeaders = prepareTrainInfoRequestHeaders(session.get().cookies());
+
+        return ridPollingService.poll(ridValue,
+                () -> upstreamGuard.execute(bulkhead, () -> webClient.get()
+                        .uri(trainInfoRequestTemplate, ridValue)
+                        .headers(headers -> headers.addAll(trainInfoRequestHeaders))
+                        .retrieve()
+                        .bodyToFlux(DataBuffer.class)
+                        .as(this::parseTrainInfoResponse)),
+                TrainInfoResponse::isPending);
     }
 
     /**
-     * Sends a JSON request to the remote API to obtain train ticket information.
+     * Parses a train information response straight from the received data buffers, without materializing it as a String.
      *
-     * @param ridValue           The Request ID (RID) obtained from the RID request.
-     * @param dataRequestHeaders The HTTP headers for the data request.
-     * @return The JSON response body containing train ticket information.
-     */
-    private String sendTrainInfoJsonRequest(String ridValue, HttpHeaders dataRequestHeaders) {
-        HttpEntity<String> httpEntity = new HttpEntity<>(dataRequestHeaders);
-
-        ResponseEntity<String> resultResponse = restTemplate.exchange(
-                trainInfoRequestTemplate,
-                HttpMethod.GET,
-                httpEntity,
-                String.class, ridValue);
-
-        while (isResponseResultRidDuplicate(resultResponse)) {
-            resultResponse = restTemplate.exchange(
-                    trainInfoRequestTemplate,
-                    HttpMethod.GET,
-                    httpEntity,
-                    String.class, ridValue);
-        }
-
-        return resultResponse.getBody();
+     * @param responseBody The data buffers of the response body.
+     * @return A Mono emitting the parsed response, or failing with an {@link UncheckedIOException}
+     *         if the response has no body or the body carries no result.
+     */
+    private Mono<TrainInfoResponse> parseTrainInfoResponse(Flux<DataBuffer> responseBody) {
+        return DataBufferUtils.join(responseBody)
+                .map(dataBuffer -> parseTrainsResponseService.parse(dataBuffer.asInputStream(true)))
+                .switchIfEmpty(Mono.error(() -> new UncheckedIOException(new IOException("Response has no body"))));
     }
 
     /**
@@ -296,16 +353,54 @@ public class TrainTicketsGetInfoService {
         return jsonRespBody == null || jsonRespBody.contains(TRAIN_DATE_IS_OUT_OF_DATE_MESSAGE);
     }
 
+    /**
+     * Resolves the session the RID was issued in. If the remote API started a new session, it is registered
+     * in the session pool and replaces the pooled session that was sent with the RID request.
+     *
+     * @param ridRespHeaders The HTTP headers from the RID request.
+     * @param pooledSession  The pooled session sent with the RID request, if any.
+     * @return An Optional containing the session the RID was issued in, or empty if there is none.
+     */
+    private Optional<RzdSession> resolveSession(HttpHeaders ridRespHeaders, Optional<RzdSession> pooledSession) {
+        List<String> setCookieHeaders = ridRespHeaders.get(HttpHeaders.SET_COOKIE);
+        if (setCookieHeaders == null || setCookieHeaders.isEmpty()) {
+            return pooledSession;
+        }
+
+        pooledSession.ifPresent(rzdSessionService::invalidateSession);
+        return Optional.of(rzdSessionService.registerSession(setCookieHeaders));
+    }
+
+    /**
+     * Prepares the HTTP headers for the RID request, reusing a pooled session if there is one.
+     *
+     * @param headers       The HTTP headers of the RID request.
+     * @param pooledSession The pooled session to reuse, if any.
+     */
+    private void prepareRidRequestHeaders(HttpHeaders headers, Optional<RzdSession> pooledSession) {
+        headers.set(HttpHeaders.USER_AGENT, headerValue);
+        pooledSession.ifPresent(session -> headers.set(HttpHeaders.COOKIE, String.join("; ", session.cookies())));
+    }
+
     /**
      * Prepares the HTTP headers for the train information request.
      *
-     * @param cookies The cookies obtained from the RID request.
+     * @param cookies The cookies of the session the RID was issued in.
      * @return The prepared HTTP headers for the train information request.
      */
     private HttpHeaders prepareTrainInfoRequestHeaders(List<String> cookies) {
         HttpHeaders trainInfoRequestHeaders = new HttpHeaders();
-        trainInfoRequestHeaders.put(HttpHeaders.COOKIE, cookies);
+        trainInfoRequestHeaders.set(HttpHeaders.COOKIE, String.join("; ", cookies));
         trainInfoRequestHeaders.set(HttpHeaders.USER_AGENT, headerValue);
         return trainInfoRequestHeaders;
     }
-}
\ No newline at end of file
+
+    /**
+     * Response of the RID request.
+     *
+     * @param body    The response body.
+     * @param session The session the RID was issued in, if any.
+     */
+    private record RidResponse(String body, Optional<RzdSession> session) {
+    }
+}
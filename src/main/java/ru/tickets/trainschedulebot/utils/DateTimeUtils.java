@@ -0,0 +1,100 @@
+package ru.tickets.trainschedulebot.utils;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.Optional;
+
+/**
+ * Utility class with the date formats used by the train schedule bot and the remote API.
+ * The formatters are immutable and thread-safe, so they are shared by all services.
+ *
+ * @author Elgun Dilanchiev
+ * @version 1.0
+ * @since 2024-03-13
+ */
+public final class DateTimeUtils {
+
+    /**
+     * Formatter of dates in the {@code dd.MM.yyyy} format used by users and the remote API.
+     */
+    public static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.uuuu")
+            .withResolverStyle(ResolverStyle.STRICT);
+
+    /**
+     * Formatter of times in the {@code HH:mm} format used by the remote API.
+     */
+    public static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm")
+            .withResolverStyle(ResolverStyle.STRICT);
+
+    /**
+     * The time zone of the dates and times reported by the remote API.
+     */
+    public static final ZoneId RAILWAY_ZONE = ZoneId.of("Europe/Moscow");
+
+    private DateTimeUtils() {
+    }
+
+    /**
+     * Parses a date in the {@code dd.MM.yyyy} format.
+     *
+     * @param date The date string to parse.
+     * @return An Optional containing the parsed date, or empty if the string is not a valid date.
+     */
+    public static Optional<LocalDate> parseDate(String date) {
+        if (date == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(LocalDate.parse(date.trim(), DATE_FORMATTER));
+        } catch (DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Formats a date in the {@code dd.MM.yyyy} format.
+     *
+     * @param date The date to format.
+     * @return The formatted date string.
+     */
+    public static String formatDate(LocalDate date) {
+        return DATE_FORMATTER.format(date);
+    }
+
+    /**
+     * Parses a time in the {@code HH:mm} format.
+     *
+     * @param time The time string to parse.
+     * @return An Optional containing the parsed time, or empty if the string is not a valid time.
+     */
+    public static Optional<LocalTime> parseTime(String time) {
+        if (time == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(LocalTime.parse(time.trim(), TIME_FORMATTER));
+        } catch (DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Converts a date and a time reported by the remote API to an instant.
+     * A missing or invalid time is treated as the start of the day.
+     *
+     * @param date The date in the {@code dd.MM.yyyy} format.
+     * @param time The time in the {@code HH:mm} format.
+     * @return An Optional containing the instant, or empty if the date is invalid.
+     */
+    public static Optional<Instant> toInstant(String date, String time) {
+        return parseDate(date).map(localDate -> localDate
+                .atTime(parseTime(time).orElse(LocalTime.MIDNIGHT))
+                .atZone(RAILWAY_ZONE)
+                .toInstant());
+    }
+}
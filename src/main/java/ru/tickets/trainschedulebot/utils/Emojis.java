@@ -19,6 +19,8 @@ public enum Emojis {
     NOTIFICATION_BELL(EmojiParser.parseToUnicode(":bell:")),
     NOTIFICATION_PRICE_UP(EmojiParser.parseToUnicode(":chart_with_upwards_trend:")),
     NOTIFICATION_PRICE_DOWN(EmojiParser.parseToUnicode(":chart_with_downwards_trend:")),
+    NOTIFICATION_SEATS_APPEARED(EmojiParser.parseToUnicode(":ticket:")),
+    NOTIFICATION_SOLD_OUT(EmojiParser.parseToUnicode(":no_entry_sign:")),
     HELP_MENU_WELCOME(EmojiParser.parseToUnicode(":hatched_chick:"));
 
     private final String emoji;
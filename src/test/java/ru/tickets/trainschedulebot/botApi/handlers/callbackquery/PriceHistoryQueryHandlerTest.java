@@ -0,0 +1,87 @@
+package ru.tickets.trainschedulebot.botApi.handlers.callbackquery;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import ru.tickets.trainschedulebot.model.UserTicketsSubscription;
+import ru.tickets.trainschedulebot.service.ParseQueryDataService;
+import ru.tickets.trainschedulebot.service.PriceHistoryService;
+import ru.tickets.trainschedulebot.service.ReplyMessagesService;
+import ru.tickets.trainschedulebot.service.SubscriptionService;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PriceHistoryQueryHandlerTest {
+
+    private static final long CHAT_ID = 123456789L;
+
+    @Mock
+    private SubscriptionService subscriptionService;
+
+    @Mock
+    private PriceHistoryService priceHistoryService;
+
+    @Mock
+    private ParseQueryDataService parseService;
+
+    @Mock
+    private ReplyMessagesService messagesService;
+
+    @InjectMocks
+    private PriceHistoryQueryHandler priceHistoryQueryHandler;
+
+    private CallbackQuery callbackQuery;
+
+    @BeforeEach
+    void setUp() {
+        Chat chat = new Chat();
+        chat.setId(CHAT_ID);
+        Message message = new Message();
+        message.setChat(chat);
+        callbackQuery = new CallbackQuery();
+        callbackQuery.setMessage(message);
+        when(parseService.parseSubscriptionIdFromPriceHistoryQuery(callbackQuery)).thenReturn("id1");
+    }
+
+    @Test
+    void testPriceHistoryOfOtherChatIsRefused() {
+        SendMessage refusal = new SendMessage(String.valueOf(CHAT_ID), "Нет подписки");
+        when(subscriptionService.getUsersSubscriptionById("id1")).thenReturn(Optional.of(createSubscription(987654321L)));
+        when(messagesService.getWarningReplyMessage(CHAT_ID, "reply.query.train.userHasNoSubscription")).thenReturn(refusal);
+
+        assertSame(refusal, priceHistoryQueryHandler.handleCallbackQuery(callbackQuery));
+        verifyNoInteractions(priceHistoryService);
+    }
+
+    @Test
+    void testPriceHistoryOfOwnSubscriptionIsShown() {
+        SendMessage emptyHistory = new SendMessage(String.valueOf(CHAT_ID), "Истории цен пока нет");
+        when(subscriptionService.getUsersSubscriptionById("id1")).thenReturn(Optional.of(createSubscription(CHAT_ID)));
+        when(priceHistoryService.getDailyPrices("001А", "01.03.2099")).thenReturn(List.of());
+        when(messagesService.getReplyMessage(eq(CHAT_ID), eq("reply.subscriptions.priceHistoryEmpty"), any(), eq("001А"), eq("01.03.2099")))
+                .thenReturn(emptyHistory);
+
+        assertSame(emptyHistory, priceHistoryQueryHandler.handleCallbackQuery(callbackQuery));
+        verify(priceHistoryService).getDailyPrices("001А", "01.03.2099");
+    }
+
+    private UserTicketsSubscription createSubscription(long chatId) {
+        UserTicketsSubscription subscription = new UserTicketsSubscription(chatId, "001А", "Express", "Москва",
+                "Казань", "01.03.2099", "02.03.2099", "08:00", "16:00", List.of());
+        subscription.setId("id1");
+        return subscription;
+    }
+}
@@ -0,0 +1,149 @@
+package ru.tickets.trainschedulebot.cache;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.model.changestream.OperationType;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import ru.tickets.trainschedulebot.model.TrainDeparture;
+import ru.tickets.trainschedulebot.model.UserTicketsSubscription;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SubscriptionDataIndexTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    private SubscriptionDataIndex index;
+
+    private final TrainDeparture train = new TrainDeparture("001А", "01.03.2099");
+
+    @BeforeEach
+    void setUp() {
+        index = new SubscriptionDataIndex(mongoTemplate, reactiveMongoTemplate, Duration.ofSeconds(30));
+    }
+
+    @Test
+    void testIndexIsEmptyUntilLoaded() {
+        index.put(createSubscription("1", 100, "001А"));
+
+        assertFalse(index.isLoaded());
+        assertTrue(index.getByChatId(100).isEmpty());
+        assertEquals(Optional.empty(), index.getById("1"));
+    }
+
+    @Test
+    void testSubscriptionsAreLoadedAndIndexed() {
+        UserTicketsSubscription first = createSubscription("1", 100, "001А");
+        UserTicketsSubscription second = createSubscription("2", 100, "002А");
+        UserTicketsSubscription otherUser = createSubscription("3", 200, "001А");
+        when(mongoTemplate.stream(any(Query.class), eq(UserTicketsSubscription.class))).thenReturn(Stream.of(second, first, otherUser));
+
+        index.reload();
+
+        assertTrue(index.isLoaded());
+        assertEquals(List.of(first, second), index.getByChatId(100));
+        assertEquals(List.of(first, otherUser), index.getByTrain(train));
+        assertEquals(Optional.of(otherUser), index.getById("3"));
+    }
+
+    @Test
+    void testWritesUpdateAllIndexes() {
+        when(mongoTemplate.stream(any(Query.class), eq(UserTicketsSubscription.class))).thenReturn(Stream.empty());
+        index.reload();
+        UserTicketsSubscription subscription = createSubscription("1", 100, "001А");
+        index.put(subscription);
+
+        UserTicketsSubscription otherTrain = createSubscription("1", 100, "002А");
+        index.put(otherTrain);
+
+        assertEquals(List.of(otherTrain), index.getByChatId(100));
+        assertTrue(index.getByTrain(train).isEmpty());
+
+        index.remove("1");
+
+        assertTrue(index.getByChatId(100).isEmpty());
+        assertEquals(Optional.empty(), index.getById("1"));
+    }
+
+    @Test
+    void testChangesDuringReloadAreReplayed() {
+        UserTicketsSubscription removed = createSubscription("1", 100, "001А");
+        UserTicketsSubscription added = createSubscription("2", 100, "002А");
+        when(mongoTemplate.stream(any(Query.class), eq(UserTicketsSubscription.class))).thenAnswer(invocation -> {
+            index.put(added);
+            index.remove("1");
+            return Stream.of(removed);
+        });
+
+        index.reload();
+
+        assertEquals(List.of(added), index.getByChatId(100));
+        assertEquals(Optional.empty(), index.getById("1"));
+    }
+
+    @Test
+    void testFailedReloadKeepsIndex() {
+        UserTicketsSubscription subscription = createSubscription("1", 100, "001А");
+        when(mongoTemplate.stream(any(Query.class), eq(UserTicketsSubscription.class)))
+                .thenReturn(Stream.of(subscription))
+                .thenThrow(new DataAccessResourceFailureException("down"));
+
+        index.reload();
+        index.reload();
+
+        assertEquals(List.of(subscription), index.getByChatId(100));
+    }
+
+    @Test
+    void testChangesOfOtherInstancesAreApplied() {
+        when(mongoTemplate.stream(any(Query.class), eq(UserTicketsSubscription.class))).thenReturn(Stream.empty());
+        index.reload();
+        UserTicketsSubscription subscription = createSubscription("1", 100, "001А");
+
+        index.applyChange(OperationType.INSERT, "1", subscription);
+        assertEquals(List.of(subscription), index.getByChatId(100));
+
+        index.applyChange(OperationType.DELETE, "1", null);
+        assertTrue(index.getByChatId(100).isEmpty());
+    }
+
+    @Test
+    void testChangeStreamUnsupportedIsDetected() {
+        MongoCommandException standalone = new MongoCommandException(
+                new BsonDocument("code", new BsonInt32(40573)), new ServerAddress());
+        MongoCommandException other = new MongoCommandException(
+                new BsonDocument("code", new BsonInt32(6)), new ServerAddress());
+
+        assertTrue(SubscriptionDataIndex.isChangeStreamUnsupported(new DataAccessResourceFailureException("down", standalone)));
+        assertFalse(SubscriptionDataIndex.isChangeStreamUnsupported(other));
+    }
+
+    private UserTicketsSubscription createSubscription(String id, long chatId, String trainNumber) {
+        UserTicketsSubscription subscription = new UserTicketsSubscription(chatId, trainNumber, "Express", "Москва",
+                "Казань", "01.03.2099", "02.03.2099", "08:00", "16:00", List.of());
+        subscription.setId(id);
+        return subscription;
+    }
+}
@@ -0,0 +1,102 @@
+package ru.tickets.trainschedulebot.cache;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import ru.tickets.trainschedulebot.model.Train;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimetableDataCacheTest {
+
+    private final TimetableKey key = new TimetableKey(2000000, 2004000, LocalDate.of(2024, 3, 1));
+    private final List<Train> trains = List.of(new Train());
+
+    @Test
+    void testFreshTimetableIsServedFromCache() {
+        TimetableDataCache cache = new TimetableDataCache(Duration.ofHours(1), Duration.ofHours(1), 10);
+        AtomicInteger loads = new AtomicInteger();
+        Supplier<Mono<List<Train>>> loader = () -> Mono.fromCallable(() -> {
+            loads.incrementAndGet();
+            return trains;
+        });
+
+        assertEquals(trains, cache.getTrains(key, loader).block());
+        assertEquals(trains, cache.getTrains(key, loader).block());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testConcurrentRequestsShareOneLoad() {
+        TimetableDataCache cache = new TimetableDataCache(Duration.ofHours(1), Duration.ofHours(1), 10);
+        AtomicInteger loads = new AtomicInteger();
+        Sinks.One<List<Train>> response = Sinks.one();
+        Supplier<Mono<List<Train>>> loader = () -> {
+            loads.incrementAndGet();
+            return response.asMono();
+        };
+
+        Mono<List<Train>> first = cache.getTrains(key, loader);
+        Mono<List<Train>> second = cache.getTrains(key, loader);
+        first.subscribe();
+        second.subscribe();
+        response.tryEmitValue(trains);
+
+        assertEquals(trains, second.block());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testStaleTimetableIsServedWhileReloading() {
+        TimetableDataCache cache = new TimetableDataCache(Duration.ZERO, Duration.ofHours(1), 10);
+        AtomicInteger loads = new AtomicInteger();
+        Supplier<Mono<List<Train>>> loader = () -> Mono.fromCallable(() -> {
+            loads.incrementAndGet();
+            return trains;
+        });
+
+        cache.getTrains(key, loader).block();
+        assertEquals(trains, cache.getTrains(key, loader).block());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testEmptyTimetableIsNotCached() {
+        TimetableDataCache cache = new TimetableDataCache(Duration.ofHours(1), Duration.ofHours(1), 10);
+        AtomicInteger loads = new AtomicInteger();
+        Supplier<Mono<List<Train>>> loader = () -> Mono.fromCallable(() -> {
+            loads.incrementAndGet();
+            return List.<Train>of();
+        });
+
+        cache.getTrains(key, loader).block();
+        cache.getTrains(key, loader).block();
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testOldestTimetableIsEvictedWhenFull() {
+        TimetableDataCache cache = new TimetableDataCache(Duration.ofHours(1), Duration.ofHours(1), 2);
+        TimetableKey second = new TimetableKey(2000000, 2004000, LocalDate.of(2024, 3, 2));
+        TimetableKey third = new TimetableKey(2000000, 2004000, LocalDate.of(2024, 3, 3));
+        AtomicInteger loads = new AtomicInteger();
+        Supplier<Mono<List<Train>>> loader = () -> Mono.fromCallable(() -> {
+            loads.incrementAndGet();
+            return trains;
+        });
+
+        cache.getTrains(key, loader).block();
+        cache.getTrains(second, loader).block();
+        cache.getTrains(third, loader).block();
+        cache.getTrains(second, loader).block();
+        cache.getTrains(key, loader).block();
+
+        assertEquals(4, loads.get());
+    }
+}
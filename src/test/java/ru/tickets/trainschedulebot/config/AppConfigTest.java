@@ -0,0 +1,71 @@
+package ru.tickets.trainschedulebot.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+import ru.tickets.trainschedulebot.standin.StandInServer;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AppConfigTest {
+
+    private final AppConfig appConfig = new AppConfig();
+    private final HttpClientProperties properties = new HttpClientProperties();
+    private StandInServer standInServer;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        standInServer = StandInServer.start(8).withRzdRoutes(0);
+        properties.setMaxConnectionsTotal(10);
+        properties.setMaxConnectionsPerRoute(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        standInServer.close();
+    }
+
+    @Test
+    void testRestTemplateIsBackedByBoundedPool() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        try (PoolingHttpClientConnectionManager connectionManager = appConfig.httpClientConnectionManager(properties)) {
+            RestTemplate restTemplate = appConfig.restTemplate(new RestTemplateBuilder(), connectionManager, properties, meterRegistry);
+
+            String stations = restTemplate.getForObject(standInServer.baseUrl() + "/suggester?stationNamePart=МОСК&lang=ru", String.class);
+
+            assertNotNull(stations);
+            assertTrue(stations.contains("МОСКВА"));
+            assertEquals(4, connectionManager.getDefaultMaxPerRoute());
+            assertEquals(10, meterRegistry.get("httpclient.pool.connections").tag("state", "max").gauge().value());
+        }
+    }
+
+    @Test
+    void testWebClientLimitsConnectionsToRemoteApiHost() {
+        standInServer.setLatency(Duration.ofMillis(200), Duration.ZERO);
+        String ridRequestTemplate = standInServer.baseUrl() + "/timetable/public/ru?layer_id=5827&code0={STATION_DEPART_CODE}";
+        WebClient webClient = appConfig.webClient(WebClient.builder(), properties, ridRequestTemplate);
+
+        // Eight concurrent requests to the remote API host share its four connections, so they take two round trips
+        StepVerifier.create(Flux.range(0, 8)
+                        .flatMap(i -> webClient.get().uri(ridRequestTemplate, 2000000).retrieve().bodyToMono(String.class))
+                        .count()
+                        .elapsed())
+                .assertNext(elapsed -> {
+                    assertEquals(8, elapsed.getT2());
+                    assertTrue(elapsed.getT1() >= 400, "Requests were not queued for pooled connections: " + elapsed.getT1() + "ms");
+                })
+                .verifyComplete();
+        assertEquals(8, standInServer.getRequestCount("/timetable/public/ru"));
+    }
+}
@@ -0,0 +1,183 @@
+package ru.tickets.trainschedulebot.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import ru.tickets.trainschedulebot.service.SubscriptionService;
+import ru.tickets.trainschedulebot.standin.StandInServer;
+import ru.tickets.trainschedulebot.utils.DateTimeUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Load harness driving {@code WebHookController} with synthetic users searching for trains.
+ * The remote train information service and the Telegram Bot API are replaced by local {@link StandInServer}s.
+ * <p>
+ * Excluded from the regular test run, started with {@code gradle loadTest}. The load is configured with the
+ * {@code loadtest.users}, {@code loadtest.concurrency}, {@code loadtest.rzdLatencyMs}, {@code loadtest.rzdErrorRate}
+ * and {@code loadtest.telegramLatencyMs} system properties.
+ */
+@Slf4j
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class WebHookLoadTest {
+
+    private static final int USERS = Integer.getInteger("loadtest.users", 2000);
+    private static final int CONCURRENCY = Integer.getInteger("loadtest.concurrency", 64);
+
+    private static StandInServer rzdServer;
+    private static StandInServer telegramServer;
+
+    @MockBean
+    private SubscriptionService subscriptionService;
+
+    @LocalServerPort
+    private int port;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong updateId = new AtomicLong();
+
+    @DynamicPropertySource
+    static void standInProperties(DynamicPropertyRegistry registry) throws IOException {
+        rzdServer = StandInServer.start(64).withRzdRoutes(2);
+        rzdServer.setLatency(Duration.ofMillis(Long.getLong("loadtest.rzdLatencyMs", 50)), Duration.ofMillis(50));
+        rzdServer.setErrorRate(Double.parseDouble(System.getProperty("loadtest.rzdErrorRate", "0")));
+        telegramServer = StandInServer.start(64).withTelegramRoutes();
+        telegramServer.setLatency(Duration.ofMillis(Long.getLong("loadtest.telegramLatencyMs", 20)), Duration.ZERO);
+
+        String rzdUrl = rzdServer.baseUrl();
+        registry.add("station.code.service.request.template", () -> rzdUrl + "/suggester?stationNamePart={stationNamePart}&lang=ru");
+        registry.add("trainTicketsGetInfoService.ridRequestTemplate", () -> rzdUrl + "/timetable/public/ru?layer_id=5827&dir=0&tfl=3"
+                + "&checkSeats=1&code0={STATION_DEPART_CODE}&code1={STATION_ARRIVAL_CODE}&dt0={DATE_DEPART}");
+        registry.add("trainTicketsGetInfoService.trainInfoRequestTemplate", () -> rzdUrl + "/timetable/public/ru?layer_id=5827&rid={RID_VALUE}");
+        registry.add("rzdSession.handshakeUrl", () -> rzdUrl + "/timetable/public/ru?layer_id=5827");
+        registry.add("ridpolling.initialDelay", () -> "50ms");
+        registry.add("telegrambot.baseUrl", () -> telegramServer.baseUrl() + "/bot");
+        registry.add("telegrambot.webHookPath", () -> "http://localhost/");
+        registry.add("telegrambot.proxyType", () -> "NO_PROXY");
+        registry.add("subscriptions.processPeriod", () -> "86400000");
+    }
+
+    @AfterAll
+    static void stopStandIns() {
+        rzdServer.close();
+        telegramServer.close();
+    }
+
+    @Test
+    void searchTrainsWithManyUsers() throws Exception {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        String dateDepart = DateTimeUtils.formatDate(LocalDate.now().plusDays(10));
+        List<String> conversation = List.of("Найти поезда", "Москва", "Казань", dateDepart);
+
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        AtomicInteger failedRequests = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENCY);
+        long sendMessagesBefore = telegramServer.getRequestCount("/sendMessage");
+
+        long startNanos = System.nanoTime();
+        List<Future<?>> users = new ArrayList<>();
+        for (int userId = 1; userId <= USERS; userId++) {
+            long chatId = userId;
+            users.add(executor.submit(() -> {
+                for (String text : conversation) {
+                    sendUpdate(httpClient, chatId, text, latencies, failedRequests);
+                }
+            }));
+        }
+        for (Future<?> user : users) {
+            user.get();
+        }
+        long webhookNanos = System.nanoTime() - startNanos;
+        executor.shutdown();
+
+        // Every search sends at least its result to the user through the Telegram Bot API
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(2);
+        while (telegramServer.getRequestCount("/sendMessage") - sendMessagesBefore < USERS && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+        long endToEndNanos = System.nanoTime() - startNanos;
+
+        long[] sortedLatencies = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        log.info("Webhook requests: {}, failed: {}, throughput: {} req/s",
+                sortedLatencies.length, failedRequests.get(),
+                String.format("%.1f", sortedLatencies.length / (webhookNanos / 1e9)));
+        log.info("Webhook latency p50: {} ms, p95: {} ms, p99: {} ms, max: {} ms",
+                percentile(sortedLatencies, 50), percentile(sortedLatencies, 95), percentile(sortedLatencies, 99),
+                percentile(sortedLatencies, 100));
+        log.info("Searches: {}, completed in {} s, RZD requests: {}, Telegram messages: {}",
+                USERS, String.format("%.1f", endToEndNanos / 1e9), rzdServer.getRequestCount("/ru"),
+                telegramServer.getRequestCount("/sendMessage") - sendMessagesBefore);
+
+        assertEquals(USERS * conversation.size(), sortedLatencies.length);
+        assertEquals(0, failedRequests.get());
+    }
+
+    private void sendUpdate(HttpClient httpClient, long chatId, String text,
+                            ConcurrentLinkedQueue<Long> latencies, AtomicInteger failedRequests) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(buildUpdate(chatId, text)))
+                    .build();
+
+            long startNanos = System.nanoTime();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            latencies.add(System.nanoTime() - startNanos);
+            if (response.statusCode() != 200) {
+                failedRequests.incrementAndGet();
+            }
+        } catch (IOException e) {
+            failedRequests.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String buildUpdate(long chatId, String text) throws IOException {
+        long id = updateId.incrementAndGet();
+        Map<String, Object> user = Map.of("id", chatId, "is_bot", false, "first_name", "User", "username", "user" + chatId);
+        Map<String, Object> message = Map.of(
+                "message_id", id,
+                "date", System.currentTimeMillis() / 1000,
+                "chat", Map.of("id", chatId, "type", "private"),
+                "from", user,
+                "text", text);
+        return objectMapper.writeValueAsString(Map.of("update_id", id, "message", message));
+    }
+
+    private static long percentile(long[] sortedLatencies, int percentile) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sortedLatencies.length) - 1;
+        return TimeUnit.NANOSECONDS.toMillis(sortedLatencies[Math.max(0, index)]);
+    }
+}
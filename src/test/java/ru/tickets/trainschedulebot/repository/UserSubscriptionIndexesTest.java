@@ -0,0 +1,33 @@
+package ru.tickets.trainschedulebot.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import ru.tickets.trainschedulebot.model.UserTicketsSubscription;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserSubscriptionIndexesTest {
+
+    @Test
+    void testIndexesMatchRepositoryQueryShapes() {
+        Map<String, List<String>> indexKeys = new HashMap<>();
+        for (IndexDefinition index : resolveIndexes()) {
+            indexKeys.put(index.getIndexOptions().getString("name"), List.copyOf(index.getIndexKeys().keySet()));
+        }
+
+        // findByChatId is served by the prefix of the chat, train and departure date index
+        assertEquals(List.of("chatId", "trainNumber", "dateDepart"), indexKeys.get("chat_train_date"));
+        assertEquals(List.of("stationDepart", "stationArrival", "dateDepart"), indexKeys.get("route_date"));
+    }
+
+    static Iterable<? extends IndexDefinition> resolveIndexes() {
+        return new MongoPersistentEntityIndexResolver(new MongoMappingContext())
+                .resolveIndexFor(UserTicketsSubscription.class);
+    }
+}
@@ -0,0 +1,101 @@
+package ru.tickets.trainschedulebot.repository;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import ru.tickets.trainschedulebot.model.Car;
+import ru.tickets.trainschedulebot.model.UserTicketsSubscription;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the queries of {@link UserSubscriptionRepository} are planned as index scans of the declared indexes.
+ * <p>
+ * Needs a running MongoDB, so it is excluded from the regular test run and started with {@code gradle mongoTest}.
+ * The server is configured with the {@code mongotest.uri} system property, a temporary database is dropped afterwards.
+ */
+@Tag("mongo")
+class UserSubscriptionQueryPlanTest {
+
+    private static final String MONGO_URI = System.getProperty("mongotest.uri", "mongodb://localhost:27017");
+    private static final String DATABASE = "TrainScheduleQueryPlanTest";
+
+    private static MongoClient mongoClient;
+    private static MongoTemplate mongoTemplate;
+
+    @BeforeAll
+    static void setUp() {
+        mongoClient = MongoClients.create(MONGO_URI);
+        mongoTemplate = new MongoTemplate(mongoClient, DATABASE);
+        mongoTemplate.dropCollection(UserTicketsSubscription.class);
+
+        // Creates the indexes the same way auto-index-creation does at startup
+        IndexOperations indexOps = mongoTemplate.indexOps(UserTicketsSubscription.class);
+        UserSubscriptionIndexesTest.resolveIndexes().forEach(indexOps::ensureIndex);
+
+        List<UserTicketsSubscription> subscriptions = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            subscriptions.add(new UserTicketsSubscription(i % 100, String.format("%03dА", i % 50), "Express",
+                    "Москва", "Казань", "01.03.2099", "01.03.2099", "12:00", "20:00", List.of(new Car("Плац", 10, 3000))));
+        }
+        mongoTemplate.insert(subscriptions, UserTicketsSubscription.class);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        mongoTemplate.getDb().drop();
+        mongoClient.close();
+    }
+
+    @Test
+    void testFindByChatIdUsesIndex() {
+        assertEquals(Set.of("chat_train_date"), getScannedIndexes(Criteria.where("chatId").is(10L)));
+    }
+
+    @Test
+    void testFindByChatIdAndTrainNumberAndDateDepartUsesIndex() {
+        assertEquals(Set.of("chat_train_date"), getScannedIndexes(Criteria.where("chatId").is(10L)
+                .and("trainNumber").is("010А").and("dateDepart").is("01.03.2099")));
+    }
+
+    /**
+     * Explains a query on the subscriptions collection and collects the indexes scanned by its winning plan.
+     *
+     * @param criteria The criteria of the query.
+     * @return The names of the scanned indexes.
+     */
+    private Set<String> getScannedIndexes(Criteria criteria) {
+        Document explain = mongoTemplate.getCollection(mongoTemplate.getCollectionName(UserTicketsSubscription.class))
+                .find(criteria.getCriteriaObject())
+                .explain();
+        Document winningPlan = explain.get("queryPlanner", Document.class).get("winningPlan", Document.class);
+
+        Set<String> indexes = new HashSet<>();
+        collectScannedIndexes(winningPlan, indexes);
+        return indexes;
+    }
+
+    private void collectScannedIndexes(Object planStage, Set<String> indexes) {
+        if (planStage instanceof Document stage) {
+            assertNotEquals("COLLSCAN", stage.getString("stage"));
+            if ("IXSCAN".equals(stage.getString("stage"))) {
+                indexes.add(stage.getString("indexName"));
+            }
+            stage.values().forEach(value -> collectScannedIndexes(value, indexes));
+        } else if (planStage instanceof List<?> stages) {
+            stages.forEach(value -> collectScannedIndexes(value, indexes));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package ru.tickets.trainschedulebot.service;
+
+import org.junit.jupiter.api.Test;
+import ru.tickets.trainschedulebot.model.Car;
+import ru.tickets.trainschedulebot.model.CarChangeEvent;
+import ru.tickets.trainschedulebot.model.CarsDiff;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CarsDiffServiceTest {
+
+    private final CarsDiffService carsDiffService = new CarsDiffService();
+
+    @Test
+    void testPriceChanges() {
+        List<Car> subscribedCars = List.of(new Car("Плац", 10, 3000), new Car("Купе", 5, 5000));
+        List<Car> actualCars = List.of(new Car("Купе", 4, 4500), new Car("Плац", 8, 3200));
+
+        CarsDiff diff = carsDiffService.diff(subscribedCars, actualCars);
+
+        assertEquals(List.of(
+                new CarChangeEvent(CarChangeEvent.Type.PRICE_DOWN, "Купе", 5, 4, 5000, 4500),
+                new CarChangeEvent(CarChangeEvent.Type.PRICE_UP, "Плац", 10, 8, 3000, 3200)), diff.events());
+        assertEquals(actualCars, diff.cars());
+    }
+
+    @Test
+    void testSeatsChanges() {
+        List<Car> subscribedCars = List.of(new Car("Плац", 0, 3000), new Car("Купе", 5, 5000));
+        List<Car> actualCars = List.of(new Car("Плац", 3, 3000), new Car("Купе", 0, 5000));
+
+        CarsDiff diff = carsDiffService.diff(subscribedCars, actualCars);
+
+        assertEquals(List.of(
+                new CarChangeEvent(CarChangeEvent.Type.SEATS_APPEARED, "Плац", 0, 3, 3000, 3000),
+                new CarChangeEvent(CarChangeEvent.Type.SOLD_OUT, "Купе", 5, 0, 5000, 5000)), diff.events());
+    }
+
+    @Test
+    void testCarTypeAddedAndRemoved() {
+        List<Car> subscribedCars = List.of(new Car("Плац", 10, 3000));
+        List<Car> actualCars = List.of(new Car("СВ", 2, 9000));
+
+        CarsDiff diff = carsDiffService.diff(subscribedCars, actualCars);
+
+        assertEquals(List.of(
+                new CarChangeEvent(CarChangeEvent.Type.CAR_TYPE_ADDED, "СВ", null, 2, null, 9000),
+                new CarChangeEvent(CarChangeEvent.Type.CAR_TYPE_REMOVED, "Плац", 10, null, 3000, null)), diff.events());
+        assertEquals(List.of(new Car("СВ", 2, 9000)), diff.cars());
+    }
+
+    @Test
+    void testUnchangedCarsAreNotModified() {
+        Car subscribedCar = new Car("Плац", 10, 3000);
+        Car actualCar = new Car("Плац", 9, 3000);
+
+        CarsDiff diff = carsDiffService.diff(List.of(subscribedCar), List.of(actualCar));
+
+        assertFalse(diff.hasChanges());
+        assertEquals(new Car("Плац", 10, 3000), subscribedCar);
+        assertNotSame(actualCar, diff.cars().get(0));
+        assertThrows(UnsupportedOperationException.class, () -> diff.cars().add(actualCar));
+    }
+}
@@ -0,0 +1,75 @@
+package ru.tickets.trainschedulebot.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    private AtomicLong nanoTime;
+    private CircuitBreaker circuitBreaker;
+
+    @BeforeEach
+    void setUp() {
+        nanoTime = new AtomicLong();
+        circuitBreaker = new CircuitBreaker(0.5, 4, 4, Duration.ofSeconds(30), 2, nanoTime::get);
+    }
+
+    @Test
+    void testOpensOnceFailureRateIsReached() {
+        recordCalls(true, false, true);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+
+        recordCalls(false);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+    }
+
+    @Test
+    void testStaysClosedWhileFailuresLeaveTheWindow() {
+        recordCalls(true, true, false, false, false, false);
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    void testHalfOpenProbesCloseTheBreaker() {
+        recordCalls(true, true, true, true);
+        nanoTime.addAndGet(Duration.ofSeconds(30).toNanos());
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+
+        circuitBreaker.onSuccess();
+        circuitBreaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    void testFailedProbeOpensTheBreakerAgain() {
+        recordCalls(true, true, true, true);
+        nanoTime.addAndGet(Duration.ofSeconds(30).toNanos());
+
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.onError();
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    private void recordCalls(boolean... failed) {
+        for (boolean callFailed : failed) {
+            assertTrue(circuitBreaker.tryAcquirePermission());
+            if (callFailed) {
+                circuitBreaker.onError();
+            } else {
+                circuitBreaker.onSuccess();
+            }
+        }
+    }
+}
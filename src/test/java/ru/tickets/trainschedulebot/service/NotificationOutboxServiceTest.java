@@ -0,0 +1,160 @@
+package ru.tickets.trainschedulebot.service;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import ru.tickets.trainschedulebot.model.OutboxNotification;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class NotificationOutboxServiceTest {
+
+    private static final Instant NOW = Instant.parse("2024-03-01T09:00:00Z");
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private SendMessageService sendMessageService;
+
+    private NotificationOutboxService outboxService;
+
+    @BeforeEach
+    void setUp() {
+        outboxService = new NotificationOutboxService(mongoTemplate, sendMessageService, Clock.fixed(NOW, ZoneOffset.UTC),
+                10, Duration.ofMinutes(5), 3, Duration.ofSeconds(10), Duration.ofMinutes(1));
+    }
+
+    @Test
+    void testEnqueueAllOnceOnlySetsFieldsOnInsert() {
+        BulkOperations outboxOperations = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, OutboxNotification.class)).thenReturn(outboxOperations);
+
+        outboxService.enqueueAllOnce(List.of(OutboxNotification.of("trainHasDeparted:1", 123456789, "Поезд отправился", NOW),
+                OutboxNotification.of("trainHasDeparted:2", 987654321, "Поезд отправился", NOW)));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(outboxOperations, times(2)).upsert(query.capture(), update.capture());
+        verify(outboxOperations, times(1)).execute();
+        assertEquals(List.of("trainHasDeparted:1", "trainHasDeparted:2"),
+                query.getAllValues().stream().map(q -> q.getQueryObject().get("_id")).toList());
+        assertEquals(Set.of("$setOnInsert"), update.getValue().getUpdateObject().keySet());
+    }
+
+    @Test
+    void testEnqueueAllOnceOfNoNotificationsMakesNoWrites() {
+        outboxService.enqueueAllOnce(List.of());
+
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testDeliveredNotificationsAreRemoved() throws TelegramApiException {
+        OutboxNotification notification = new OutboxNotification("1", 123456789, "Изменились цены", NOW, NOW, 1, "claim");
+        stubClaimedNotifications(notification);
+
+        outboxService.deliverPendingNotifications();
+
+        verify(sendMessageService).deliverMessage(123456789, "Изменились цены");
+        verify(mongoTemplate).remove(any(Query.class), eq(OutboxNotification.class));
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(UpdateDefinition.class), eq(OutboxNotification.class));
+    }
+
+    @Test
+    void testFailedDeliveryIsRetried() throws TelegramApiException {
+        OutboxNotification notification = new OutboxNotification("1", 123456789, "Изменились цены", NOW, NOW, 1, "claim");
+        stubClaimedNotifications(notification);
+        doThrow(new TelegramApiException("timeout")).when(sendMessageService).deliverMessage(anyLong(), anyString());
+
+        outboxService.deliverPendingNotifications();
+
+        verify(mongoTemplate).updateFirst(any(Query.class), any(UpdateDefinition.class), eq(OutboxNotification.class));
+        verify(mongoTemplate, never()).remove(any(Query.class), eq(OutboxNotification.class));
+    }
+
+    @Test
+    void testUnexpectedDeliveryFailureIsRetriedAndDeliveredNotificationsAreRemoved() throws TelegramApiException {
+        OutboxNotification delivered = new OutboxNotification("1", 111111111, "Изменились цены", NOW, NOW, 1, "claim");
+        OutboxNotification failed = new OutboxNotification("2", 222222222, "Изменились цены", NOW, NOW, 1, "claim");
+        when(mongoTemplate.find(any(Query.class), eq(OutboxNotification.class)))
+                .thenReturn(List.of(new OutboxNotification("1", 0, null, null, null, 0, null),
+                        new OutboxNotification("2", 0, null, null, null, 0, null)), List.of(delivered, failed));
+        doThrow(new IllegalStateException("connection reset")).when(sendMessageService).deliverMessage(eq(222222222L), anyString());
+
+        outboxService.deliverPendingNotifications();
+
+        ArgumentCaptor<Query> removed = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).remove(removed.capture(), eq(OutboxNotification.class));
+        assertEquals(new Document("_id", new Document("$in", List.of("1"))), removed.getValue().getQueryObject());
+        verify(mongoTemplate).updateFirst(any(Query.class), any(UpdateDefinition.class), eq(OutboxNotification.class));
+    }
+
+    @Test
+    void testNotificationIsDroppedAfterMaxAttempts() throws TelegramApiException {
+        OutboxNotification notification = new OutboxNotification("1", 123456789, "Изменились цены", NOW, NOW, 3, "claim");
+        stubClaimedNotifications(notification);
+        doThrow(new TelegramApiException("timeout")).when(sendMessageService).deliverMessage(anyLong(), anyString());
+
+        outboxService.deliverPendingNotifications();
+
+        verify(mongoTemplate).remove(any(Query.class), eq(OutboxNotification.class));
+    }
+
+    @Test
+    void testNotificationToBlockedUserIsDropped() throws TelegramApiException {
+        OutboxNotification notification = new OutboxNotification("1", 123456789, "Изменились цены", NOW, NOW, 1, "claim");
+        stubClaimedNotifications(notification);
+        TelegramApiRequestException forbidden = mock(TelegramApiRequestException.class);
+        when(forbidden.getErrorCode()).thenReturn(403);
+        doThrow(forbidden).when(sendMessageService).deliverMessage(anyLong(), anyString());
+
+        outboxService.deliverPendingNotifications();
+
+        verify(mongoTemplate).remove(any(Query.class), eq(OutboxNotification.class));
+    }
+
+    @Test
+    void testNothingIsClaimedWhenOutboxIsEmpty() {
+        when(mongoTemplate.find(any(Query.class), eq(OutboxNotification.class))).thenReturn(List.of());
+
+        assertTrue(outboxService.claimNotifications().isEmpty());
+
+        verify(mongoTemplate, never()).updateMulti(any(Query.class), any(UpdateDefinition.class), eq(OutboxNotification.class));
+    }
+
+    @Test
+    void testRetryDelayDoublesUpToMaximum() {
+        assertEquals(Duration.ofSeconds(10), outboxService.getRetryDelay(1));
+        assertEquals(Duration.ofSeconds(20), outboxService.getRetryDelay(2));
+        assertEquals(Duration.ofSeconds(40), outboxService.getRetryDelay(3));
+        assertEquals(Duration.ofMinutes(1), outboxService.getRetryDelay(4));
+        assertEquals(Duration.ofMinutes(1), outboxService.getRetryDelay(100));
+    }
+
+    private void stubClaimedNotifications(OutboxNotification notification) {
+        when(mongoTemplate.find(any(Query.class), eq(OutboxNotification.class)))
+                .thenReturn(List.of(new OutboxNotification(notification.getId(), 0, null, null, null, 0, null)), List.of(notification));
+    }
+}
@@ -40,4 +40,11 @@ class ParseQueryDataServiceTest {
         String subscriptionId = parseQueryDataService.parseSubscriptionIdFromUnsubscribeQuery(callbackQuery);
         assertEquals("65e060f3e7e83f41282601e2", subscriptionId);
     }
+
+    @Test
+    void testParseSubscriptionIdFromPriceHistoryQuery() {
+        when(callbackQuery.getData()).thenReturn("PRICE_HISTORY|65e060f3e7e83f41282601e2");
+        String subscriptionId = parseQueryDataService.parseSubscriptionIdFromPriceHistoryQuery(callbackQuery);
+        assertEquals("65e060f3e7e83f41282601e2", subscriptionId);
+    }
 }
@@ -0,0 +1,68 @@
+package ru.tickets.trainschedulebot.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import ru.tickets.trainschedulebot.model.Car;
+import ru.tickets.trainschedulebot.model.Train;
+import ru.tickets.trainschedulebot.model.TrainInfoResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParseTrainsResponseServiceTest {
+
+    private final ParseTrainsResponseService parseService = new ParseTrainsResponseService(new ObjectMapper());
+
+    @Test
+    void testParseReadsTrainsOfEveryTimetable() {
+        String responseBody = """
+                {"result":"OK","timestamp":"01.03.2024 10:00:00.000",
+                 "tp":[{"from":"МОСКВА","list":[
+                          {"number":"001А","brand":"Россия","date0":"01.03.2024","unknown":{"nested":[1,2]},
+                           "cars":[{"type":"Плац","freeSeats":10,"tariff":3000}]}]},
+                       {"from":"КАЗАНЬ","list":[{"number":"002А","cars":[]}]}]}
+                """;
+
+        TrainInfoResponse response = parseService.parse(toInputStream(responseBody));
+
+        assertFalse(response.isPending());
+        List<Train> trains = response.trains();
+        assertEquals(2, trains.size());
+        assertEquals("001А", trains.get(0).getNumber());
+        assertEquals("01.03.2024", trains.get(0).getDateDepart());
+        assertEquals(List.of(new Car("Плац", 10, 3000)), trains.get(0).getAvailableCars());
+        assertEquals("002А", trains.get(1).getNumber());
+    }
+
+    @Test
+    void testParseRecognizesPendingResult() {
+        TrainInfoResponse response = parseService.parse(toInputStream("{\"result\":\"RID\",\"RID\":\"123456\"}"));
+
+        assertTrue(response.isPending());
+        assertTrue(response.trains().isEmpty());
+    }
+
+    @Test
+    void testParseFailsOnEmptyBody() {
+        assertThrows(UncheckedIOException.class, () -> parseService.parse(toInputStream("")));
+    }
+
+    @Test
+    void testParseFailsOnMissingResult() {
+        assertThrows(UncheckedIOException.class, () -> parseService.parse(toInputStream("{\"error\":\"Internal error\"}")));
+    }
+
+    @Test
+    void testParseFailsOnMalformedBody() {
+        assertThrows(UncheckedIOException.class, () -> parseService.parse(toInputStream("{\"result\": \"OK\", \"tp\": [")));
+    }
+
+    private InputStream toInputStream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,99 @@
+package ru.tickets.trainschedulebot.service;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import ru.tickets.trainschedulebot.model.Car;
+import ru.tickets.trainschedulebot.model.DailyPrice;
+import ru.tickets.trainschedulebot.model.PriceSample;
+import ru.tickets.trainschedulebot.model.Train;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PriceHistoryServiceTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private ShardLeaseService shardLeaseService;
+
+    private PriceHistoryService priceHistoryService;
+
+    @BeforeEach
+    void setUp() {
+        priceHistoryService = new PriceHistoryService(mongoTemplate, new CarsProcessingService(), shardLeaseService, Duration.ofHours(48));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRecordPricesInsertsSamplePerCarType() {
+        Instant observedAt = Instant.parse("2024-03-01T09:00:00Z");
+        Train train = new Train("001А", "Express", "Москва", "Казань", "01.03.2024", "02.03.2024", "08:00", "16:00",
+                List.of(new Car("Плац", 10, 3000), new Car("Плац", 4, 3500), new Car("Купе", 5, 5000)), "08:00");
+
+        priceHistoryService.recordPrices(List.of(train), observedAt);
+
+        ArgumentCaptor<Collection<PriceSample>> samples = ArgumentCaptor.forClass(Collection.class);
+        verify(mongoTemplate).insert(samples.capture(), eq(PriceSample.class));
+        assertEquals(2, samples.getValue().size());
+        assertTrue(samples.getValue().contains(new PriceSample(null, observedAt,
+                new PriceSample.Series("001А", "01.03.2024", "Плац"), 10, 3000)));
+    }
+
+    @Test
+    void testRecordPricesWithoutCarsDoesNothing() {
+        priceHistoryService.recordPrices(List.of(), Instant.now());
+
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testGetDailyPrices() {
+        List<DailyPrice> dailyPrices = List.of(new DailyPrice());
+        when(mongoTemplate.find(any(Query.class), eq(DailyPrice.class))).thenReturn(dailyPrices);
+
+        assertEquals(dailyPrices, priceHistoryService.getDailyPrices("001А", "01.03.2024"));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(query.capture(), eq(DailyPrice.class));
+        assertEquals(new Document("trainNumber", "001А").append("dateDepart", "01.03.2024"), query.getValue().getQueryObject());
+        assertEquals(new Document("day", 1).append("carType", 1), query.getValue().getSortObject());
+    }
+
+    @Test
+    void testDownsampleRunsOnlyOnFirstShardOwner() {
+        when(shardLeaseService.getOwnedShards()).thenReturn(Set.of(1, 2));
+
+        priceHistoryService.downsample();
+
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testDownsamplePipelineMergesIntoDailyPrices() {
+        when(mongoTemplate.getCollectionName(DailyPrice.class)).thenReturn("dailyPrices");
+
+        List<Document> pipeline = priceHistoryService.getDownsamplePipeline(Instant.parse("2024-03-01T00:00:00Z"));
+
+        assertEquals("$match", pipeline.get(0).keySet().iterator().next());
+        Document merge = pipeline.get(pipeline.size() - 1).get("$merge", Document.class);
+        assertEquals("dailyPrices", merge.getString("into"));
+        assertEquals("replace", merge.getString("whenMatched"));
+    }
+}
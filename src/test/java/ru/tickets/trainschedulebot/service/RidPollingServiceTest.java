@@ -0,0 +1,114 @@
+package ru.tickets.trainschedulebot.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import ru.tickets.trainschedulebot.config.RidPollingProperties;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RidPollingServiceTest {
+
+    private RidPollingProperties pollingProperties;
+    private SimpleMeterRegistry meterRegistry;
+    private RidPollingService ridPollingService;
+
+    @BeforeEach
+    void setUp() {
+        pollingProperties = new RidPollingProperties();
+        pollingProperties.setInitialDelay(Duration.ofMillis(100));
+        pollingProperties.setMaxDelay(Duration.ofMillis(400));
+        pollingProperties.setMultiplier(2.0);
+        pollingProperties.setJitter(0);
+        pollingProperties.setMaxAttempts(5);
+        pollingProperties.setDeadline(Duration.ofSeconds(10));
+
+        meterRegistry = new SimpleMeterRegistry();
+        ridPollingService = new RidPollingService(pollingProperties, meterRegistry);
+    }
+
+    @Test
+    void testPollReturnsFirstCompletedResponse() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        StepVerifier.withVirtualTime(() -> ridPollingService.poll("123",
+                        () -> Mono.fromCallable(() -> attempts.incrementAndGet() < 3 ? "RID" : "OK"),
+                        "RID"::equals))
+                .expectSubscription()
+                .thenAwait(Duration.ofSeconds(1))
+                .expectNext("OK")
+                .verifyComplete();
+
+        assertEquals(3, attempts.get());
+        assertEquals(3, meterRegistry.get("rzd.rid.polling.attempts").tag("outcome", "completed").summary().totalAmount());
+    }
+
+    @Test
+    void testPollGivesUpAfterMaxAttempts() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        StepVerifier.withVirtualTime(() -> ridPollingService.poll("123",
+                        () -> Mono.fromCallable(() -> {
+                            attempts.incrementAndGet();
+                            return "RID";
+                        }),
+                        "RID"::equals))
+                .expectSubscription()
+                .thenAwait(Duration.ofSeconds(5))
+                .verifyError(RidPollingService.PollingExhaustedException.class);
+
+        assertEquals(5, attempts.get());
+        assertEquals(1, meterRegistry.get("rzd.rid.polling.attempts").tag("outcome", "exhausted").summary().count());
+    }
+
+    @Test
+    void testPollFailsOnceDeadlineIsReached() {
+        pollingProperties.setDeadline(Duration.ofMillis(250));
+        AtomicInteger attempts = new AtomicInteger();
+
+        StepVerifier.withVirtualTime(() -> ridPollingService.poll("123",
+                        () -> Mono.fromCallable(() -> {
+                            attempts.incrementAndGet();
+                            return "RID";
+                        }),
+                        "RID"::equals))
+                .expectSubscription()
+                .thenAwait(Duration.ofSeconds(1))
+                .verifyError(RidPollingService.PollingExhaustedException.class);
+
+        assertEquals(3, attempts.get());
+        assertEquals(1, meterRegistry.get("rzd.rid.polling.attempts").tag("outcome", "deadline").summary().count());
+    }
+
+    @Test
+    void testPollStopsOnFailedResponse() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        StepVerifier.withVirtualTime(() -> ridPollingService.poll("123",
+                        () -> Mono.<String>fromCallable(() -> {
+                            attempts.incrementAndGet();
+                            throw new UncheckedIOException(new IOException("Unexpected end of input"));
+                        }),
+                        "RID"::equals))
+                .expectSubscription()
+                .thenAwait(Duration.ofSeconds(5))
+                .verifyError(UncheckedIOException.class);
+
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void testGetDelayGrowsExponentiallyUpToMaxDelay() {
+        assertEquals(Duration.ofMillis(100), ridPollingService.getDelay(1));
+        assertEquals(Duration.ofMillis(200), ridPollingService.getDelay(2));
+        assertEquals(Duration.ofMillis(400), ridPollingService.getDelay(3));
+        assertEquals(Duration.ofMillis(400), ridPollingService.getDelay(4));
+    }
+}
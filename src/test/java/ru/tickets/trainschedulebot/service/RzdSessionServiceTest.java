@@ -0,0 +1,51 @@
+package ru.tickets.trainschedulebot.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.reactive.function.client.WebClient;
+import ru.tickets.trainschedulebot.service.RzdSessionService.RzdSession;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class RzdSessionServiceTest {
+
+    @Mock
+    private WebClient webClient;
+
+    private RzdSessionService rzdSessionService;
+
+    @BeforeEach
+    void setUp() {
+        rzdSessionService = new RzdSessionService(webClient, "https://pass.rzd.ru/timetable/public/ru", "agent",
+                2, Duration.ofMinutes(15), Duration.ofMinutes(1));
+    }
+
+    @Test
+    void testAcquireSessionFromEmptyPool() {
+        assertTrue(rzdSessionService.acquireSession().isEmpty());
+    }
+
+    @Test
+    void testRegisteredSessionIsReusedWithoutCookieAttributes() {
+        RzdSession session = rzdSessionService.registerSession(List.of("JSESSIONID=abc; Path=/; HttpOnly", "lang=ru"));
+
+        assertEquals(List.of("JSESSIONID=abc", "lang=ru"), session.cookies());
+        assertEquals(Optional.of(session), rzdSessionService.acquireSession());
+    }
+
+    @Test
+    void testInvalidatedSessionIsNotReused() {
+        RzdSession session = rzdSessionService.registerSession(List.of("JSESSIONID=abc"));
+        rzdSessionService.invalidateSession(session);
+
+        assertTrue(rzdSessionService.acquireSession().isEmpty());
+    }
+}
@@ -0,0 +1,63 @@
+package ru.tickets.trainschedulebot.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+import ru.tickets.trainschedulebot.config.RzdUpstreamProperties;
+import ru.tickets.trainschedulebot.service.RzdUpstreamGuard.Bulkhead;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RzdUpstreamGuardTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private RzdUpstreamGuard upstreamGuard;
+
+    @BeforeEach
+    void setUp() {
+        RzdUpstreamProperties properties = new RzdUpstreamProperties();
+        properties.setInitialLimit(4);
+        properties.setMinLimit(1);
+        properties.setBackgroundShare(0.5);
+        properties.setSlidingWindowSize(4);
+        properties.setMinimumCalls(4);
+
+        meterRegistry = new SimpleMeterRegistry();
+        upstreamGuard = new RzdUpstreamGuard(properties, meterRegistry);
+    }
+
+    @Test
+    void testBackgroundRequestsLeaveCapacityToInteractiveRequests() {
+        Sinks.One<String> pending = Sinks.one();
+        upstreamGuard.execute(Bulkhead.BACKGROUND, pending::asMono).subscribe();
+        upstreamGuard.execute(Bulkhead.BACKGROUND, pending::asMono).subscribe();
+
+        StepVerifier.create(upstreamGuard.execute(Bulkhead.BACKGROUND, () -> Mono.just("OK")))
+                .expectError(RzdUpstreamGuard.RejectedException.class)
+                .verify();
+        StepVerifier.create(upstreamGuard.execute(Bulkhead.INTERACTIVE, () -> Mono.just("OK")))
+                .expectNext("OK")
+                .verifyComplete();
+
+        pending.tryEmitValue("OK");
+        assertEquals(0, upstreamGuard.getInFlight(Bulkhead.BACKGROUND));
+        assertEquals(1, meterRegistry.get("rzd.upstream.rejected").tag("reason", "limit").counter().count());
+    }
+
+    @Test
+    void testFailingUpstreamOpensTheCircuit() {
+        for (int i = 0; i < 4; i++) {
+            StepVerifier.create(upstreamGuard.execute(Bulkhead.INTERACTIVE, () -> Mono.error(new IllegalStateException())))
+                    .expectError(IllegalStateException.class)
+                    .verify();
+        }
+
+        StepVerifier.create(upstreamGuard.execute(Bulkhead.INTERACTIVE, () -> Mono.just("OK")))
+                .expectError(RzdUpstreamGuard.RejectedException.class)
+                .verify();
+        assertEquals(1, meterRegistry.get("rzd.upstream.circuit.open").gauge().value());
+    }
+}
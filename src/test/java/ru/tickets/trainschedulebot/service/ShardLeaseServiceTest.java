@@ -0,0 +1,176 @@
+package ru.tickets.trainschedulebot.service;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import ru.tickets.trainschedulebot.model.ShardLease;
+import ru.tickets.trainschedulebot.model.ShardNode;
+import ru.tickets.trainschedulebot.model.SubscriptionRoute;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ShardLeaseServiceTest {
+
+    private final Instant now = Instant.parse("2024-03-01T10:00:00Z");
+    private MongoTemplate mongoTemplate;
+    private ShardLeaseService shardLeaseService;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        shardLeaseService = new ShardLeaseService(mongoTemplate, Clock.fixed(now, ZoneOffset.UTC), 4, Duration.ofSeconds(60));
+    }
+
+    @Test
+    void testClaimsFairShareNextToLiveInstance() {
+        when(mongoTemplate.findAll(ShardLease.class)).thenReturn(List.of(
+                new ShardLease(0, "other", now.plusSeconds(30), now),
+                new ShardLease(1, "other", now.plusSeconds(30), now)));
+        when(mongoTemplate.count(any(Query.class), eq(ShardNode.class))).thenReturn(2L);
+        claimFreeShards();
+
+        shardLeaseService.renewLeases();
+
+        assertEquals(Set.of(2, 3), shardLeaseService.getOwnedShards());
+        verify(mongoTemplate).upsert(any(Query.class), any(Update.class), eq(ShardNode.class));
+    }
+
+    @Test
+    void testShardsAreRebalancedToNewInstance() {
+        Clock clock = Clock.fixed(now, ZoneOffset.UTC);
+        InMemoryLeases store = new InMemoryLeases();
+        ShardLeaseService first = new ShardLeaseService(store.mongoTemplate, clock, 4, Duration.ofSeconds(60));
+        ShardLeaseService second = new ShardLeaseService(store.mongoTemplate, clock, 4, Duration.ofSeconds(60));
+
+        first.renewLeases();
+        assertEquals(Set.of(0, 1, 2, 3), first.getOwnedShards());
+
+        second.renewLeases();
+        assertTrue(second.getOwnedShards().isEmpty());
+
+        first.renewLeases();
+        second.renewLeases();
+
+        assertEquals(Set.of(0, 1), first.getOwnedShards());
+        assertEquals(Set.of(2, 3), second.getOwnedShards());
+    }
+
+    @Test
+    void testTakesOverExpiredLeases() {
+        when(mongoTemplate.findAll(ShardLease.class)).thenReturn(List.of(
+                new ShardLease(0, "dead", now.minusSeconds(1), now.minusSeconds(61)),
+                new ShardLease(1, "dead", now.minusSeconds(1), now.minusSeconds(61))));
+        claimFreeShards();
+
+        shardLeaseService.renewLeases();
+
+        assertEquals(Set.of(0, 1, 2, 3), shardLeaseService.getOwnedShards());
+        SubscriptionRoute route = new SubscriptionRoute("МОСКВА", "КАЗАНЬ", "01.03.2024");
+        assertTrue(shardLeaseService.ownedRoutes().test(route));
+    }
+
+    @Test
+    void testLeaseClaimedConcurrentlyIsNotOwned() {
+        when(mongoTemplate.findAll(ShardLease.class)).thenReturn(List.of());
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(ShardLease.class)))
+                .thenThrow(new DuplicateKeyException("duplicate key"));
+
+        shardLeaseService.renewLeases();
+
+        assertTrue(shardLeaseService.getOwnedShards().isEmpty());
+        assertFalse(shardLeaseService.ownedRoutes().test(new SubscriptionRoute("МОСКВА", "КАЗАНЬ", "01.03.2024")));
+    }
+
+    @Test
+    void testRouteOfLostShardIsNoLongerOwned() {
+        SubscriptionRoute route = new SubscriptionRoute("МОСКВА", "КАЗАНЬ", "01.03.2024");
+        when(mongoTemplate.findAll(ShardLease.class)).thenReturn(List.of());
+        claimFreeShards();
+        shardLeaseService.renewLeases();
+        Predicate<SubscriptionRoute> ownedRoutesSnapshot = shardLeaseService.ownedRoutes();
+        assertTrue(shardLeaseService.ownsRoute(route));
+
+        when(mongoTemplate.findAll(ShardLease.class)).thenReturn(List.of(
+                new ShardLease(0, "other", now.plusSeconds(30), now),
+                new ShardLease(1, "other", now.plusSeconds(30), now),
+                new ShardLease(2, "other", now.plusSeconds(30), now),
+                new ShardLease(3, "other", now.plusSeconds(30), now)));
+        shardLeaseService.renewLeases();
+
+        assertTrue(ownedRoutesSnapshot.test(route));
+        assertFalse(shardLeaseService.ownsRoute(route));
+    }
+
+    /**
+     * Leases and heartbeats kept in memory, shared by the instances under test through a mocked MongoTemplate.
+     */
+    private class InMemoryLeases {
+        private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        private final Map<Integer, ShardLease> leases = new HashMap<>();
+        private final Map<String, Instant> nodes = new HashMap<>();
+
+        InMemoryLeases() {
+            when(mongoTemplate.findAll(ShardLease.class)).thenAnswer(invocation -> List.copyOf(leases.values()));
+            when(mongoTemplate.upsert(any(Query.class), any(Update.class), eq(ShardNode.class))).thenAnswer(invocation -> {
+                nodes.put(getId(invocation.getArgument(0)), getSet(invocation.getArgument(1)).get("expiresAt", Instant.class));
+                return null;
+            });
+            when(mongoTemplate.count(any(Query.class), eq(ShardNode.class)))
+                    .thenAnswer(invocation -> nodes.values().stream().filter(expiresAt -> expiresAt.isAfter(now)).count());
+            when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(ShardLease.class)))
+                    .thenAnswer(invocation -> {
+                        int shard = getId(invocation.getArgument(0));
+                        Document set = getSet(invocation.getArgument(1));
+                        ShardLease lease = leases.get(shard);
+                        if (lease != null && !lease.getOwner().equals(set.getString("owner")) && lease.getExpiresAt().isAfter(now)) {
+                            throw new DuplicateKeyException("duplicate key");
+                        }
+                        ShardLease claimed = new ShardLease(shard, set.getString("owner"), set.get("expiresAt", Instant.class), now);
+                        leases.put(shard, claimed);
+                        return claimed;
+                    });
+            when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(ShardLease.class))).thenAnswer(invocation -> {
+                Document query = invocation.getArgument(0, Query.class).getQueryObject();
+                ShardLease lease = leases.get(query.getInteger("_id"));
+                if (lease != null && lease.getOwner().equals(query.getString("owner"))) {
+                    lease.setExpiresAt(Instant.EPOCH);
+                }
+                return null;
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> T getId(Query query) {
+            return (T) query.getQueryObject().get("_id");
+        }
+
+        private Document getSet(Update update) {
+            return (Document) update.getUpdateObject().get("$set");
+        }
+    }
+
+    private void claimFreeShards() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(ShardLease.class)))
+                .thenAnswer(invocation -> {
+                    Document set = (Document) invocation.getArgument(1, Update.class).getUpdateObject().get("$set");
+                    return new ShardLease(0, set.getString("owner"), now.plusSeconds(60), now);
+                });
+    }
+}
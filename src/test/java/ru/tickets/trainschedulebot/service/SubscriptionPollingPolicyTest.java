@@ -0,0 +1,74 @@
+package ru.tickets.trainschedulebot.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.tickets.trainschedulebot.model.Car;
+import ru.tickets.trainschedulebot.model.UserTicketsSubscription;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SubscriptionPollingPolicyTest {
+
+    private static final Instant NOW = Instant.parse("2024-03-01T09:00:00Z");
+
+    private SubscriptionPollingPolicy pollingPolicy;
+
+    @BeforeEach
+    void setUp() {
+        pollingPolicy = new SubscriptionPollingPolicy(Duration.ofMinutes(30), Duration.ofHours(12), 0.05, Duration.ofHours(24));
+    }
+
+    @Test
+    void testIntervalIsFractionOfTimeToDeparture() {
+        // 12:00 in Moscow is 09:00 UTC, so the train departs in 10 days
+        UserTicketsSubscription subscription = createSubscription("11.03.2024", "12:00");
+
+        assertEquals(Duration.ofHours(12), pollingPolicy.getPollInterval(subscription, NOW));
+        assertEquals(Duration.ofHours(12), pollingPolicy.getPollInterval(createSubscription("01.06.2024", "12:00"), NOW));
+        assertEquals(Duration.ofMinutes(36), pollingPolicy.getPollInterval(createSubscription("01.03.2024", "12:00"),
+                NOW.minus(Duration.ofHours(12))));
+    }
+
+    @Test
+    void testIntervalIsBoundedByMinimum() {
+        UserTicketsSubscription subscription = createSubscription("01.03.2024", "13:00");
+
+        assertEquals(Duration.ofMinutes(30), pollingPolicy.getPollInterval(subscription, NOW));
+        assertEquals(Duration.ofMinutes(30), pollingPolicy.getPollInterval(subscription, NOW.plus(Duration.ofDays(1))));
+    }
+
+    @Test
+    void testIntervalIsHalvedAfterPriceChange() {
+        UserTicketsSubscription subscription = createSubscription("03.03.2024", "12:00");
+        subscription.setLastPriceChangeAt(NOW.minus(Duration.ofHours(1)));
+
+        assertEquals(Duration.ofMinutes(72), pollingPolicy.getPollInterval(subscription, NOW));
+
+        subscription.setLastPriceChangeAt(NOW.minus(Duration.ofDays(2)));
+        assertEquals(Duration.ofMinutes(144), pollingPolicy.getPollInterval(subscription, NOW));
+    }
+
+    @Test
+    void testInvalidDateIsPolledRarely() {
+        assertEquals(Duration.ofHours(12), pollingPolicy.getPollInterval(createSubscription("2024-03-01", "12:00"), NOW));
+    }
+
+    @Test
+    void testNextPollIsRandomizedAroundInterval() {
+        UserTicketsSubscription subscription = createSubscription("11.03.2024", "12:00");
+
+        for (int i = 0; i < 100; i++) {
+            Duration interval = Duration.between(NOW, pollingPolicy.getNextPollAt(subscription, NOW));
+            assertTrue(interval.compareTo(Duration.ofMinutes(648)) >= 0 && interval.compareTo(Duration.ofMinutes(792)) <= 0);
+        }
+    }
+
+    private UserTicketsSubscription createSubscription(String dateDepart, String timeDepart) {
+        return new UserTicketsSubscription(123456789, "001А", "Express", "Москва", "Казань",
+                dateDepart, dateDepart, timeDepart, timeDepart, List.of(new Car("Плац", 10, 3000)));
+    }
+}
@@ -3,14 +3,30 @@ package ru.tickets.trainschedulebot.service;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 import ru.tickets.trainschedulebot.model.Car;
+import ru.tickets.trainschedulebot.model.OutboxNotification;
+import ru.tickets.trainschedulebot.model.SubscriptionRoute;
+import ru.tickets.trainschedulebot.model.Train;
 import ru.tickets.trainschedulebot.model.UserTicketsSubscription;
 
+import java.time.Instant;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.function.Predicate;
 
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -19,6 +35,33 @@ class SubscriptionProcessServiceTest {
     @Mock
     private SubscriptionService subscriptionService;
 
+    @Mock
+    private StationCodeService stationCodeService;
+
+    @Mock
+    private TrainTicketsGetInfoService trainTicketsGetInfoService;
+
+    @Mock
+    private ShardLeaseService shardLeaseService;
+
+    @Mock
+    private ReplyMessagesService messagesService;
+
+    @Mock
+    private NotificationOutboxService notificationOutboxService;
+
+    @Mock
+    private PriceHistoryService priceHistoryService;
+
+    @Mock
+    private SubscriptionPollingPolicy pollingPolicy;
+
+    @Mock
+    private SubscriptionWriteBuffer writeBuffer;
+
+    @Spy
+    private Scheduler subscriptionProcessingScheduler = Schedulers.immediate();
+
     @InjectMocks
     private SubscriptionProcessService subscriptionProcessService;
 
@@ -34,14 +77,201 @@ class SubscriptionProcessServiceTest {
                 "Station Y", "2024-03-03", "2024-03-04", "10:00", "18:00",
                 List.of(new Car("Type1", 100, 5000)));
 
+        lenient().when(subscriptionService.newWriteBuffer()).thenReturn(writeBuffer);
+        lenient().when(shardLeaseService.ownsRoute(any())).thenReturn(true);
     }
 
     @Test
     void testProcessAllUsersSubscriptions() {
-        List<UserTicketsSubscription> subscriptions = List.of(
-                subscription1,subscription2);
-        when(subscriptionService.getAllSubscriptions()).thenReturn(subscriptions);
+        SubscriptionRoute route = SubscriptionRoute.of(subscription1);
+        when(subscriptionService.findDueRoutes(any(Instant.class), anyInt(), any())).thenReturn(List.of(route));
+        when(subscriptionService.getRouteSubscriptionsAsync(route)).thenReturn(Flux.just(subscription1));
+        subscriptionProcessService.processAllUsersSubscriptions();
+        verify(subscriptionService, times(1)).findDueRoutes(any(Instant.class), anyInt(), any());
+        verify(subscriptionService, times(1)).getRouteSubscriptionsAsync(route);
+    }
+
+    @Test
+    void testSubscriptionsOfSameRouteShareOneRequest() {
+        UserTicketsSubscription firstTrainSubscription = new UserTicketsSubscription(123456789, "001А", "Express", "Москва",
+                "Казань", "01.03.2099", "02.03.2099", "08:00", "16:00", List.of(new Car("Плац", 10, 3000)));
+        UserTicketsSubscription secondTrainSubscription = new UserTicketsSubscription(987654321, "002А", "Fast Train", "Москва",
+                "Казань", "01.03.2099", "02.03.2099", "10:00", "18:00", List.of(new Car("Купе", 5, 5000)));
+        List<Train> actualTrains = List.of(
+                new Train("001А", "Express", "Москва", "Казань", "01.03.2099", "02.03.2099", "08:00", "16:00",
+                        List.of(new Car("Плац", 10, 3000)), "08:00"),
+                new Train("002А", "Fast Train", "Москва", "Казань", "01.03.2099", "02.03.2099", "10:00", "18:00",
+                        List.of(new Car("Купе", 5, 5000)), "08:00"));
+        SubscriptionRoute route = SubscriptionRoute.of(firstTrainSubscription);
+
+        when(subscriptionService.findDueRoutes(any(Instant.class), anyInt(), any())).thenReturn(List.of(route));
+        when(subscriptionService.getRouteSubscriptionsAsync(route)).thenReturn(Flux.just(firstTrainSubscription, secondTrainSubscription));
+        when(stationCodeService.getStationCode(anyString())).thenReturn(2000000);
+        when(trainTicketsGetInfoService.getTrainTicketsListAsync(anyInt(), anyInt(), any(LocalDate.class),
+                any(RzdUpstreamGuard.Bulkhead.class))).thenReturn(Mono.just(actualTrains));
+
+        subscriptionProcessService.processAllUsersSubscriptions();
+
+        verify(trainTicketsGetInfoService, times(1)).getTrainTicketsListAsync(anyInt(), anyInt(),
+                eq(LocalDate.of(2099, 3, 1)), eq(RzdUpstreamGuard.Bulkhead.BACKGROUND));
+        verify(writeBuffer, never()).delete(any(), any(), any());
+    }
+
+    @Test
+    void testProcessedSubscriptionsAreRescheduled() {
+        subscription1.setId("1");
+        Instant nextPollAt = Instant.parse("2024-03-01T12:00:00Z");
+        SubscriptionRoute route = SubscriptionRoute.of(subscription1);
+        when(subscriptionService.findDueRoutes(any(Instant.class), anyInt(), any())).thenReturn(List.of(route));
+        when(subscriptionService.getRouteSubscriptionsAsync(route)).thenReturn(Flux.just(subscription1));
+        when(pollingPolicy.getNextPollAt(eq(subscription1), any(Instant.class))).thenReturn(nextPollAt);
+
+        subscriptionProcessService.processAllUsersSubscriptions();
+
+        verify(writeBuffer, times(1)).scheduleNextPoll(subscription1, nextPollAt);
+        verify(writeBuffer, times(1)).flush();
+    }
+
+    @Test
+    void testSubscriptionsAreKeptWhenNoTrainsAreReceived() {
+        UserTicketsSubscription subscription = new UserTicketsSubscription(123456789, "001А", "Express", "Москва",
+                "Казань", "01.03.2099", "02.03.2099", "08:00", "16:00", List.of(new Car("Плац", 10, 3000)));
+        subscription.setId("1");
+        SubscriptionRoute route = SubscriptionRoute.of(subscription);
+        when(subscriptionService.findDueRoutes(any(Instant.class), anyInt(), any())).thenReturn(List.of(route));
+        when(subscriptionService.getRouteSubscriptionsAsync(route)).thenReturn(Flux.just(subscription));
+        when(stationCodeService.getStationCode(anyString())).thenReturn(2000000);
+        when(trainTicketsGetInfoService.getTrainTicketsListAsync(anyInt(), anyInt(), any(LocalDate.class),
+                any(RzdUpstreamGuard.Bulkhead.class))).thenReturn(Mono.just(List.of()));
+
+        subscriptionProcessService.processAllUsersSubscriptions();
+
+        verify(writeBuffer, never()).delete(any(), any(), any());
+        verify(writeBuffer, times(1)).scheduleNextPoll(eq(subscription), any());
+    }
+
+    @Test
+    void testSubscriptionIsKeptWhenItsTrainIsMissing() {
+        UserTicketsSubscription subscription = new UserTicketsSubscription(123456789, "001А", "Express", "Москва",
+                "Казань", "01.03.2099", "02.03.2099", "08:00", "16:00", List.of(new Car("Плац", 10, 3000)));
+        subscription.setId("1");
+        List<Train> actualTrains = List.of(
+                new Train("002А", "Fast Train", "Москва", "Казань", "01.03.2099", "02.03.2099", "10:00", "18:00",
+                        List.of(new Car("Купе", 5, 5000)), "08:00"));
+        SubscriptionRoute route = SubscriptionRoute.of(subscription);
+        when(subscriptionService.findDueRoutes(any(Instant.class), anyInt(), any())).thenReturn(List.of(route));
+        when(subscriptionService.getRouteSubscriptionsAsync(route)).thenReturn(Flux.just(subscription));
+        when(stationCodeService.getStationCode(anyString())).thenReturn(2000000);
+        when(trainTicketsGetInfoService.getTrainTicketsListAsync(anyInt(), anyInt(), any(LocalDate.class),
+                any(RzdUpstreamGuard.Bulkhead.class))).thenReturn(Mono.just(actualTrains));
+
         subscriptionProcessService.processAllUsersSubscriptions();
-        verify(subscriptionService, times(1)).getAllSubscriptions();
+
+        verify(writeBuffer, never()).delete(any(), any(), any());
+        verify(writeBuffer, never()).updateSubscribedCars(any(), any());
+        verify(writeBuffer, times(1)).scheduleNextPoll(eq(subscription), any());
+    }
+
+    @Test
+    void testSubscriptionsAreKeptWhenTrainsCannotBeReceived() {
+        UserTicketsSubscription subscription = new UserTicketsSubscription(123456789, "001А", "Express", "Москва",
+                "Казань", "01.03.2099", "02.03.2099", "08:00", "16:00", List.of(new Car("Плац", 10, 3000)));
+        subscription.setId("1");
+        SubscriptionRoute route = SubscriptionRoute.of(subscription);
+        when(subscriptionService.findDueRoutes(any(Instant.class), anyInt(), any())).thenReturn(List.of(route));
+        when(subscriptionService.getRouteSubscriptionsAsync(route)).thenReturn(Flux.just(subscription));
+        when(stationCodeService.getStationCode(anyString())).thenReturn(2000000);
+        when(trainTicketsGetInfoService.getTrainTicketsListAsync(anyInt(), anyInt(), any(LocalDate.class),
+                any(RzdUpstreamGuard.Bulkhead.class)))
+                .thenReturn(Mono.error(new RidPollingService.PollingExhaustedException("RID 1 is still pending")));
+
+        subscriptionProcessService.processAllUsersSubscriptions();
+
+        verify(writeBuffer, never()).delete(any(), any(), any());
+        verify(writeBuffer, times(1)).scheduleNextPoll(eq(subscription), any());
+    }
+
+    @Test
+    void testOnlyOwnedRoutesAreRequested() {
+        Predicate<SubscriptionRoute> ownedRoutes = route -> false;
+        when(shardLeaseService.ownedRoutes()).thenReturn(ownedRoutes);
+
+        subscriptionProcessService.processAllUsersSubscriptions();
+
+        verify(subscriptionService, times(1)).findDueRoutes(any(Instant.class), anyInt(), same(ownedRoutes));
+        verifyNoInteractions(trainTicketsGetInfoService, stationCodeService);
+    }
+
+    @Test
+    void testRoutesNoLongerOwnedAreSkipped() {
+        SubscriptionRoute route = SubscriptionRoute.of(subscription1);
+        when(subscriptionService.findDueRoutes(any(Instant.class), anyInt(), any())).thenReturn(List.of(route));
+        when(shardLeaseService.ownsRoute(route)).thenReturn(false);
+
+        subscriptionProcessService.processAllUsersSubscriptions();
+
+        verify(subscriptionService, never()).getRouteSubscriptionsAsync(any());
+        verifyNoInteractions(trainTicketsGetInfoService, stationCodeService);
+    }
+
+    @Test
+    void testDepartedSubscriptionsAreRemovedWithoutRequests() {
+        UserTicketsSubscription departedSubscription = new UserTicketsSubscription(123456789, "001А", "Express", "Москва",
+                "Казань", "01.03.2024", "02.03.2024", "08:00", "16:00", List.of(new Car("Плац", 10, 3000)));
+        departedSubscription.setId("1");
+        SubscriptionRoute route = SubscriptionRoute.of(departedSubscription);
+        when(subscriptionService.findDueRoutes(any(Instant.class), anyInt(), any())).thenReturn(List.of(route));
+        when(subscriptionService.getRouteSubscriptionsAsync(route)).thenReturn(Flux.just(departedSubscription));
+
+        subscriptionProcessService.processAllUsersSubscriptions();
+
+        verify(writeBuffer, times(1)).delete(eq(departedSubscription), eq("trainHasDeparted:1"), any());
+        verify(writeBuffer, never()).scheduleNextPoll(any(), any());
+        verifyNoInteractions(trainTicketsGetInfoService, stationCodeService);
+    }
+
+    @Test
+    void testRemoveDepartedSubscriptions() {
+        subscription1.setId("1");
+        subscription2.setId("2");
+        when(subscriptionService.findDepartedSubscriptions(any(Instant.class), eq(500)))
+                .thenReturn(List.of(subscription1, subscription2));
+        when(subscriptionService.removeDepartedSubscriptions(List.of("1", "2"))).thenReturn(2L);
+
+        subscriptionProcessService.removeDepartedSubscriptions();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<OutboxNotification>> notifications = ArgumentCaptor.forClass(List.class);
+        InOrder inOrder = inOrder(notificationOutboxService, subscriptionService);
+        inOrder.verify(notificationOutboxService).enqueueAllOnce(notifications.capture());
+        inOrder.verify(subscriptionService).removeDepartedSubscriptions(List.of("1", "2"));
+        assertEquals(List.of("trainHasDeparted:1", "trainHasDeparted:2"),
+                notifications.getValue().stream().map(OutboxNotification::getId).toList());
+        assertEquals(List.of(subscription1.getChatId(), subscription2.getChatId()),
+                notifications.getValue().stream().map(OutboxNotification::getChatId).toList());
+        verify(subscriptionService, times(1)).findDepartedSubscriptions(any(Instant.class), anyInt());
+        verifyNoInteractions(trainTicketsGetInfoService, stationCodeService);
+    }
+
+    @Test
+    void testDepartedSubscriptionIsKeptWhenNotificationCannotBeStored() {
+        subscription1.setId("1");
+        when(subscriptionService.findDepartedSubscriptions(any(Instant.class), anyInt())).thenReturn(List.of(subscription1));
+        doThrow(new DataAccessResourceFailureException("timeout"))
+                .when(notificationOutboxService).enqueueAllOnce(anyList());
+
+        subscriptionProcessService.removeDepartedSubscriptions();
+
+        verify(subscriptionService, never()).removeDepartedSubscriptions(anyCollection());
+    }
+
+    @Test
+    void testNoDepartedSubscriptionsMakeNoWrites() {
+        when(subscriptionService.findDepartedSubscriptions(any(Instant.class), anyInt())).thenReturn(List.of());
+
+        subscriptionProcessService.removeDepartedSubscriptions();
+
+        verifyNoInteractions(notificationOutboxService);
+        verify(subscriptionService, never()).removeDepartedSubscriptions(anyCollection());
     }
-}
\ No newline at end of file
+}
@@ -1,19 +1,36 @@
 package ru.tickets.trainschedulebot.service;
 
+import com.mongodb.client.result.DeleteResult;
+import org.bson.Document;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import ru.tickets.trainschedulebot.cache.SubscriptionIndex;
 import ru.tickets.trainschedulebot.model.Car;
+import ru.tickets.trainschedulebot.model.SubscriptionRoute;
+import ru.tickets.trainschedulebot.model.TrainDeparture;
 import ru.tickets.trainschedulebot.model.UserTicketsSubscription;
+import ru.tickets.trainschedulebot.repository.ReactiveUserSubscriptionRepository;
 import ru.tickets.trainschedulebot.repository.UserSubscriptionRepository;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -22,6 +39,18 @@ class SubscriptionServiceTest {
     @Mock
     private UserSubscriptionRepository subscriptionRepository;
 
+    @Mock
+    private ReactiveUserSubscriptionRepository reactiveSubscriptionRepository;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Mock
+    private SubscriptionIndex subscriptionIndex;
+
     @InjectMocks
     private SubscriptionService subscriptionService;
 
@@ -39,24 +68,64 @@ class SubscriptionServiceTest {
     }
 
     @Test
-    void testGetAllSubscriptions() {
-        List<UserTicketsSubscription> subscriptions = List.of(subscription1, subscription2);
-        when(subscriptionRepository.findAll()).thenReturn(subscriptions);
-        List<UserTicketsSubscription> result = subscriptionService.getAllSubscriptions();
-        assertEquals(subscriptions, result);
+    void testFindDueRoutes() {
+        UserTicketsSubscription sameRouteSubscription = new UserTicketsSubscription(111111111, "789", "Night Train", "Station A",
+                "Station B", "2024-03-01", "2024-03-02", "22:00", "06:00", List.of(new Car("Type1", 100, 5000)));
+        when(mongoTemplate.stream(any(Query.class), eq(UserTicketsSubscription.class)))
+                .thenReturn(Stream.of(subscription1, sameRouteSubscription, subscription2));
+
+        List<SubscriptionRoute> result = subscriptionService.findDueRoutes(Instant.now(), 10, route -> true);
+
+        assertEquals(List.of(SubscriptionRoute.of(subscription1), SubscriptionRoute.of(subscription2)), result);
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).stream(query.capture(), eq(UserTicketsSubscription.class));
+        assertEquals(Integer.valueOf(500), query.getValue().getMeta().getCursorBatchSize());
+        assertEquals(new Document("nextPollAt", 1), query.getValue().getSortObject());
+        assertEquals(new Document("stationDepart", 1).append("stationArrival", 1).append("dateDepart", 1),
+                query.getValue().getFieldsObject());
     }
 
     @Test
-    void testSaveSubscription() {
-        subscriptionService.saveUserSubscription(subscription1);
-        verify(subscriptionRepository, times(1)).save(subscription1);
+    void testFindDueRoutesIsLimitedAndFiltered() {
+        when(mongoTemplate.stream(any(Query.class), eq(UserTicketsSubscription.class)))
+                .thenReturn(Stream.of(subscription1, subscription2));
+
+        assertEquals(List.of(SubscriptionRoute.of(subscription1)),
+                subscriptionService.findDueRoutes(Instant.now(), 1, route -> true));
     }
 
     @Test
-    void testDeleteUserSubscriptionById() {
-        String subscriptionId = "1234e7";
-        subscriptionService.deleteUserSubscriptionById(subscriptionId);
-        verify(subscriptionRepository, times(1)).deleteById(subscriptionId);
+    void testFindDueRoutesSkipsFilteredRoutes() {
+        when(mongoTemplate.stream(any(Query.class), eq(UserTicketsSubscription.class)))
+                .thenReturn(Stream.of(subscription1, subscription2));
+
+        assertEquals(List.of(SubscriptionRoute.of(subscription2)),
+                subscriptionService.findDueRoutes(Instant.now(), 10, route -> route.stationDepart().equals("Station X")));
+    }
+
+    @Test
+    void testFindDepartedSubscriptions() {
+        when(mongoTemplate.find(any(Query.class), eq(UserTicketsSubscription.class))).thenReturn(List.of(subscription1, subscription2));
+
+        assertEquals(List.of(subscription1, subscription2), subscriptionService.findDepartedSubscriptions(Instant.now(), 500));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(1)).find(query.capture(), eq(UserTicketsSubscription.class));
+        assertEquals(new Document("departureAt", 1), query.getValue().getSortObject());
+        assertEquals(500, query.getValue().getLimit());
+    }
+
+    @Test
+    void testRemoveDepartedSubscriptions() {
+        when(mongoTemplate.remove(any(Query.class), eq(UserTicketsSubscription.class))).thenReturn(DeleteResult.acknowledged(1));
+
+        assertEquals(1, subscriptionService.removeDepartedSubscriptions(List.of("id1", "id2")));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(1)).remove(query.capture(), eq(UserTicketsSubscription.class));
+        assertEquals(new Document("$in", List.of("id1", "id2")), query.getValue().getQueryObject().get("_id"));
+        verify(subscriptionIndex).remove("id1");
+        verify(subscriptionIndex).remove("id2");
     }
 
     @Test
@@ -79,50 +148,140 @@ class SubscriptionServiceTest {
     }
 
     @Test
-    void testGetUserSubscriptions() {
-        long chatId = 123456789L;
-        List<UserTicketsSubscription> subscriptions = List.of(subscription1);
-        when(subscriptionRepository.findByChatId(chatId)).thenReturn(List.of(subscription1));
-        List<UserTicketsSubscription> result = subscriptionService.getUsersSubscriptionsByChatId(chatId);
-        assertEquals(subscriptions, result);
+    void testGetSubscriptionIds() {
+        subscription1.setId("id1");
+        UserTicketsSubscription otherDate = new UserTicketsSubscription(123456789, "123", "Express", "Station A",
+                "Station B", "2024-03-03", "2024-03-04", "08:00", "16:00", List.of());
+        otherDate.setId("id2");
+        when(mongoTemplate.find(any(Query.class), eq(UserTicketsSubscription.class))).thenReturn(List.of(subscription1, otherDate));
+
+        TrainDeparture subscribed = new TrainDeparture("123", "2024-03-01");
+        TrainDeparture notSubscribed = new TrainDeparture("456", "2024-03-03");
+        Map<TrainDeparture, String> result = subscriptionService.getSubscriptionIds(123456789, List.of(subscribed, notSubscribed));
+
+        assertEquals(Map.of(subscribed, "id1"), result);
+
+        ArgumentCaptor<Query> queryCaptor = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(queryCaptor.capture(), eq(UserTicketsSubscription.class));
+        Document queryObject = queryCaptor.getValue().getQueryObject();
+        assertEquals(123456789L, queryObject.get("chatId"));
+        assertTrue(queryObject.get("trainNumber", Document.class).containsKey("$in"));
+        assertTrue(queryObject.get("dateDepart", Document.class).containsKey("$in"));
     }
 
     @Test
-    void testGetSubscriptionIdByTrainNumberAndDateDepart() {
-        subscription1.setId("12345e7");
-        String trainNumber = subscription1.getTrainNumber();
-        String dateDepart = subscription1.getDateDepart();
-        when(subscriptionRepository.findByTrainNumberAndDateDepart(trainNumber, dateDepart)).thenReturn(subscription1);
-        String result = subscriptionService.getSubscriptionIdByTrainNumberAndDateDepart(trainNumber, dateDepart);
-        assertEquals(subscription1.getId(), result);
+    void testGetSubscriptionIdsOfNoTrains() {
+        assertTrue(subscriptionService.getSubscriptionIds(123456789, List.of()).isEmpty());
+        verifyNoInteractions(mongoTemplate);
     }
 
     @Test
-    void testGetDateDepartBySubscriptionId() {
-        String subscriptionId = "1234e7";
-        String dateDepart = subscription1.getDateDepart();
-        when(subscriptionRepository.findById(subscriptionId)).thenReturn(Optional.of(subscription1));
-        String result = subscriptionService.getDateDepartBySubscriptionId(subscriptionId);
-        assertEquals(dateDepart, result);
+    void testRemoveUserSubscription() {
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(UserTicketsSubscription.class))).thenReturn(subscription1);
+
+        Optional<TrainDeparture> result = subscriptionService.removeUserSubscription(123456789, "id1");
+
+        assertEquals(Optional.of(new TrainDeparture("123", "2024-03-01")), result);
+        ArgumentCaptor<Query> queryCaptor = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findAndRemove(queryCaptor.capture(), eq(UserTicketsSubscription.class));
+        Query query = queryCaptor.getValue();
+        assertEquals(new Document("_id", "id1").append("chatId", 123456789L), query.getQueryObject());
+        assertEquals(new Document("trainNumber", 1).append("dateDepart", 1), query.getFieldsObject());
+        verifyNoInteractions(subscriptionRepository);
     }
 
     @Test
-    void testIsUserSubscribed() {
-        String trainNumber = subscription2.getTrainNumber();
-        String dateDepart = subscription2.getDateDepart();
-        List<UserTicketsSubscription> subscriptions = List.of(subscription1, subscription2);
-        when(subscriptionRepository.findAll()).thenReturn(subscriptions);
-        boolean result = subscriptionService.isUserSubscribed(trainNumber, dateDepart);
-        assertTrue(result);
+    void testRemoveMissingUserSubscription() {
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(UserTicketsSubscription.class))).thenReturn(null);
+
+        assertTrue(subscriptionService.removeUserSubscription(123456789, "id1").isEmpty());
     }
 
     @Test
-    void testUserIsBotSubscribed() {
-        String trainNumber = "12345";
-        String dateDepart = "01.01.2024";
-        List<UserTicketsSubscription> subscriptions = List.of(subscription1, subscription2);
-        when(subscriptionRepository.findAll()).thenReturn(subscriptions);
-        boolean result = subscriptionService.isUserSubscribed(trainNumber, dateDepart);
-        assertFalse(result);
+    void testGetRouteSubscriptionsAsync() {
+        when(reactiveMongoTemplate.find(any(Query.class), eq(UserTicketsSubscription.class))).thenReturn(Flux.just(subscription1));
+
+        StepVerifier.create(subscriptionService.getRouteSubscriptionsAsync(SubscriptionRoute.of(subscription1)))
+                .expectNext(subscription1)
+                .verifyComplete();
+
+        ArgumentCaptor<Query> queryCaptor = ArgumentCaptor.forClass(Query.class);
+        verify(reactiveMongoTemplate).find(queryCaptor.capture(), eq(UserTicketsSubscription.class));
+        assertEquals(new Document("stationDepart", "Station A").append("stationArrival", "Station B")
+                .append("dateDepart", "2024-03-01"), queryCaptor.getValue().getQueryObject());
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testGetRouteSubscriptionsAsyncReadsDatabaseWhenIndexIsLoaded() {
+        lenient().when(subscriptionIndex.isLoaded()).thenReturn(true);
+        when(reactiveMongoTemplate.find(any(Query.class), eq(UserTicketsSubscription.class))).thenReturn(Flux.just(subscription1));
+
+        StepVerifier.create(subscriptionService.getRouteSubscriptionsAsync(SubscriptionRoute.of(subscription1)))
+                .expectNext(subscription1)
+                .verifyComplete();
+
+        verify(reactiveMongoTemplate).find(any(Query.class), eq(UserTicketsSubscription.class));
+    }
+
+    @Test
+    void testHasTicketsSubscriptionAsync() {
+        when(reactiveSubscriptionRepository.existsByChatIdAndTrainNumberAndDateDepart(123456789L, "123", "2024-03-01"))
+                .thenReturn(Mono.just(true));
+
+        StepVerifier.create(subscriptionService.hasTicketsSubscriptionAsync(subscription1))
+                .expectNext(true)
+                .verifyComplete();
+        verifyNoInteractions(subscriptionRepository);
+    }
+
+    @Test
+    void testSaveUserSubscriptionAsync() {
+        when(reactiveSubscriptionRepository.save(subscription1)).thenAnswer(invocation -> {
+            UserTicketsSubscription savedSubscription = invocation.getArgument(0);
+            savedSubscription.setId("id1");
+            return Mono.just(savedSubscription);
+        });
+
+        StepVerifier.create(subscriptionService.saveUserSubscriptionAsync(subscription1))
+                .expectNextMatches(subscription -> "id1".equals(subscription.getId()))
+                .verifyComplete();
+    }
+
+    @Test
+    void testGetUsersSubscriptionsByChatIdAsync() {
+        when(reactiveSubscriptionRepository.findByChatId(123456789L)).thenReturn(Flux.just(subscription1));
+
+        StepVerifier.create(subscriptionService.getUsersSubscriptionsByChatIdAsync(123456789))
+                .expectNext(subscription1)
+                .verifyComplete();
+        verifyNoInteractions(subscriptionRepository);
+    }
+
+    @Test
+    void testReadsAreServedFromLoadedIndex() {
+        subscription1.setId("id1");
+        when(subscriptionIndex.isLoaded()).thenReturn(true);
+        when(subscriptionIndex.getByChatId(123456789)).thenReturn(List.of(subscription1));
+        when(subscriptionIndex.getByTrain(TrainDeparture.of(subscription1))).thenReturn(List.of(subscription1));
+
+        assertEquals(List.of(subscription1), subscriptionService.getUsersSubscriptionsByChatIdAsync(123456789).collectList().block());
+        assertTrue(subscriptionService.hasTicketsSubscription(subscription1));
+        assertEquals(Map.of(TrainDeparture.of(subscription1), "id1"),
+                subscriptionService.getSubscriptionIds(123456789, List.of(TrainDeparture.of(subscription1))));
+        assertTrue(subscriptionService.getSubscriptionIds(987654321, List.of(TrainDeparture.of(subscription1))).isEmpty());
+        verifyNoInteractions(subscriptionRepository, reactiveSubscriptionRepository, mongoTemplate);
+    }
+
+    @Test
+    void testWritesAreWrittenThroughToIndex() {
+        when(reactiveSubscriptionRepository.save(subscription1)).thenReturn(Mono.just(subscription1));
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(UserTicketsSubscription.class))).thenReturn(subscription2);
+
+        subscriptionService.saveUserSubscriptionAsync(subscription1).block();
+        subscriptionService.removeUserSubscription(987654321, "id2");
+
+        verify(subscriptionIndex).put(subscription1);
+        verify(subscriptionIndex).remove("id2");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,206 @@
+package ru.tickets.trainschedulebot.service;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import ru.tickets.trainschedulebot.cache.SubscriptionIndex;
+import ru.tickets.trainschedulebot.model.OutboxNotification;
+import ru.tickets.trainschedulebot.model.UserTicketsSubscription;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SubscriptionWriteBufferTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
+    @Mock
+    private BulkOperations outboxOperations;
+
+    @Mock
+    private SubscriptionIndex subscriptionIndex;
+
+    private SubscriptionWriteBuffer writeBuffer;
+
+    @BeforeEach
+    void setUp() {
+        writeBuffer = new SubscriptionWriteBuffer(mongoTemplate, subscriptionIndex, 2);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UserTicketsSubscription.class)).thenReturn(bulkOperations);
+        lenient().when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, OutboxNotification.class)).thenReturn(outboxOperations);
+    }
+
+    @Test
+    void testWritesAreFlushedInBatches() {
+        when(bulkOperations.execute()).thenReturn(mock(BulkWriteResult.class));
+        UserTicketsSubscription subscription = createSubscription("1");
+
+        writeBuffer.scheduleNextPoll(subscription, Instant.now());
+        writeBuffer.scheduleNextPoll(subscription, Instant.now());
+        writeBuffer.scheduleNextPoll(subscription, Instant.now());
+
+        verify(bulkOperations, times(1)).execute();
+
+        writeBuffer.flush();
+
+        verify(bulkOperations, times(2)).execute();
+        verify(bulkOperations, times(3)).updateOne(any(Query.class), any(UpdateDefinition.class));
+        assertEquals(3, writeBuffer.getWrites());
+        assertEquals(0, writeBuffer.getFailedWrites());
+    }
+
+    @Test
+    void testFailedWritesAreCounted() {
+        BulkOperationException exception = mock(BulkOperationException.class);
+        when(exception.getErrors()).thenReturn(List.of(new BulkWriteError(11000, "duplicate key", new BsonDocument(), 1)));
+        when(bulkOperations.execute()).thenThrow(exception);
+
+        writeBuffer.delete(createSubscription("1"), "trainHasDeparted:1", "Поезд ушел");
+        writeBuffer.delete(createSubscription("2"), "trainHasDeparted:2", "Поезд ушел");
+
+        assertEquals(2, writeBuffer.getWrites());
+        assertEquals(1, writeBuffer.getFailedWrites());
+        verify(subscriptionIndex, times(1)).remove("1");
+        verify(subscriptionIndex, never()).remove("2");
+    }
+
+    @Test
+    void testAppliedWritesAreWrittenThroughToIndex() {
+        BulkWriteResult result = mock(BulkWriteResult.class);
+        when(result.getMatchedCount()).thenReturn(2);
+        when(bulkOperations.execute()).thenReturn(result);
+        UserTicketsSubscription updated = createSubscription("1");
+
+        writeBuffer.updateSubscribedCars(updated, "Изменились цены");
+        writeBuffer.scheduleNextPoll(updated, Instant.now());
+        writeBuffer.delete(createSubscription("2"), "trainHasDeparted:2", "Поезд ушел");
+        writeBuffer.flush();
+
+        verify(subscriptionIndex, times(1)).put(updated);
+        verify(subscriptionIndex, times(1)).remove("2");
+        verifyNoMoreInteractions(subscriptionIndex);
+    }
+
+    @Test
+    void testFlushOfEmptyBufferDoesNothing() {
+        reset(mongoTemplate);
+
+        writeBuffer.flush();
+
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testNotificationsAreStoredBeforeWrites() {
+        when(bulkOperations.execute()).thenReturn(mock(BulkWriteResult.class));
+
+        writeBuffer.updateSubscribedCars(createSubscription("1"), "Изменились цены");
+        writeBuffer.delete(createSubscription("2"), "trainHasDeparted:2", "Поезд ушел");
+
+        InOrder inOrder = inOrder(outboxOperations, bulkOperations);
+        ArgumentCaptor<Query> notificationQueries = ArgumentCaptor.forClass(Query.class);
+        inOrder.verify(outboxOperations, times(2)).upsert(notificationQueries.capture(), any(Update.class));
+        inOrder.verify(outboxOperations).execute();
+        inOrder.verify(bulkOperations).execute();
+        assertEquals("trainHasDeparted:2", notificationQueries.getAllValues().get(1).getQueryObject().get("_id"));
+    }
+
+    @Test
+    void testDepartedTrainNoticeIsOnlySetOnInsert() {
+        when(bulkOperations.execute()).thenReturn(mock(BulkWriteResult.class));
+
+        writeBuffer.delete(createSubscription("2"), "trainHasDeparted:2", "Поезд ушел");
+        writeBuffer.flush();
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(outboxOperations).upsert(any(Query.class), update.capture());
+        assertEquals(Set.of("$setOnInsert"), update.getValue().getUpdateObject().keySet());
+    }
+
+    @Test
+    void testWritesAreDroppedWhenNotificationsCannotBeStored() {
+        when(outboxOperations.execute()).thenThrow(new DataAccessResourceFailureException("down"));
+        when(bulkOperations.execute()).thenReturn(mock(BulkWriteResult.class));
+
+        writeBuffer.updateSubscribedCars(createSubscription("1"), "Изменились цены");
+        writeBuffer.scheduleNextPoll(createSubscription("1"), Instant.now());
+
+        verify(bulkOperations, times(1)).updateOne(any(Query.class), any(UpdateDefinition.class));
+        assertEquals(1, writeBuffer.getWrites());
+        assertEquals(1, writeBuffer.getFailedWrites());
+    }
+
+    @Test
+    void testNotificationsOfUnmatchedUpdatesAreDiscarded() {
+        when(bulkOperations.execute()).thenReturn(mock(BulkWriteResult.class));
+        UserTicketsSubscription unsubscribed = createSubscription("1");
+        UserTicketsSubscription updated = createSubscription("2");
+        when(mongoTemplate.find(any(Query.class), eq(UserTicketsSubscription.class))).thenReturn(List.of(updated));
+
+        writeBuffer.updateSubscribedCars(unsubscribed, "Изменились цены");
+        writeBuffer.updateSubscribedCars(updated, "Изменились цены");
+
+        List<Object> notificationIds = captureNotificationIds();
+        ArgumentCaptor<Query> discarded = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).remove(discarded.capture(), eq(OutboxNotification.class));
+        assertEquals(new Document("_id", new Document("$in", List.of(notificationIds.get(0)))), discarded.getValue().getQueryObject());
+        verify(subscriptionIndex).put(updated);
+        verify(subscriptionIndex, never()).put(unsubscribed);
+    }
+
+    @Test
+    void testNotificationsOfFailedUpdatesAreDiscardedButDepartedNoticesAreKept() {
+        BulkOperationException exception = mock(BulkOperationException.class);
+        when(exception.getErrors()).thenReturn(List.of(new BulkWriteError(2, "bad value", new BsonDocument(), 0),
+                new BulkWriteError(2, "bad value", new BsonDocument(), 1)));
+        when(bulkOperations.execute()).thenThrow(exception);
+
+        writeBuffer.updateSubscribedCars(createSubscription("1"), "Изменились цены");
+        writeBuffer.delete(createSubscription("2"), "trainHasDeparted:2", "Поезд ушел");
+
+        List<Object> notificationIds = captureNotificationIds();
+        ArgumentCaptor<Query> discarded = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).remove(discarded.capture(), eq(OutboxNotification.class));
+        assertEquals(new Document("_id", new Document("$in", List.of(notificationIds.get(0)))), discarded.getValue().getQueryObject());
+        verifyNoInteractions(subscriptionIndex);
+    }
+
+    private List<Object> captureNotificationIds() {
+        ArgumentCaptor<Query> notificationQueries = ArgumentCaptor.forClass(Query.class);
+        verify(outboxOperations, atLeastOnce()).upsert(notificationQueries.capture(), any(Update.class));
+        return notificationQueries.getAllValues().stream()
+                .map(query -> query.getQueryObject().get("_id"))
+                .toList();
+    }
+
+    private UserTicketsSubscription createSubscription(String id) {
+        UserTicketsSubscription subscription = new UserTicketsSubscription(123456789, "001А", "Express", "Москва",
+                "Казань", "01.03.2099", "02.03.2099", "08:00", "16:00", List.of());
+        subscription.setId(id);
+        return subscription;
+    }
+}
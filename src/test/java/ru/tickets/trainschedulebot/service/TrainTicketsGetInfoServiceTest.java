@@ -0,0 +1,161 @@
+package ru.tickets.trainschedulebot.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.test.StepVerifier;
+import ru.tickets.trainschedulebot.cache.TimetableDataCache;
+import ru.tickets.trainschedulebot.config.RidPollingProperties;
+import ru.tickets.trainschedulebot.config.RzdUpstreamProperties;
+import ru.tickets.trainschedulebot.model.Car;
+import ru.tickets.trainschedulebot.model.Train;
+import ru.tickets.trainschedulebot.standin.StandInServer;
+import ru.tickets.trainschedulebot.utils.DateTimeUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrainTicketsGetInfoServiceTest {
+
+    private static final int STATION_DEPART_CODE = 2000000;
+    private static final int STATION_ARRIVAL_CODE = 2060615;
+    private static final String TIMETABLE_PATH = "/timetable/public/ru";
+
+    private final LocalDate dateDepart = LocalDate.of(2024, 3, 1);
+    private StandInServer standInServer;
+    private TrainTicketsGetInfoService trainTicketsGetInfoService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        standInServer = StandInServer.start(4);
+        String baseUrl = standInServer.baseUrl();
+        WebClient webClient = WebClient.create();
+
+        RidPollingProperties pollingProperties = new RidPollingProperties();
+        pollingProperties.setInitialDelay(Duration.ofMillis(10));
+        pollingProperties.setMaxDelay(Duration.ofMillis(50));
+        pollingProperties.setJitter(0);
+        pollingProperties.setDeadline(Duration.ofSeconds(5));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        trainTicketsGetInfoService = new TrainTicketsGetInfoService(webClient,
+                new RzdUpstreamGuard(new RzdUpstreamProperties(), meterRegistry),
+                new RidPollingService(pollingProperties, meterRegistry),
+                new TimetableDataCache(Duration.ofMinutes(5), Duration.ZERO, 100),
+                new ParseTrainsResponseService(new ObjectMapper()),
+                new RzdSessionService(webClient, baseUrl + TIMETABLE_PATH + "?layer_id=5827", "agent",
+                        2, Duration.ofMinutes(15), Duration.ofMinutes(1)));
+        trainTicketsGetInfoService.setTrainInfoRidRequestTemplate(baseUrl + TIMETABLE_PATH
+                + "?layer_id=5827&dir=0&tfl=3&checkSeats=1&code0={STATION_DEPART_CODE}&code1={STATION_ARRIVAL_CODE}&dt0={DATE_DEPART}");
+        trainTicketsGetInfoService.setTrainInfoRequestTemplate(baseUrl + TIMETABLE_PATH + "?layer_id=5827&rid={RID_VALUE}");
+        trainTicketsGetInfoService.setHeaderValue("agent");
+    }
+
+    @AfterEach
+    void tearDown() {
+        standInServer.close();
+    }
+
+    @Test
+    void testTrainsAreReceivedOncePendingRidIsReady() {
+        standInServer.withRzdRoutes(2);
+
+        StepVerifier.create(trainTicketsGetInfoService.getTrainTicketsListAsync(STATION_DEPART_CODE, STATION_ARRIVAL_CODE, dateDepart))
+                .assertNext(trains -> assertEquals(List.of("002Й", "024Г", "748Ч"), trains.stream().map(Train::getNumber).toList()))
+                .verifyComplete();
+
+        // One RID request, two pending polls and the poll receiving the trains
+        assertEquals(4, standInServer.getRequestCount(TIMETABLE_PATH));
+    }
+
+    @Test
+    void testRidWithoutSessionCookiesFails() {
+        standInServer.route(TIMETABLE_PATH, exchange -> StandInServer.Response.ok("{\"result\":\"RID\",\"RID\":\"1000001\"}"));
+
+        StepVerifier.create(trainTicketsGetInfoService.getTrainTicketsListAsync(STATION_DEPART_CODE, STATION_ARRIVAL_CODE, dateDepart))
+                .expectError(IllegalStateException.class)
+                .verify();
+
+        assertEquals(1, standInServer.getRequestCount(TIMETABLE_PATH));
+    }
+
+    @Test
+    void testTrainInfoWithoutResultFailsWithoutPolling() {
+        Map<String, String> sessionCookie = Map.of("Set-Cookie", "JSESSIONID=standin-session; Path=/; HttpOnly");
+        standInServer.route(TIMETABLE_PATH, exchange -> exchange.getRequestURI().getQuery().contains("rid=")
+                ? StandInServer.Response.ok("{\"error\":\"Internal error\"}")
+                : new StandInServer.Response(200, "{\"result\":\"RID\",\"RID\":\"1000001\"}", sessionCookie));
+
+        StepVerifier.create(trainTicketsGetInfoService.getTrainTicketsListAsync(STATION_DEPART_CODE, STATION_ARRIVAL_CODE, dateDepart))
+                .expectError(UncheckedIOException.class)
+                .verify();
+
+        // One RID request and the single poll that received no result
+        assertEquals(2, standInServer.getRequestCount(TIMETABLE_PATH));
+    }
+
+    @Test
+    void testDateNotOnSaleFails() {
+        routeTimetableNotOnSaleFrom(dateDepart);
+
+        StepVerifier.create(trainTicketsGetInfoService.getTrainTicketsListAsync(STATION_DEPART_CODE, STATION_ARRIVAL_CODE, dateDepart))
+                .expectError(TrainTicketsGetInfoService.DateOutOfBoundException.class)
+                .verify();
+    }
+
+    @Test
+    void testDateRangeSkipsDatesNotOnSale() {
+        routeTimetableNotOnSaleFrom(dateDepart.plusDays(2));
+
+        StepVerifier.create(trainTicketsGetInfoService.getTrainTicketsListAsync(STATION_DEPART_CODE, STATION_ARRIVAL_CODE,
+                        dateDepart, dateDepart.plusDays(3)))
+                .assertNext(trains -> assertEquals(6, trains.size()))
+                .verifyComplete();
+    }
+
+    @Test
+    void testDateRangeTrainsAreSortedByMinimalPrice() {
+        standInServer.withRzdRoutes(0);
+
+        StepVerifier.create(trainTicketsGetInfoService.getTrainTicketsListAsync(STATION_DEPART_CODE, STATION_ARRIVAL_CODE,
+                        dateDepart, dateDepart.plusDays(2)))
+                .assertNext(trains -> {
+                    List<Integer> minimalPrices = trains.stream()
+                            .map(train -> train.getAvailableCars().stream().mapToInt(Car::getMinimalPrice).min().orElseThrow())
+                            .toList();
+                    assertEquals(9, trains.size());
+                    assertEquals(List.of(2340, 2340, 2340, 2650, 2650, 2650, 3120, 3120, 3120), minimalPrices);
+                })
+                .verifyComplete();
+    }
+
+    /**
+     * Routes the timetable requests to a remote API whose advance sale period ends the day before the given date.
+     *
+     * @param firstDateNotOnSale The first departure date that is not on sale.
+     */
+    private void routeTimetableNotOnSaleFrom(LocalDate firstDateNotOnSale) {
+        String timetable = StandInServer.fixture("timetable.json");
+        Map<String, String> sessionCookie = Map.of("Set-Cookie", "JSESSIONID=standin-session; Path=/; HttpOnly");
+        standInServer.route(TIMETABLE_PATH, exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            if (query.contains("rid=")) {
+                return StandInServer.Response.ok(timetable.replace("${DATE}", "01.03.2024"));
+            }
+            LocalDate requestedDate = DateTimeUtils.parseDate(query.substring(query.indexOf("dt0=") + "dt0=".length())).orElseThrow();
+            if (!requestedDate.isBefore(firstDateNotOnSale)) {
+                return StandInServer.Response.ok("{\"result\":\"FAIL\",\"tp\":[{\"msgList\":[{\"message\":\"Нету рейсов на выбранную дату.\"}]}]}");
+            }
+            return new StandInServer.Response(200, "{\"result\":\"RID\",\"RID\":\"1000001\"}", sessionCookie);
+        });
+    }
+}
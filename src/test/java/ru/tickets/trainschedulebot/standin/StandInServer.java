@@ -0,0 +1,273 @@
+package ru.tickets.trainschedulebot.standin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Local HTTP server standing in for the remote train information service and the Telegram Bot API in tests.
+ * <p>
+ * Routes are matched by the longest path prefix and answer with recorded fixtures from the {@code standin}
+ * test resources. Every response can be delayed by a fixed latency plus a random jitter, and a share of the
+ * requests can be failed with {@code 503 Service Unavailable} to simulate a degraded remote service.
+ */
+public class StandInServer implements AutoCloseable {
+
+    /**
+     * Response of a stand-in route.
+     *
+     * @param status  The HTTP status code.
+     * @param body    The response body.
+     * @param headers Additional response headers.
+     */
+    public record Response(int status, String body, Map<String, String> headers) {
+        public static Response ok(String body) {
+            return new Response(200, body, Map.of());
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, Function<HttpExchange, Response>> routes = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> requestCounts = new ConcurrentHashMap<>();
+
+    private volatile Duration latency = Duration.ZERO;
+    private volatile Duration latencyJitter = Duration.ZERO;
+    private volatile double errorRate;
+
+    private StandInServer(int threads) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+    }
+
+    /**
+     * Starts a stand-in server on a free local port.
+     *
+     * @param threads The number of threads serving requests.
+     * @return The started server.
+     */
+    public static StandInServer start(int threads) throws IOException {
+        StandInServer standInServer = new StandInServer(threads);
+        standInServer.server.start();
+        return standInServer;
+    }
+
+    /**
+     * Returns the base URL of the server, without a trailing slash.
+     *
+     * @return The base URL.
+     */
+    public String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Registers a route answering the requests whose path starts with the given prefix.
+     *
+     * @param pathPrefix The path prefix.
+     * @param handler    Function producing the response of a request.
+     * @return This server.
+     */
+    public StandInServer route(String pathPrefix, Function<HttpExchange, Response> handler) {
+        routes.put(pathPrefix, handler);
+        return this;
+    }
+
+    /**
+     * Registers the routes of the train information service: the station suggester, the RID request
+     * and the train information polling, which answers "RID pending" for the first polls of every RID.
+     *
+     * @param pendingPolls The number of polls of every RID answered as still pending.
+     * @return This server.
+     */
+    public StandInServer withRzdRoutes(int pendingPolls) {
+        String suggester = fixture("suggester.json");
+        String rid = fixture("rid.json");
+        String ridPending = fixture("rid-pending.json");
+        String timetable = fixture("timetable.json");
+        AtomicLong nextRid = new AtomicLong(1_000_000);
+        Map<String, AtomicInteger> polls = new ConcurrentHashMap<>();
+        Map<String, String> sessionCookie = Map.of("Set-Cookie", "JSESSIONID=standin-session; Path=/; HttpOnly");
+
+        route("/suggester", exchange -> Response.ok(suggester));
+        return route("/timetable/public/ru", exchange -> {
+            String query = exchange.getRequestURI().getRawQuery();
+            String ridParam = queryParam(query, "rid");
+            if (ridParam != null) {
+                int poll = polls.computeIfAbsent(ridParam, key -> new AtomicInteger()).incrementAndGet();
+                if (poll <= pendingPolls) {
+                    return Response.ok(ridPending.replace("${RID}", ridParam));
+                }
+                polls.remove(ridParam);
+                return Response.ok(timetable.replace("${DATE}", queryParamOrDefault(query, "dt0", "01.03.2024")));
+            }
+            if (queryParam(query, "code0") == null) {
+                // Session handshake
+                return new Response(200, "", sessionCookie);
+            }
+            String body = rid.replace("${RID}", String.valueOf(nextRid.incrementAndGet()));
+            boolean hasSession = exchange.getRequestHeaders().containsKey("Cookie");
+            return new Response(200, body, hasSession ? Map.of() : sessionCookie);
+        });
+    }
+
+    /**
+     * Registers the routes of the Telegram Bot API used by the bot.
+     *
+     * @return This server.
+     */
+    public StandInServer withTelegramRoutes() {
+        String message = fixture("telegram-message.json");
+        return route("/bot", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            if (path.endsWith("/setWebhook")) {
+                return Response.ok("{\"ok\":true,\"result\":true}");
+            }
+            if (path.endsWith("/sendMessage") || path.endsWith("/editMessageText")) {
+                return Response.ok(message);
+            }
+            return new Response(404, "{\"ok\":false,\"error_code\":404,\"description\":\"Not Found\"}", Map.of());
+        });
+    }
+
+    /**
+     * Sets the latency added to every response.
+     *
+     * @param latency       The fixed latency.
+     * @param latencyJitter The maximum random latency added on top of the fixed one.
+     */
+    public void setLatency(Duration latency, Duration latencyJitter) {
+        this.latency = latency;
+        this.latencyJitter = latencyJitter;
+    }
+
+    /**
+     * Sets the share of requests failed with {@code 503 Service Unavailable}.
+     *
+     * @param errorRate The share of failed requests, between 0 and 1.
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Returns the number of requests received by the route with the given path suffix.
+     *
+     * @param pathSuffix The path suffix, for example {@code /sendMessage}.
+     * @return The number of requests.
+     */
+    public long getRequestCount(String pathSuffix) {
+        return requestCounts.entrySet().stream()
+                .filter(entry -> entry.getKey().endsWith(pathSuffix))
+                .mapToLong(entry -> entry.getValue().get())
+                .sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            requestCounts.computeIfAbsent(exchange.getRequestURI().getPath(), path -> new AtomicLong()).incrementAndGet();
+            delay();
+
+            Response response;
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                response = new Response(503, "", Map.of());
+            } else {
+                response = findRoute(exchange.getRequestURI().getPath())
+                        .map(route -> route.apply(exchange))
+                        .orElseGet(() -> new Response(404, "", Map.of()));
+            }
+
+            byte[] body = response.body().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+            response.headers().forEach((name, value) -> exchange.getResponseHeaders().add(name, value));
+            exchange.sendResponseHeaders(response.status(), body.length == 0 ? -1 : body.length);
+            if (body.length > 0) {
+                try (OutputStream outputStream = exchange.getResponseBody()) {
+                    outputStream.write(body);
+                }
+            }
+        }
+    }
+
+    private Optional<Function<HttpExchange, Response>> findRoute(String path) {
+        return routes.entrySet().stream()
+                .filter(entry -> path.startsWith(entry.getKey()))
+                .max(Map.Entry.comparingByKey(Comparator.comparingInt(String::length)))
+                .map(Map.Entry::getValue);
+    }
+
+    private void delay() {
+        long delayMillis = latency.toMillis();
+        if (!latencyJitter.isZero()) {
+            delayMillis += ThreadLocalRandom.current().nextLong(latencyJitter.toMillis() + 1);
+        }
+        if (delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static String queryParamOrDefault(String query, String name, String defaultValue) {
+        String value = queryParam(query, name);
+        return value == null ? defaultValue : value;
+    }
+
+    private static String queryParam(String query, String name) {
+        if (query == null) {
+            return null;
+        }
+        for (String param : query.split("&")) {
+            int separator = param.indexOf('=');
+            if (separator > 0 && param.substring(0, separator).equals(name)) {
+                return param.substring(separator + 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads a recorded fixture from the {@code standin} test resources.
+     *
+     * @param name The file name of the fixture.
+     * @return The content of the fixture.
+     */
+    public static String fixture(String name) {
+        try (InputStream inputStream = StandInServer.class.getResourceAsStream("/standin/" + name)) {
+            if (inputStream == null) {
+                throw new IllegalStateException("Fixture not found: " + name);
+            }
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}